@@ -0,0 +1,82 @@
+package net.segner.maven.plugins.communal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching the libraries of an EAR against the configured library filters, one filter at a time and with the compiled
+ * {@link LibraryMatcher}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LibraryPrefixFilterBenchmark {
+
+    @Param({"5", "50"})
+    private int filters;
+    @Param({"100", "2000"})
+    private int libraries;
+
+    private List<LibraryFilter> filterList;
+    private List<String> libraryNames;
+    private LibraryMatcher matcher;
+
+    @Setup
+    public void createLibraries() {
+        filterList = new ArrayList<>();
+        for (int i = 0; i < filters; i++) {
+            filterList.add(new LibraryPrefixFilter("Library-" + (i * 7) + "-"));
+        }
+        libraryNames = new ArrayList<>();
+        for (int i = 0; i < libraries; i++) {
+            libraryNames.add("library-" + i + "-1.0.jar");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void compileMatcher() {
+        matcher = new LibraryMatcher(filterList);
+    }
+
+    @Benchmark
+    public int isMatch() {
+        int matches = 0;
+        for (String libraryName : libraryNames) {
+            for (LibraryFilter filter : filterList) {
+                if (filter.isMatch(libraryName)) {
+                    matches++;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int libraryMatcher() {
+        int matches = 0;
+        for (String libraryName : libraryNames) {
+            if (matcher.isMatch(libraryName)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,88 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import com.google.inject.Injector;
+import net.java.truevfs.access.TVFS;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete skinny war layout of an EAR, including writing the changed archives. Every iteration starts from the
+ * pristine EAR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class SkinnyWarEarEnhancerBenchmark {
+
+    @Param({"4", "40"})
+    private int modules;
+    @Param({"10", "40"})
+    private int librariesPerModule;
+    @Param({"16", "128"})
+    private int jarKilobytes;
+    @Param({"1", "4"})
+    private int threads;
+
+    private EarFixture fixture;
+    private Injector injector;
+    private StandardlSkinnyWarEarEnhancer enhancer;
+
+    @Setup(Level.Trial)
+    public void writeEar() throws IOException {
+        fixture = new EarFixture(Files.createTempDirectory("skinnywar-benchmark-"))
+                .webModules(modules)
+                .librariesPerModule(librariesPerModule)
+                .jarKilobytes(jarKilobytes);
+        fixture.write();
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreEar() throws IOException {
+        TVFS.umount();
+        fixture.restore();
+        injector = fixture.injector(null, threads);
+        enhancer = injector.getInstance(StandardlSkinnyWarEarEnhancer.class);
+        enhancer.setEarLibraries(new ArrayList<>());
+        enhancer.setPinnedLibraries(new ArrayList<>());
+        enhancer.setTargetModule(injector.getInstance(EarModule.class));
+    }
+
+    @Benchmark
+    public void makeSkinnyModules() throws IOException {
+        enhancer.makeSkinnyModules();
+        TVFS.umount();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopWorkers() {
+        injector.getInstance(LayoutWorkerPool.class).shutdown();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteEar() throws IOException {
+        TVFS.umount();
+        fixture.delete();
+    }
+}
@@ -0,0 +1,91 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copying a library into a module and removing it again, with the changes written to disk each time.
+ * The module is either packed within the EAR, an exploded directory, or both mirrored.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class GenericMirroringFilesystemBenchmark {
+
+    private static final String LIBRARY_FOLDER = "WEB-INF" + File.separator + "lib";
+    private static final String LIBRARY_NAME = "copied-1.0.jar";
+
+    @Param({"packed", "exploded", "mirrored"})
+    private String target;
+    @Param({"10", "40"})
+    private int librariesPerModule;
+    @Param({"16", "1024"})
+    private int jarKilobytes;
+
+    private EarFixture fixture;
+    private TFile library;
+    private GenericMirroringFilesystem filesystem;
+
+    @Setup(Level.Trial)
+    public void writeEar() throws IOException {
+        fixture = new EarFixture(Files.createTempDirectory("skinnywar-benchmark-"))
+                .webModules(1)
+                .librariesPerModule(librariesPerModule)
+                .jarKilobytes(jarKilobytes)
+                .exploded(true);
+        fixture.write();
+        Path libraryFile = fixture.getDirectory().resolve(LIBRARY_NAME);
+        EarFixture.writeJar(libraryFile, jarKilobytes);
+        library = new TFile(libraryFile.toFile());
+
+        TFile packed = new TFile(fixture.getEar().toFile(), EarFixture.webModuleName(0));
+        TFile exploded = new TFile(fixture.getExplodedEar().resolve(EarFixture.webModuleName(0)).toFile());
+        switch (target) {
+            case "packed":
+                filesystem = new GenericMirroringFilesystem(packed, null);
+                break;
+            case "exploded":
+                filesystem = new GenericMirroringFilesystem(exploded, null);
+                break;
+            default:
+                filesystem = new GenericMirroringFilesystem(packed, exploded);
+        }
+    }
+
+    @Benchmark
+    public void copyAndRm() throws IOException {
+        filesystem.copy(library, LIBRARY_FOLDER);
+        TVFS.umount();
+        filesystem.rm(LIBRARY_FOLDER + File.separator + LIBRARY_NAME);
+        TVFS.umount();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteEar() throws IOException {
+        TVFS.umount();
+        fixture.delete();
+    }
+}
@@ -0,0 +1,74 @@
+package net.segner.maven.plugins.communal.module;
+
+import com.google.inject.Injector;
+import net.java.truevfs.access.TVFS;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Module discovery of an EAR, starting from an unmounted EAR every time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class EarModuleBenchmark {
+
+    @Param({"4", "40"})
+    private int modules;
+    @Param({"10", "40"})
+    private int librariesPerModule;
+    @Param({"16"})
+    private int jarKilobytes;
+    @Param({"1", "4"})
+    private int threads;
+
+    private EarFixture fixture;
+    private Injector injector;
+    private ApplicationModuleProvider applicationModuleProvider;
+
+    @Setup(Level.Trial)
+    public void writeEar() throws IOException {
+        fixture = new EarFixture(Files.createTempDirectory("skinnywar-benchmark-"))
+                .webModules(modules)
+                .librariesPerModule(librariesPerModule)
+                .jarKilobytes(jarKilobytes);
+        fixture.write();
+        injector = fixture.injector(null, threads);
+        applicationModuleProvider = injector.getInstance(ApplicationModuleProvider.class);
+    }
+
+    @Benchmark
+    public Map<String, ApplicationModule> getModules() throws IOException {
+        Map<String, ApplicationModule> earModules = applicationModuleProvider.getEar().getModules();
+        TVFS.umount();
+        return earModules;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteEar() throws IOException {
+        injector.getInstance(LayoutWorkerPool.class).shutdown();
+        TVFS.umount();
+        fixture.delete();
+    }
+}
@@ -0,0 +1,68 @@
+package net.segner.maven.plugins.communal.weblogic;
+
+import com.google.inject.Injector;
+import net.java.truevfs.access.TVFS;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the communal weblogic-application.xml classloader structure, without writing it to the EAR
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class WeblogicApplicationXmlBenchmark {
+
+    @Param({"4", "40"})
+    private int modules;
+
+    private EarFixture fixture;
+    private Injector injector;
+    private EarModule earModule;
+
+    @Setup(Level.Trial)
+    public void writeEar() throws Exception {
+        fixture = new EarFixture(Files.createTempDirectory("skinnywar-benchmark-"))
+                .webModules(modules)
+                .librariesPerModule(2);
+        fixture.write();
+        injector = fixture.injector(EarFixture.webModuleName(0), 1);
+        earModule = injector.getInstance(EarModule.class);
+        earModule.getModules();
+    }
+
+    @Benchmark
+    public Document setupCommunalWeblogicApplicationXml() throws Exception {
+        WeblogicApplicationXml weblogicApplicationXml = new WeblogicApplicationXml(earModule);
+        weblogicApplicationXml.setupCommunalWeblogicApplicationXml(EarFixture.webModuleName(0));
+        return weblogicApplicationXml.getDocument();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteEar() throws Exception {
+        injector.getInstance(LayoutWorkerPool.class).shutdown();
+        TVFS.umount();
+        fixture.delete();
+    }
+}
@@ -0,0 +1,99 @@
+package net.segner.maven.plugins.communal;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.library.ClassIndex;
+import net.segner.maven.plugins.communal.library.ClassIndexer;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports the classes that are still contained in more than one library of the EAR once the layout is applied, and the
+ * packages split over several libraries.
+ * <p>
+ * The reports are written to {@code target/skinnywar/<finalName>-duplicate-classes.txt} and
+ * {@code target/skinnywar/<finalName>-split-packages.txt}.
+ */
+@Slf4j
+public class ClassIndexReport {
+
+    public static final String DUPLICATE_CLASSES_SUFFIX = "-duplicate-classes.txt";
+    public static final String SPLIT_PACKAGES_SUFFIX = "-split-packages.txt";
+
+    @Inject
+    private EarModule earModule;
+    @Inject
+    private ClassIndexer classIndexer;
+    @Inject
+    @Named("project.build")
+    private Build build;
+
+    /**
+     * Indexes every library of the EAR and its modules, and writes the reports
+     */
+    public void write() throws IOException {
+        ClassIndex classIndex = classIndexer.index(getLibraries());
+        Map<String, List<ClassIndex.ClassEntry>> duplicateClasses = classIndex.getDuplicateClasses();
+        Map<String, Map<String, Integer>> splitPackages = classIndex.getSplitPackages();
+
+        File duplicateClassesFile = getReportFile(DUPLICATE_CLASSES_SUFFIX);
+        Files.createDirectories(duplicateClassesFile.getParentFile().toPath());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(duplicateClassesFile.toPath(), StandardCharsets.UTF_8))) {
+            out.println("# " + duplicateClasses.size() + " of " + classIndex.getClassCount() + " classes found in more than one of " + classIndex.getLibraryCount() + " libraries");
+            duplicateClasses.forEach((className, entries) -> {
+                boolean identical = entries.stream().allMatch(entry -> entry.isSameContent(entries.get(0)));
+                out.println(className + (identical ? " (identical)" : " (different content)"));
+                entries.forEach(entry -> out.println("    " + entry.getLibrary()));
+            });
+        }
+
+        File splitPackagesFile = getReportFile(SPLIT_PACKAGES_SUFFIX);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(splitPackagesFile.toPath(), StandardCharsets.UTF_8))) {
+            out.println("# " + splitPackages.size() + " packages split over more than one library");
+            splitPackages.forEach((packageName, libraries) -> {
+                out.println(packageName);
+                libraries.forEach((library, classes) -> out.println("    " + library + " (" + classes + " classes)"));
+            });
+        }
+
+        log.info("Class index: {} duplicate classes, {} split packages in {} libraries, see {}",
+                duplicateClasses.size(), splitPackages.size(), classIndex.getLibraryCount(), duplicateClassesFile.getParent());
+    }
+
+    /**
+     * @return every library of the EAR, mapped to its path within the EAR
+     */
+    @Nonnull
+    private Map<TFile, String> getLibraries() throws IOException {
+        Path earRoot = earModule.getModuleRoot().toPath();
+        Map<TFile, String> libraries = new LinkedHashMap<>();
+        for (TFile library : earModule.getLibraryFiles()) {
+            libraries.put(library, earRoot.relativize(library.toPath()).toString().replace('\\', '/'));
+        }
+        for (ApplicationModule module : earModule.getModules().values()) {
+            for (TFile library : module.getLibraryFiles()) {
+                libraries.put(library, earRoot.relativize(library.toPath()).toString().replace('\\', '/'));
+            }
+        }
+        return libraries;
+    }
+
+    @Nonnull
+    File getReportFile(String suffix) {
+        return new File(build.getDirectory() + File.separator + LayoutUpToDateCheck.STATE_FOLDER, build.getFinalName() + suffix);
+    }
+}
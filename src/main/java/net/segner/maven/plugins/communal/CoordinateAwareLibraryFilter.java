@@ -0,0 +1,14 @@
+package net.segner.maven.plugins.communal;
+
+import javax.annotation.Nullable;
+
+/**
+ * Library filter that can also match the maven coordinates of a library
+ */
+public interface CoordinateAwareLibraryFilter extends LibraryFilter {
+
+    /**
+     * @param coordinates groupId:artifactId[:version] of the library, null if unknown
+     */
+    boolean isMatch(String libraryName, @Nullable String coordinates);
+}
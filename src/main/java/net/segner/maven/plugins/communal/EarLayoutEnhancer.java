@@ -2,15 +2,24 @@ package net.segner.maven.plugins.communal;
 
 import com.google.inject.name.Named;
 import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
 import net.java.truevfs.access.TVFS;
 import net.java.truevfs.kernel.spec.FsSyncException;
 import net.segner.maven.plugins.communal.enhancer.ModuleEnhancer;
+import net.segner.maven.plugins.communal.io.ArchiveBackend;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+import net.segner.maven.plugins.communal.io.ArchiveVerifier;
+import net.segner.maven.plugins.communal.io.BufferPool;
+import net.segner.maven.plugins.communal.io.TrueVfsBufferPool;
 import net.segner.maven.plugins.communal.module.EarModule;
 import org.apache.commons.lang3.Validate;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipException;
 
 @Slf4j
 public class EarLayoutEnhancer {
@@ -22,8 +31,59 @@ public class EarLayoutEnhancer {
     @Inject
     @Named("warningBreaksBuild")
     private Boolean warningBreaksBuild;
+    @Inject
+    @Named("skipUnchangedEar")
+    private Boolean skipUnchangedEar;
+    @Inject
+    private LayoutUpToDateCheck upToDateCheck;
+    @Inject
+    @Named("dryRun")
+    private Boolean dryRun;
+    @Inject
+    private ArchiveBackend archiveBackend;
+    @Inject
+    private LayoutWorkerPool workerPool;
+    @Inject
+    private ArchiveInspector archiveInspector;
+    @Inject
+    @Named("classIndexReport")
+    private Boolean classIndexReport;
+    @Inject
+    private ClassIndexReport classIndexReporter;
+    @Inject
+    private LayoutReport layoutReport;
+    @Inject
+    @Named("verifyEar")
+    private Boolean verifyEar;
+    @Inject
+    private ArchiveVerifier archiveVerifier;
+    @Inject
+    private BufferPool bufferPool;
 
     public void start() throws MojoExecutionException, MojoFailureException {
+        try {
+            TrueVfsBufferPool.acquire(bufferPool);
+        } catch (IllegalStateException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        try {
+            layout();
+        } finally {
+            TrueVfsBufferPool.release(bufferPool);
+        }
+    }
+
+    private void layout() throws MojoExecutionException, MojoFailureException {
+        long started = System.nanoTime();
+        layoutReport.recordEarBefore();
+        if (skipUnchangedEar && upToDateCheck.isUpToDate()) {
+            log.info("EAR is unchanged since its last layout, skipping");
+            layoutReport.setSkipped(true);
+            writeLayoutReport(started);
+            return;
+        }
+
+        boolean completed = false;
         try {
             // get the ear module
             Validate.isTrue(earModule.canRead() && earModule.canWrite(), "Missing read / write permissions to ear target folder");
@@ -31,6 +91,14 @@ public class EarLayoutEnhancer {
             // enhance the ear with the configured enhancer chain including the skinny war pattern
             earModuleEnhancer.setTargetModule(earModule);
             earModuleEnhancer.enhance();
+            if (classIndexReport) {
+                // index the EAR as it is after the layout
+                long phaseStart = System.nanoTime();
+                archiveBackend.sync();
+                classIndexReporter.write();
+                layoutReport.recordPhase(LayoutReport.Phase.CLASS_INDEX, phaseStart);
+            }
+            completed = true;
 
         } catch (IllegalArgumentException ex) {
             log.warn(ex.getMessage());
@@ -40,12 +108,63 @@ public class EarLayoutEnhancer {
         } catch (Exception e) {
             throw new MojoExecutionException(e.getMessage(), e);
         } finally {
+            workerPool.shutdown();
+            archiveInspector.close();
+            long phaseStart = System.nanoTime();
+            try {
+                archiveBackend.sync();
+            } catch (IOException e) {
+                //noinspection ThrowFromFinallyBlock
+                throw new MojoExecutionException("Archive backend failed to write changes", e);
+            }
             try {
-                TVFS.umount();
+                // only this EAR and its exploded copy, executions of other projects running concurrently keep their
+                // archives mounted
+                TVFS.umount(earModule.getModuleRoot());
+                TFile unpackFolder = earModule.getUnpackFolder();
+                if (unpackFolder != null) {
+                    TVFS.umount(unpackFolder);
+                }
             } catch (FsSyncException e) {
                 //noinspection ThrowFromFinallyBlock
                 throw new MojoExecutionException("TVFS failed to unmount cleanly", e);
             }
+            layoutReport.recordPhase(LayoutReport.Phase.WRITE, phaseStart);
+        }
+
+        // archives are only written once unmounted, a dry run leaves the EAR as it was
+        if (completed && verifyEar && !dryRun) {
+            verify();
+        }
+        if (completed && skipUnchangedEar && !dryRun) {
+            upToDateCheck.record();
+        }
+        if (completed) {
+            writeLayoutReport(started);
+        }
+    }
+
+    private void verify() throws MojoFailureException, MojoExecutionException {
+        long phaseStart = System.nanoTime();
+        File earFile = new File(earModule.getModuleRoot().getPath());
+        try {
+            long verified = archiveVerifier.verify(earFile.toPath());
+            log.info("Verified {} entries of {}", verified, earFile.getName());
+        } catch (ZipException e) {
+            throw new MojoFailureException("EAR is corrupt: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to verify " + earFile, e);
+        }
+        layoutReport.recordPhase(LayoutReport.Phase.VERIFY, phaseStart);
+    }
+
+    private void writeLayoutReport(long started) throws MojoExecutionException {
+        layoutReport.recordEarAfter();
+        layoutReport.recordPhase(LayoutReport.Phase.TOTAL, started);
+        try {
+            layoutReport.write();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write layout report", e);
         }
     }
 }
@@ -3,21 +3,43 @@ package net.segner.maven.plugins.communal;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
 import com.google.inject.name.Names;
 import lombok.extern.slf4j.Slf4j;
 import net.segner.maven.plugins.communal.enhancer.CommunalSkinnyWarEarEnhancer;
 import net.segner.maven.plugins.communal.enhancer.CommunalSkinnyWarEarEnhancerFactory;
 import net.segner.maven.plugins.communal.enhancer.ModuleEnhancer;
+import net.segner.maven.plugins.communal.enhancer.PackageIndexEnhancer;
 import net.segner.maven.plugins.communal.enhancer.SkinnyWarEarEnhancer;
 import net.segner.maven.plugins.communal.enhancer.StandardlSkinnyWarEarEnhancer;
 import net.segner.maven.plugins.communal.enhancer.WeblogicLtwMetadataEnhancer;
+import net.segner.maven.plugins.communal.io.ArchiveBackend;
+import net.segner.maven.plugins.communal.io.ArchiveBackendType;
+import net.segner.maven.plugins.communal.io.BufferPool;
+import net.segner.maven.plugins.communal.io.CompressionPolicy;
+import net.segner.maven.plugins.communal.io.DirectoryArchiveBackend;
+import net.segner.maven.plugins.communal.io.FileLinker;
+import net.segner.maven.plugins.communal.io.ReproducibleOutput;
+import net.segner.maven.plugins.communal.io.TrueVfsArchiveBackend;
+import net.segner.maven.plugins.communal.io.ZipFsArchiveBackend;
+import net.segner.maven.plugins.communal.library.LibraryFingerprinter;
 import net.segner.maven.plugins.communal.module.ApplicationModuleProvider;
 import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.model.Build;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -26,55 +48,148 @@ import java.util.List;
 public class EarLayoutEnhancerModule extends AbstractModule {
     public static final List<String> ASPECTJLIBRARIES = Arrays.asList(StringUtils.split("aopalliance aspectjweaver aspectjrt"));
 
-    private String communalModuleName;
-    private List<LibraryFilter> earLibraryList;
-    private List<LibraryFilter> pinnedLibraryList;
-    private Boolean forceAspectJLibToEar;
-    private Boolean generateWeblogicLtwMetadata;
-    private Boolean warningBreaksBuild;
-    private Build build;
-    private Boolean addToManifestClasspath;
-
-
-    public EarLayoutEnhancerModule(String communalModuleName,
-                                   List<LibraryFilter> earLibraryList,
-                                   List<LibraryFilter> pinnedLibraryList,
-                                   Boolean forceAspectJLibToEar,
-                                   Boolean generateWeblogicLtwMetadata,
-                                   Boolean warningBreaksBuild,
-                                   Build build,
-                                   Boolean addToManifestClasspath) {
-        this.communalModuleName = communalModuleName;
-        this.earLibraryList = earLibraryList;
-        this.pinnedLibraryList = pinnedLibraryList;
-        this.forceAspectJLibToEar = forceAspectJLibToEar;
-        this.generateWeblogicLtwMetadata = generateWeblogicLtwMetadata;
-        this.warningBreaksBuild = warningBreaksBuild;
-        this.build = build;
-        this.addToManifestClasspath = addToManifestClasspath;
+    private final EarLayoutSettings settings;
+
+    public EarLayoutEnhancerModule(@Nonnull EarLayoutSettings settings) {
+        this.settings = settings;
     }
 
     @Override
     protected void configure() {
         bind(Boolean.class)
                 .annotatedWith(Names.named("warningBreaksBuild"))
-                .toInstance(this.warningBreaksBuild);
+                .toInstance(settings.isWarningBreaksBuild());
         bind(Boolean.class)
                 .annotatedWith(Names.named("addToManifestClasspath"))
-                .toInstance(this.addToManifestClasspath);
+                .toInstance(settings.isAddToManifestClasspath());
+        bind(Boolean.class)
+                .annotatedWith(Names.named("skipUnchangedEar"))
+                .toInstance(settings.isSkipUnchangedEar());
+        bind(Boolean.class)
+                .annotatedWith(Names.named("streamingRewrite"))
+                // only the streaming rewrite controls the order, the timestamps and the compression of the entries
+                .toInstance(settings.isStreamingRewrite() || settings.isReproducible()
+                        || settings.isStoreNestedArchives() || settings.getCompressionLevel() != -1);
+        bind(Boolean.class)
+                .annotatedWith(Names.named("classIndexReport"))
+                .toInstance(settings.isClassIndexReport());
+        bind(Boolean.class)
+                .annotatedWith(Names.named("dryRun"))
+                .toInstance(settings.isDryRun());
+        bind(Boolean.class)
+                .annotatedWith(Names.named("verifyEar"))
+                .toInstance(settings.isVerifyEar());
+        bind(Boolean.class)
+                .annotatedWith(Names.named("linkExplodedLibraries"))
+                .toInstance(settings.isLinkExplodedLibraries());
+        bind(String.class)
+                .annotatedWith(Names.named("classLoadingLog"))
+                .toInstance(StringUtils.defaultString(settings.getClassLoadingLog()));
+        bind(Integer.class)
+                .annotatedWith(Names.named("threads"))
+                .toInstance(settings.getThreads());
+        bind(String.class)
+                .annotatedWith(Names.named("layoutConfiguration"))
+                .toInstance(describeLayoutConfiguration());
+        bind(LibraryIdentity.class)
+                .annotatedWith(Names.named("libraryIdentity"))
+                .toInstance(settings.getLibraryIdentity());
+        bind(VersionConvergence.class)
+                .annotatedWith(Names.named("versionConvergence"))
+                .toInstance(settings.getVersionConvergence());
         bind(List.class)
                 .annotatedWith(Names.named("pinnedLibraryList"))
-                .toInstance(this.pinnedLibraryList);
+                .toInstance(settings.getPinnedLibraryList());
+        bind(new TypeLiteral<List<String>>() {
+        })
+                .annotatedWith(Names.named("pinnedVersionList"))
+                .toInstance(settings.getPinnedVersionList());
         bind(Build.class)
                 .annotatedWith(Names.named("project.build"))
-                .toInstance(this.build);
+                .toInstance(settings.getProjectBuild());
+        bind(EarLayoutSettings.class)
+                .toInstance(settings);
         install(new FactoryModuleBuilder()
                 .implement(ModuleEnhancer.class, CommunalSkinnyWarEarEnhancer.class)
                 .build(CommunalSkinnyWarEarEnhancerFactory.class));
     }
 
+    /**
+     * @return description of every setting that influences the resulting layout
+     */
+    @Nonnull
+    String describeLayoutConfiguration() {
+        String classLoadingLog = StringUtils.defaultString(settings.getClassLoadingLog());
+        return "communalModuleName=" + settings.getCommunalModuleName() +
+                ", earLibraryList=" + settings.getEarLibraryList() +
+                ", pinnedLibraryList=" + settings.getPinnedLibraryList() +
+                ", forceAspectJLibToEar=" + settings.isForceAspectJLibToEar() +
+                ", generateWeblogicLtwMetadata=" + settings.isGenerateWeblogicLtwMetadata() +
+                ", addToManifestClasspath=" + settings.isAddToManifestClasspath() +
+                ", libraryIdentity=" + settings.getLibraryIdentity() +
+                ", versionConvergence=" + settings.getVersionConvergence() +
+                ", pinnedVersionList=" + settings.getPinnedVersionList() +
+                ", packageIndexReport=" + settings.isPackageIndexReport() +
+                ", classLoadingLog=" + classLoadingLog +
+                (StringUtils.isNotBlank(classLoadingLog) ? "@" + digestContents(classLoadingLog) : "") +
+                ", compressionPolicy=" + compressionPolicy() +
+                ", reproducibleOutput=" + reproducibleOutput();
+    }
+
+    /**
+     * @return digest of the contents of the file, a file replaced with the same modification time is still told apart
+     */
+    @Nonnull
+    private static String digestContents(String file) {
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            MessageDigest digest = MessageDigest.getInstance(LibraryFingerprinter.DIGEST_ALGORITHM);
+            IOUtils.copy(new DigestInputStream(in, digest), new NullOutputStream());
+            return LibraryFingerprinter.toHex(digest.digest());
+        } catch (IOException e) {
+            return "unreadable";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nonnull
+    @Provides
+    @Singleton
+    public CompressionPolicy compressionPolicy() {
+        return new CompressionPolicy(settings.isStoreNestedArchives(), settings.getCompressionLevel());
+    }
+
+    @Nonnull
+    @Provides
+    @Singleton
+    public ReproducibleOutput reproducibleOutput() {
+        return settings.isReproducible() ? ReproducibleOutput.of(settings.getOutputTimestamp()) : ReproducibleOutput.DISABLED;
+    }
+
+    @Nonnull
+    @Provides
+    @Singleton
+    public BufferPool bufferPool() {
+        BufferPool bufferPool = BufferPool.shared(StringUtils.isNotBlank(settings.getBufferDirectory()) ? Paths.get(settings.getBufferDirectory()) : null,
+                settings.getBufferMemoryThreshold(), settings.getBufferMemoryBudget());
+        log.debug("Using buffer pool: {}", bufferPool);
+        return bufferPool;
+    }
+
+    @Nonnull
+    @Provides
+    @Singleton
+    public ArchiveBackend archiveBackend(FileLinker fileLinker, BufferPool bufferPool) {
+        ArchiveBackend packedArchiveBackend = settings.getArchiveBackendType() == ArchiveBackendType.ZIPFS ?
+                new ZipFsArchiveBackend(bufferPool) :
+                new TrueVfsArchiveBackend();
+        log.debug("Using archive backend: {}", settings.getArchiveBackendType());
+        return new DirectoryArchiveBackend(packedArchiveBackend, fileLinker);
+    }
+
     @Nonnull
     @Provides
+    @Singleton
     public EarModule earModule(ApplicationModuleProvider applicationModuleProvider) {
         return applicationModuleProvider.getEar();
     }
@@ -82,27 +197,35 @@ public class EarLayoutEnhancerModule extends AbstractModule {
 
     @Nonnull
     @Provides
-    public ModuleEnhancer<EarModule> earModuleEnhancer(CommunalSkinnyWarEarEnhancerFactory communalSkinnyWarEarEnhancerProvider, Provider<StandardlSkinnyWarEarEnhancer> standardlSkinnyWarEarEnhancerProvider) {
+    public ModuleEnhancer<EarModule> earModuleEnhancer(CommunalSkinnyWarEarEnhancerFactory communalSkinnyWarEarEnhancerProvider, Provider<StandardlSkinnyWarEarEnhancer> standardlSkinnyWarEarEnhancerProvider, Provider<PackageIndexEnhancer> packageIndexEnhancerProvider) {
         // merge ear library list with aspectj list for the complete list
-        List<LibraryFilter> fullEarLibraryList = new ArrayList<>(earLibraryList);
-        if (forceAspectJLibToEar) {
+        List<LibraryFilter> fullEarLibraryList = new ArrayList<>(settings.getEarLibraryList());
+        if (settings.isForceAspectJLibToEar()) {
             ASPECTJLIBRARIES.forEach(earLib -> fullEarLibraryList.add(new LibraryPrefixFilter(earLib)));
         }
 
         // add skinny enhancer to enhancer chain
-        SkinnyWarEarEnhancer skinnyEnhancer = StringUtils.isNotBlank(communalModuleName) ?
-                communalSkinnyWarEarEnhancerProvider.forCommunalName(communalModuleName) :
+        SkinnyWarEarEnhancer skinnyEnhancer = StringUtils.isNotBlank(settings.getCommunalModuleName()) ?
+                communalSkinnyWarEarEnhancerProvider.forCommunalName(settings.getCommunalModuleName()) :
                 standardlSkinnyWarEarEnhancerProvider.get();
-        skinnyEnhancer.setPinnedLibraries(pinnedLibraryList);
+        skinnyEnhancer.setPinnedLibraries(settings.getPinnedLibraryList());
         skinnyEnhancer.setEarLibraries(fullEarLibraryList);
 
         // add weblogic ltw metadata generation to enhancer chain
-        if (generateWeblogicLtwMetadata) {
+        ModuleEnhancer<EarModule> enhancer = skinnyEnhancer;
+        if (settings.isGenerateWeblogicLtwMetadata()) {
             WeblogicLtwMetadataEnhancer ltwEnhancer = new WeblogicLtwMetadataEnhancer();
             ltwEnhancer.setSkinnyEnhancer(skinnyEnhancer);
-            return ltwEnhancer;
-        } else {
-            return skinnyEnhancer;
+            enhancer = ltwEnhancer;
+        }
+
+        // add package index report to enhancer chain
+        if (settings.isPackageIndexReport()) {
+            PackageIndexEnhancer packageIndexEnhancer = packageIndexEnhancerProvider.get();
+            packageIndexEnhancer.setSkinnyEnhancer(skinnyEnhancer);
+            packageIndexEnhancer.setNextEnhancer(enhancer);
+            enhancer = packageIndexEnhancer;
         }
+        return enhancer;
     }
 }
@@ -4,6 +4,7 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.mycila.guice.ext.closeable.CloseableModule;
 import com.mycila.guice.ext.jsr250.Jsr250Module;
+import net.segner.maven.plugins.communal.io.ArchiveBackendType;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -12,8 +13,10 @@ import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
 import org.eclipse.sisu.Description;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,15 +43,165 @@ public class EarLayoutEnhancerMojo extends AbstractMojo {
     protected List<LibraryFilter> pinnedLibraryList = new ArrayList<>();
     @Parameter(defaultValue = "true")
     protected Boolean warningBreaksBuild;
+    /**
+     * How libraries in different modules are recognized as the same library: by file {@code NAME}, by {@code CONTENT} digest or by
+     * maven {@code COORDINATES}.
+     */
+    @Parameter(defaultValue = "NAME")
+    protected LibraryIdentity libraryIdentity;
+    /**
+     * Skips the layout when the packaged EAR is unchanged since the plugin last enhanced it with the same configuration.
+     */
+    @Parameter(defaultValue = "true")
+    protected Boolean skipUnchangedEar;
+    /**
+     * Applies the library relocations to the packed EAR in a single streaming pass, copying unchanged entries without
+     * recompressing them, rather than updating each nested archive in place.
+     */
+    @Parameter(defaultValue = "false")
+    protected Boolean streamingRewrite;
+    /**
+     * Implementation used to change packed archives: {@code TRUEVFS} or {@code ZIPFS}. Exploded directories are always
+     * changed directly.
+     */
+    @Parameter(defaultValue = "TRUEVFS")
+    protected ArchiveBackendType archiveBackend;
+    /**
+     * Number of worker threads used to scan modules and libraries, {@code 0} uses one thread per available processor.
+     */
+    @Parameter(property = "skinnywar.threads", defaultValue = "0")
+    protected Integer threads;
+    /**
+     * What to do with different versions of the same library in different modules: keep them all ({@code NONE}), keep
+     * the {@code HIGHEST}, {@code LOWEST} or {@code PINNED} version in the shared location, or {@code FAIL} the build.
+     */
+    @Parameter(defaultValue = "NONE")
+    protected VersionConvergence versionConvergence;
+    /**
+     * Versions kept by the {@code PINNED} version convergence, as {@code groupId:artifactId:version}.
+     */
+    @Parameter(alias = "pinnedVersions")
+    protected List<String> pinnedVersionList = new ArrayList<>();
+    /**
+     * Writes reports of the classes still found in more than one library of the EAR after the layout, and of packages
+     * split over several libraries, to {@code target/skinnywar}.
+     */
+    @Parameter(property = "skinnywar.classIndexReport", defaultValue = "false")
+    protected Boolean classIndexReport;
+    /**
+     * Only writes the layout plan to {@code target/skinnywar/<finalName>-layout-plan.txt}, leaving the EAR unchanged.
+     */
+    @Parameter(property = "skinnywar.dryRun", defaultValue = "false")
+    protected Boolean dryRun;
+    /**
+     * Hard links the libraries copied within the exploded EAR, and identical pinned libraries of the exploded modules,
+     * instead of copying them. Requires a filesystem supporting hard links, otherwise the libraries are copied.
+     */
+    @Parameter(property = "skinnywar.linkExplodedLibraries", defaultValue = "false")
+    protected Boolean linkExplodedLibraries;
+    /**
+     * Reports the packages of the shared libraries and of the EAR libraries in
+     * {@code target/skinnywar/<finalName>-package-index.txt}.
+     */
+    @Parameter(property = "skinnywar.packageIndexReport", defaultValue = "false")
+    protected Boolean packageIndexReport;
+    /**
+     * Class-loading log of an earlier run, written with {@code -verbose:class} or {@code -Xlog:class+load}. Orders the
+     * shared libraries and the Class-Path entries hottest first, and reports the libraries never loaded.
+     */
+    @Parameter(property = "skinnywar.classLoadingLog")
+    protected File classLoadingLog;
+    /**
+     * Stores the nested archives ({@code .jar}, {@code .war}, ...) of the archives rewritten by the streaming rewrite,
+     * rather than deflating them again. Uses the streaming rewrite.
+     */
+    @Parameter(property = "skinnywar.storeNestedArchives", defaultValue = "false")
+    protected Boolean storeNestedArchives;
+    /**
+     * Deflate level, 0 to 9, of the other entries written by the streaming rewrite. -1 for the default level. Any other
+     * level uses the streaming rewrite.
+     */
+    @Parameter(property = "skinnywar.compressionLevel", defaultValue = "-1")
+    protected Integer compressionLevel;
+    /**
+     * Writes the rewritten archives with their entries in a canonical order and with the timestamp of
+     * {@code project.build.outputTimestamp}, so identical inputs give byte-identical archives. Uses the streaming rewrite.
+     */
+    @Parameter(property = "skinnywar.reproducible", defaultValue = "false")
+    protected Boolean reproducible;
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    protected String outputTimestamp;
+    /**
+     * Directory of the temporary files, such as buffers and extracted nested archives. The default temporary directory
+     * if not set.
+     */
+    @Parameter(property = "skinnywar.bufferDirectory")
+    protected File bufferDirectory;
+    /**
+     * Largest buffer kept in memory, in bytes. Larger buffers are written to a temporary file.
+     */
+    @Parameter(property = "skinnywar.bufferMemoryThreshold", defaultValue = "1048576")
+    protected Integer bufferMemoryThreshold;
+    /**
+     * Memory held by all the buffers kept in memory, in bytes. Further buffers are written to temporary files.
+     */
+    @Parameter(property = "skinnywar.bufferMemoryBudget", defaultValue = "67108864")
+    protected Long bufferMemoryBudget;
+    /**
+     * Verifies the EAR once written: its central directory and the size and CRC-32 of every entry, and those of the
+     * modules within. Fails the build if the EAR is corrupt.
+     */
+    @Parameter(property = "skinnywar.verifyEar", defaultValue = "false")
+    protected Boolean verifyEar;
     @Parameter(defaultValue = "${project.build}")
     protected Build build;
+    /**
+     * Receives the key numbers of the layout report as {@code skinnywar.*} properties.
+     */
+    @Parameter(defaultValue = "${project}", readonly = true)
+    protected MavenProject project;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         Injector injector = Guice.createInjector(
                 new CloseableModule(), new Jsr250Module(),   //supports the object lifecycle, in our case @PostConstruct
-                new EarLayoutEnhancerModule(communalModuleName, earLibraryList, pinnedLibraryList, forceAspectJLibToEar, generateWeblogicLtwMetadata, warningBreaksBuild, build, addToManifestClasspath));
+                new EarLayoutEnhancerModule(getSettings()));
         EarLayoutEnhancer plugin = injector.getInstance(EarLayoutEnhancer.class);
         plugin.start();
+        if (project != null) {
+            project.getProperties().putAll(injector.getInstance(LayoutReport.class).getProperties());
+        }
+    }
+
+    private EarLayoutSettings getSettings() {
+        return EarLayoutSettings.builder(build)
+                .communalModuleName(communalModuleName)
+                .earLibraryList(earLibraryList)
+                .pinnedLibraryList(pinnedLibraryList)
+                .forceAspectJLibToEar(forceAspectJLibToEar)
+                .generateWeblogicLtwMetadata(generateWeblogicLtwMetadata)
+                .warningBreaksBuild(warningBreaksBuild)
+                .addToManifestClasspath(addToManifestClasspath)
+                .libraryIdentity(libraryIdentity)
+                .skipUnchangedEar(skipUnchangedEar)
+                .streamingRewrite(streamingRewrite)
+                .archiveBackendType(archiveBackend)
+                .threads(threads)
+                .versionConvergence(versionConvergence)
+                .pinnedVersionList(pinnedVersionList)
+                .classIndexReport(classIndexReport)
+                .dryRun(dryRun)
+                .linkExplodedLibraries(linkExplodedLibraries)
+                .packageIndexReport(packageIndexReport)
+                .classLoadingLog(classLoadingLog != null ? classLoadingLog.getPath() : null)
+                .storeNestedArchives(storeNestedArchives)
+                .compressionLevel(compressionLevel)
+                .reproducible(reproducible)
+                .outputTimestamp(outputTimestamp)
+                .bufferDirectory(bufferDirectory != null ? bufferDirectory.getPath() : null)
+                .bufferMemoryThreshold(bufferMemoryThreshold)
+                .bufferMemoryBudget(bufferMemoryBudget)
+                .verifyEar(verifyEar)
+                .build();
     }
 }
@@ -0,0 +1,86 @@
+package net.segner.maven.plugins.communal;
+
+import lombok.Builder;
+import lombok.Singular;
+import lombok.Value;
+import net.segner.maven.plugins.communal.io.ArchiveBackendType;
+import net.segner.maven.plugins.communal.io.BufferPool;
+import org.apache.commons.lang3.Validate;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Configuration of the EAR layout, as set on the mojo. Settings that are not set keep the defaults of the mojo.
+ */
+@Value
+@Builder(builderClassName = "Builder")
+public class EarLayoutSettings {
+
+    Build projectBuild;
+    String communalModuleName;
+    @Singular("earLibrary")
+    List<LibraryFilter> earLibraryList;
+    @Singular("pinnedLibrary")
+    List<LibraryFilter> pinnedLibraryList;
+    boolean forceAspectJLibToEar;
+    boolean generateWeblogicLtwMetadata;
+    boolean warningBreaksBuild;
+    boolean addToManifestClasspath;
+    LibraryIdentity libraryIdentity;
+    boolean skipUnchangedEar;
+    boolean streamingRewrite;
+    ArchiveBackendType archiveBackendType;
+    /**
+     * number of worker threads, 0 for one per available processor
+     */
+    int threads;
+    VersionConvergence versionConvergence;
+    @Singular("pinnedVersion")
+    List<String> pinnedVersionList;
+    boolean classIndexReport;
+    boolean dryRun;
+    boolean linkExplodedLibraries;
+    boolean packageIndexReport;
+    String classLoadingLog;
+    boolean storeNestedArchives;
+    /**
+     * deflate level, -1 for the default level
+     */
+    int compressionLevel;
+    boolean reproducible;
+    String outputTimestamp;
+    String bufferDirectory;
+    int bufferMemoryThreshold;
+    long bufferMemoryBudget;
+    boolean verifyEar;
+
+    /**
+     * @param build build of the project packaging the EAR
+     */
+    @Nonnull
+    public static Builder builder(@Nonnull Build build) {
+        return new Builder().projectBuild(Validate.notNull(build, "No project build"));
+    }
+
+    /**
+     * Defaults of the mojo, the remaining fields and setters are generated
+     */
+    public static final class Builder {
+
+        private boolean forceAspectJLibToEar = true;
+        private boolean generateWeblogicLtwMetadata = true;
+        private boolean warningBreaksBuild = true;
+        private LibraryIdentity libraryIdentity = LibraryIdentity.NAME;
+        private boolean skipUnchangedEar = true;
+        private ArchiveBackendType archiveBackendType = ArchiveBackendType.TRUEVFS;
+        private VersionConvergence versionConvergence = VersionConvergence.NONE;
+        private int compressionLevel = -1;
+        private int bufferMemoryThreshold = BufferPool.DEFAULT_MEMORY_THRESHOLD;
+        private long bufferMemoryBudget = BufferPool.DEFAULT_MEMORY_BUDGET;
+
+        private Builder() {
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package net.segner.maven.plugins.communal;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.enhancer.LayoutPlan;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Collects what the layout did during a run: the decision taken for every library, the bytes added to and removed from
+ * each module, the size of the EAR and its modules before and after, and the wall time of each phase.
+ * <p>
+ * The report is written to {@code target/skinnywar/<finalName>-layout-report.json}, its summary to
+ * {@code target/skinnywar/<finalName>-layout-report.csv} as a header and a single row, and the summary is available as
+ * project properties prefixed with {@code skinnywar.}.
+ */
+@Singleton
+@Slf4j
+public class LayoutReport {
+
+    public static final String JSON_SUFFIX = "-layout-report.json";
+    public static final String CSV_SUFFIX = "-layout-report.csv";
+    public static final String PROPERTY_PREFIX = "skinnywar.";
+
+    public enum Decision {
+        /** moved to the shared location */
+        SHARED,
+        /** moved to the EAR library folder */
+        EAR,
+        /** left in its modules by configuration */
+        PINNED,
+        /** only found in a single module */
+        KEPT,
+        /** found with the same name but a different identity, left in its modules */
+        CONFLICT,
+        /** removed in favor of another version of the library */
+        DROPPED
+    }
+
+    public enum Phase {
+        /** listing the modules and their libraries */
+        SCAN("scan"),
+        /** fingerprinting the libraries or reading their coordinates */
+        IDENTIFY("identify"),
+        /** deciding the location of every library */
+        PLAN("plan"),
+        /** applying the plan */
+        RELOCATE("relocate"),
+        /** editing the module manifests, written along with the relocation */
+        MANIFEST("manifest"),
+        /** indexing the classes of the EAR */
+        CLASS_INDEX("classIndex"),
+        /** writing the archives to disk */
+        WRITE("write"),
+        /** verifying the written EAR */
+        VERIFY("verify"),
+        /** the whole run */
+        TOTAL("total");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    @Inject
+    private EarModule earModule;
+    @Inject
+    @Named("project.build")
+    private Build build;
+
+    private final List<LibraryRecord> libraries = new ArrayList<>();
+    private final Map<String, ModuleRecord> modules = new LinkedHashMap<>();
+    private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+    private long earSizeBefore;
+    private long earSizeAfter;
+    private boolean skipped;
+
+    public LayoutReport() {
+        // every phase is reported, so the columns of the summary stay the same between runs
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, 0L);
+        }
+    }
+
+    public synchronized void recordLibrary(@Nonnull String libraryName, @Nonnull Decision decision, @Nonnull Collection<ApplicationModule> libraryModules, long size) {
+        List<String> moduleNames = libraryModules.stream().map(ApplicationModule::getName).collect(Collectors.toList());
+        libraries.add(new LibraryRecord(libraryName, decision, moduleNames, size));
+    }
+
+    /**
+     * Records the libraries each module receives and loses by the plan
+     *
+     * @param librarySize size of a library file, read before the plan is applied
+     */
+    public synchronized void recordPlan(@Nonnull LayoutPlan plan, @Nonnull ToLongFunction<TFile> librarySize) {
+        plan.getAdditions().forEach((module, additions) -> {
+            ModuleRecord record = getModule(module.getName());
+            for (Pair<ApplicationModule, TFile> library : additions) {
+                record.librariesAdded++;
+                record.bytesAdded += librarySize.applyAsLong(library.getRight());
+            }
+        });
+        plan.getRemovals().forEach((module, removals) -> {
+            ModuleRecord record = getModule(module.getName());
+            for (String libraryName : removals) {
+                record.librariesRemoved++;
+                record.bytesRemoved += librarySize.applyAsLong(new TFile(module.getLibrary(), libraryName));
+            }
+        });
+    }
+
+    /**
+     * Adds the wall time since the phase started to the phase
+     */
+    public synchronized void recordPhase(@Nonnull Phase phase, long startNanos) {
+        phases.merge(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), Long::sum);
+    }
+
+    /**
+     * Records the size of the EAR and its modules before the layout
+     */
+    public synchronized void recordEarBefore() {
+        earSizeBefore = readModuleSizes((record, size) -> record.sizeBefore = size);
+    }
+
+    /**
+     * Records the size of the EAR and its modules after the layout, once all changes are written to disk
+     */
+    public synchronized void recordEarAfter() {
+        earSizeAfter = readModuleSizes((record, size) -> record.sizeAfter = size);
+    }
+
+    public synchronized void setSkipped(boolean skipped) {
+        this.skipped = skipped;
+    }
+
+    /**
+     * @return the key numbers of the run, named as the project properties they are exposed as
+     */
+    @Nonnull
+    public synchronized Map<String, String> getProperties() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put(PROPERTY_PREFIX + "skipped", String.valueOf(skipped));
+        properties.put(PROPERTY_PREFIX + "earSizeBefore", String.valueOf(earSizeBefore));
+        properties.put(PROPERTY_PREFIX + "earSizeAfter", String.valueOf(earSizeAfter));
+        properties.put(PROPERTY_PREFIX + "bytesSaved", String.valueOf(earSizeBefore - earSizeAfter));
+        for (Decision decision : Decision.values()) {
+            properties.put(PROPERTY_PREFIX + "libraries" + StringUtils.capitalize(decision.name().toLowerCase()), String.valueOf(countLibraries(decision)));
+        }
+        phases.forEach((phase, millis) -> properties.put(PROPERTY_PREFIX + "time" + StringUtils.capitalize(phase.label), String.valueOf(millis)));
+        return properties;
+    }
+
+    /**
+     * Writes the report files
+     */
+    public synchronized void write() throws IOException {
+        File jsonFile = getReportFile(JSON_SUFFIX);
+        Files.createDirectories(jsonFile.getParentFile().toPath());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.println("  \"ear\": " + quote(earModule.getName()) + ",");
+            out.println("  \"skipped\": " + skipped + ",");
+            out.println("  \"earSizeBefore\": " + earSizeBefore + ",");
+            out.println("  \"earSizeAfter\": " + earSizeAfter + ",");
+            out.println("  \"phases\": {" + phases.entrySet().stream()
+                    .map(phase -> quote(phase.getKey().label) + ": " + phase.getValue())
+                    .collect(Collectors.joining(", ")) + "},");
+            out.println("  \"modules\": [");
+            out.println(modules.entrySet().stream()
+                    .map(module -> "    {\"name\": " + quote(module.getKey()) + ", " + module.getValue().toJson() + "}")
+                    .collect(Collectors.joining(",\n")));
+            out.println("  ],");
+            out.println("  \"libraries\": [");
+            out.println(libraries.stream()
+                    .map(library -> "    " + library.toJson())
+                    .collect(Collectors.joining(",\n")));
+            out.println("  ]");
+            out.println("}");
+        }
+
+        File csvFile = getReportFile(CSV_SUFFIX);
+        Map<String, String> properties = getProperties();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(csvFile.toPath(), StandardCharsets.UTF_8))) {
+            out.println(properties.keySet().stream().map(key -> StringUtils.removeStart(key, PROPERTY_PREFIX)).collect(Collectors.joining(",")));
+            out.println(String.join(",", properties.values()));
+        }
+
+        log.info("Layout report: {} shared, {} ear, {} pinned, {} kept libraries, EAR {} -> {} bytes, see {}",
+                countLibraries(Decision.SHARED), countLibraries(Decision.EAR), countLibraries(Decision.PINNED), countLibraries(Decision.KEPT),
+                earSizeBefore, earSizeAfter, jsonFile);
+    }
+
+    @Nonnull
+    File getReportFile(String suffix) {
+        return new File(build.getDirectory() + File.separator + LayoutUpToDateCheck.STATE_FOLDER, build.getFinalName() + suffix);
+    }
+
+    private long countLibraries(Decision decision) {
+        return libraries.stream().filter(library -> library.decision == decision).count();
+    }
+
+    private ModuleRecord getModule(String name) {
+        return modules.computeIfAbsent(name, moduleName -> new ModuleRecord());
+    }
+
+    private interface SizeConsumer {
+        void accept(ModuleRecord record, long size);
+    }
+
+    /**
+     * Reads the stored size of every module packed in the EAR, directly from the EAR on disk
+     *
+     * @return size of the EAR, 0 if it is not a file
+     */
+    private long readModuleSizes(SizeConsumer consumer) {
+        File earFile = new File(earModule.getModuleRoot().getPath());
+        if (!earFile.isFile()) {
+            return 0;
+        }
+        try (ZipFile ear = new ZipFile(earFile)) {
+            Enumeration<? extends ZipEntry> entries = ear.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && !entry.getName().contains("/")) {
+                    consumer.accept(getModule(entry.getName()), entry.getCompressedSize());
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Unable to read module sizes of {}: {}", earFile, e.toString());
+        }
+        return earFile.length();
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class LibraryRecord {
+        private final String name;
+        private final Decision decision;
+        private final List<String> modules;
+        private final long size;
+
+        LibraryRecord(String name, Decision decision, List<String> modules, long size) {
+            this.name = name;
+            this.decision = decision;
+            this.modules = modules;
+            this.size = size;
+        }
+
+        String toJson() {
+            return "{\"name\": " + quote(name) + ", \"decision\": " + quote(decision.name()) + ", \"size\": " + size
+                    + ", \"modules\": [" + modules.stream().map(LayoutReport::quote).collect(Collectors.joining(", ")) + "]}";
+        }
+    }
+
+    private static final class ModuleRecord {
+        private long sizeBefore;
+        private long sizeAfter;
+        private int librariesAdded;
+        private long bytesAdded;
+        private int librariesRemoved;
+        private long bytesRemoved;
+
+        String toJson() {
+            return "\"sizeBefore\": " + sizeBefore + ", \"sizeAfter\": " + sizeAfter
+                    + ", \"librariesAdded\": " + librariesAdded + ", \"bytesAdded\": " + bytesAdded
+                    + ", \"librariesRemoved\": " + librariesRemoved + ", \"bytesRemoved\": " + bytesRemoved;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package net.segner.maven.plugins.communal;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+import net.segner.maven.plugins.communal.io.BufferPool;
+import net.segner.maven.plugins.communal.io.CompressionPolicy;
+import net.segner.maven.plugins.communal.io.ZipDirectory;
+import net.segner.maven.plugins.communal.library.LibraryFingerprinter;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Records the state of the EAR after a completed layout so that later builds can skip the layout when neither the
+ * packaged EAR, its exploded copy nor the plugin configuration has changed since.
+ * <p>
+ * Archives are compared by their central directories, the name, sizes and CRC-32 of every entry, as the layout reads
+ * them: a module entry of the EAR changes with any of its libraries, without the EAR being read as a whole. Files of the
+ * exploded EAR that are not archives are compared by their contents.
+ */
+@Slf4j
+public class LayoutUpToDateCheck {
+
+    public static final String STATE_FOLDER = "skinnywar";
+    public static final String STATE_FILE_SUFFIX = "-layout-state.properties";
+
+    private static final String KEY_CONFIGURATION = "configuration";
+    private static final String KEY_EAR_SIZE = "ear.size";
+    private static final String KEY_EAR_DIGEST = "ear.digest";
+    private static final String KEY_EXPLODED_DIGEST = "exploded.digest";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Inject
+    private EarModule earModule;
+    @Inject
+    private BufferPool bufferPool;
+    @Inject
+    @Named("project.build")
+    private Build build;
+    @Inject
+    @Named("layoutConfiguration")
+    private String layoutConfiguration;
+
+    /**
+     * @return true if the EAR is unchanged since the last recorded layout
+     */
+    public boolean isUpToDate() {
+        File stateFile = getStateFile();
+        File earFile = getEarFile();
+        if (!stateFile.isFile() || !earFile.isFile()) {
+            return false;
+        }
+        // a separate inspector, the archives are inspected before and after the layout changed them
+        ArchiveInspector inspector = new ArchiveInspector(bufferPool);
+        try {
+            Properties recorded = new Properties();
+            try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+                recorded.load(in);
+            }
+
+            // compare the cheap properties first
+            return StringUtils.equals(recorded.getProperty(KEY_CONFIGURATION), digest(layoutConfiguration))
+                    && StringUtils.equals(recorded.getProperty(KEY_EAR_SIZE), String.valueOf(earFile.length()))
+                    && StringUtils.equals(recorded.getProperty(KEY_EAR_DIGEST), digestEar(inspector, earFile))
+                    && StringUtils.equals(recorded.getProperty(KEY_EXPLODED_DIGEST), digestExplodedEar(inspector));
+        } catch (IOException | UncheckedIOException e) {
+            log.debug("Unable to read layout state, layout will be applied: {}", e.getMessage());
+            return false;
+        } finally {
+            inspector.close();
+        }
+    }
+
+    /**
+     * Records the current EAR as the post-layout state. Must be called once all archive changes are written to disk.
+     */
+    public void record() {
+        File stateFile = getStateFile();
+        File earFile = getEarFile();
+        ArchiveInspector inspector = new ArchiveInspector(bufferPool);
+        try {
+            Properties state = new Properties();
+            state.setProperty(KEY_CONFIGURATION, digest(layoutConfiguration));
+            state.setProperty(KEY_EAR_SIZE, String.valueOf(earFile.length()));
+            state.setProperty(KEY_EAR_DIGEST, digestEar(inspector, earFile));
+            state.setProperty(KEY_EXPLODED_DIGEST, digestExplodedEar(inspector));
+
+            Files.createDirectories(stateFile.getParentFile().toPath());
+            try (OutputStream out = Files.newOutputStream(stateFile.toPath())) {
+                state.store(out, "skinnywar layout state of " + earFile.getName());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Unable to record layout state: {}", e.getMessage());
+        } finally {
+            inspector.close();
+        }
+    }
+
+    @Nonnull
+    File getStateFile() {
+        return new File(build.getDirectory() + File.separator + STATE_FOLDER, build.getFinalName() + STATE_FILE_SUFFIX);
+    }
+
+    @Nonnull
+    private File getEarFile() {
+        return new File(earModule.getModuleRoot().getPath());
+    }
+
+    /**
+     * @return digest of the central directory of the ear
+     */
+    @Nonnull
+    private static String digestEar(ArchiveInspector inspector, File earFile) throws IOException {
+        String directory = describeDirectory(inspector, earFile);
+        if (directory == null) {
+            throw new IOException("Unable to read the central directory of " + earFile);
+        }
+        return digest(directory);
+    }
+
+    /**
+     * @return digest of the relative paths and sizes of every file in the exploded ear, with the central directory of
+     * the archives and the contents of the other files, empty if the ear is not exploded
+     */
+    @Nonnull
+    private String digestExplodedEar(ArchiveInspector inspector) throws IOException {
+        TFile unpackFolder = earModule.getUnpackFolder();
+        if (unpackFolder == null || !new File(unpackFolder.getPath()).isDirectory()) {
+            return StringUtils.EMPTY;
+        }
+        Path root = Paths.get(unpackFolder.getPath());
+        MessageDigest contentDigest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        StringBuilder listing = new StringBuilder();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile)
+                    .sorted()
+                    .forEachOrdered(file -> {
+                        try {
+                            listing.append(root.relativize(file)).append('=').append(Files.size(file)).append(':');
+                            String directory = CompressionPolicy.isArchive(file.getFileName().toString()) ?
+                                    describeDirectory(inspector, file.toFile()) : null;
+                            if (directory != null) {
+                                listing.append(digest(directory));
+                            } else {
+                                digest(file, contentDigest, buffer);
+                                listing.append(LibraryFingerprinter.toHex(contentDigest.digest()));
+                            }
+                            listing.append('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+        return digest(listing.toString());
+    }
+
+    /**
+     * @return name, sizes and CRC-32 of every entry of the archive, null if the archive cannot be read
+     */
+    @Nullable
+    private static String describeDirectory(ArchiveInspector inspector, File archiveFile) {
+        Collection<ZipDirectory.Entry> entries = inspector.entries(archiveFile);
+        if (entries == null) {
+            return null;
+        }
+        StringBuilder directory = new StringBuilder();
+        for (ZipDirectory.Entry entry : entries) {
+            directory.append(entry.getName()).append(entry.isDirectory() ? "/" : "").append('=')
+                    .append(entry.getSize()).append(':').append(entry.getCompressedSize()).append(':')
+                    .append(Long.toHexString(entry.getCrc())).append('\n');
+        }
+        return directory.toString();
+    }
+
+    private static void digest(Path file, MessageDigest digest, byte[] buffer) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+    }
+
+    @Nonnull
+    private static String digest(String value) {
+        return LibraryFingerprinter.toHex(newDigest().digest(Objects.toString(value, StringUtils.EMPTY).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(LibraryFingerprinter.DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
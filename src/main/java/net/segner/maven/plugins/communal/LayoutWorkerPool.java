@@ -0,0 +1,116 @@
+package net.segner.maven.plugins.communal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of worker threads shared by the layout phases. Results are always returned in the order of the
+ * submitted items, so the outcome of a phase does not depend on the number of threads.
+ */
+@Singleton
+@Slf4j
+public class LayoutWorkerPool {
+
+    private static final String THREAD_NAME_PREFIX = "skinnywar-worker-";
+    private static final ThreadLocal<Boolean> WORKER_THREAD = ThreadLocal.withInitial(() -> false);
+
+    private final int threads;
+    private ExecutorService executor;
+
+    @Inject
+    public LayoutWorkerPool(@Named("threads") Integer threads) {
+        this.threads = (threads == null || threads < 1) ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * A unit of work performed for one item
+     */
+    @FunctionalInterface
+    public interface Task<T, R> {
+        R apply(T item) throws IOException;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Runs the task for every item concurrently and waits for all of them to complete.
+     * Tasks submitted from within a worker thread are run on the calling thread, so nested use cannot exhaust the pool.
+     *
+     * @return task results in the order of the items
+     */
+    @Nonnull
+    public <T, R> List<R> map(@Nonnull Collection<T> items, @Nonnull Task<T, R> task) throws IOException {
+        List<R> results = new ArrayList<>(items.size());
+        if (threads == 1 || items.size() < 2 || WORKER_THREAD.get()) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        ExecutorService executorService = getExecutor();
+        for (T item : items) {
+            futures.add(executorService.submit(() -> task.apply(item)));
+        }
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for layout workers");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+        return results;
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            log.debug("Starting {} layout workers", threads);
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(() -> {
+                    WORKER_THREAD.set(true);
+                    runnable.run();
+                }, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
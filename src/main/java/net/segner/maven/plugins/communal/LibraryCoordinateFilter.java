@@ -0,0 +1,75 @@
+package net.segner.maven.plugins.communal;
+
+import net.segner.maven.plugins.communal.library.LibraryCoordinates;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nullable;
+import java.util.regex.Pattern;
+
+/**
+ * Matches libraries by their maven coordinates, given as {@code groupId:artifactId}. Either part may use the '*' and
+ * '?' wildcards, for example {@code org.springframework:*}.
+ * <p>
+ * When the coordinates of a library are not known, the artifactId is taken from the file name as produced by maven
+ * ({@code artifactId-version.jar}) and the groupId cannot be verified.
+ */
+public class LibraryCoordinateFilter implements CoordinateAwareLibraryFilter {
+    private String coordinates;
+    private Pattern groupIdPattern;
+    private Pattern artifactIdPattern;
+
+    public LibraryCoordinateFilter(String coordinates) {
+        Validate.notBlank(coordinates);
+        setCoordinates(coordinates);
+    }
+
+    public LibraryCoordinateFilter() {
+    }
+
+    public void set(String coordinates) {
+        setCoordinates(coordinates);
+    }
+
+    public final String getCoordinates() {
+        return coordinates;
+    }
+
+    public final void setCoordinates(String coordinates) {
+        this.coordinates = coordinates;
+        if (coordinates == null) {
+            groupIdPattern = null;
+            artifactIdPattern = null;
+            return;
+        }
+        String[] parts = StringUtils.split(coordinates.trim(), ':');
+        Validate.isTrue(parts.length == 2, "Library coordinates must be given as groupId:artifactId: " + coordinates);
+        groupIdPattern = LibraryGlobFilter.compile(parts[0]);
+        artifactIdPattern = LibraryGlobFilter.compile(parts[1]);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryCoordinateFilter{" +
+                "coordinates='" + coordinates + '\'' +
+                '}';
+    }
+
+    @Override
+    public final boolean isMatch(String jarName) {
+        return isMatch(jarName, null);
+    }
+
+    @Override
+    public final boolean isMatch(String jarName, @Nullable String libraryCoordinates) {
+        Validate.notBlank(jarName);
+        if (artifactIdPattern == null) {
+            return false;
+        }
+        if (libraryCoordinates != null) {
+            String[] parts = StringUtils.split(libraryCoordinates, ':');
+            return parts.length >= 2 && groupIdPattern.matcher(parts[0]).matches() && artifactIdPattern.matcher(parts[1]).matches();
+        }
+        return artifactIdPattern.matcher(LibraryCoordinates.artifactIdOf(jarName)).matches();
+    }
+}
@@ -0,0 +1,71 @@
+package net.segner.maven.plugins.communal;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches the library file name against a case insensitive wildcard pattern, '*' matching any number of characters and
+ * '?' matching a single character. For example {@code spring-*-4.3.*.jar}
+ */
+public class LibraryGlobFilter implements LibraryFilter {
+    private String glob;
+    private Pattern pattern;
+
+    public LibraryGlobFilter(String glob) {
+        Validate.notBlank(glob);
+        setGlob(glob);
+    }
+
+    public LibraryGlobFilter() {
+    }
+
+    public void set(String glob) {
+        setGlob(glob);
+    }
+
+    public final String getGlob() {
+        return glob;
+    }
+
+    public final void setGlob(String glob) {
+        this.glob = glob;
+        this.pattern = glob == null ? null : compile(glob);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryGlobFilter{" +
+                "glob='" + glob + '\'' +
+                '}';
+    }
+
+    @Override
+    public final boolean isMatch(String jarName) {
+        Validate.notBlank(jarName);
+        return pattern != null && pattern.matcher(jarName).matches();
+    }
+
+    /**
+     * @return case insensitive pattern matching the complete value against the wildcard pattern
+     */
+    static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+}
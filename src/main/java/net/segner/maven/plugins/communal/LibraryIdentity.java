@@ -0,0 +1,24 @@
+package net.segner.maven.plugins.communal;
+
+/**
+ * Determines how libraries found in different modules are recognized as the same library
+ */
+public enum LibraryIdentity {
+
+    /**
+     * libraries are the same when their file names match
+     */
+    NAME,
+
+    /**
+     * libraries are the same when their contents match, regardless of file name
+     */
+    CONTENT,
+
+    /**
+     * libraries are the same when their maven coordinates (groupId:artifactId:version) match, regardless of file name.
+     * Coordinates are read from the pom.properties maven embeds in each library, libraries without one are matched by
+     * file name
+     */
+    COORDINATES
+}
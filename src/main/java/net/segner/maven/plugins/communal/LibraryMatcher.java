@@ -0,0 +1,123 @@
+package net.segner.maven.plugins.communal;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches libraries against a list of {@link LibraryFilter}s, compiled once for repeated use.
+ * <p>
+ * Prefix filters are merged into a single prefix tree, so a library is tested against all of them in one pass over its
+ * name. Every other filter is tested in list order. Decisions are remembered per library.
+ */
+public class LibraryMatcher {
+
+    private final PrefixNode prefixes = new PrefixNode();
+    private final List<LibraryFilter> filters = new ArrayList<>();
+    private final Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+    private final boolean empty;
+    private final boolean coordinateAware;
+
+    public LibraryMatcher(@Nullable Collection<? extends LibraryFilter> libraryFilters) {
+        if (libraryFilters != null) {
+            for (LibraryFilter filter : libraryFilters) {
+                if (filter instanceof LibraryPrefixFilter) {
+                    String lowerPrefix = ((LibraryPrefixFilter) filter).getLowerPrefix();
+                    if (lowerPrefix != null) {
+                        prefixes.add(lowerPrefix);
+                    }
+                } else if (filter != null) {
+                    filters.add(filter);
+                }
+            }
+        }
+        empty = !prefixes.hasChildren() && !prefixes.terminal && filters.isEmpty();
+        coordinateAware = filters.stream().anyMatch(filter -> filter instanceof CoordinateAwareLibraryFilter);
+    }
+
+    /**
+     * @return true if any of the filters can make use of library coordinates
+     */
+    public boolean isCoordinateAware() {
+        return coordinateAware;
+    }
+
+    public boolean isMatch(@Nonnull String libraryName) {
+        return isMatch(libraryName, null);
+    }
+
+    /**
+     * @param coordinates groupId:artifactId[:version] of the library, null if unknown
+     * @return true if any of the filters matches the library
+     */
+    public boolean isMatch(@Nonnull String libraryName, @Nullable String coordinates) {
+        if (empty || StringUtils.isBlank(libraryName)) {
+            return false;
+        }
+        String key = coordinates == null ? libraryName : libraryName + '|' + coordinates;
+        return decisions.computeIfAbsent(key, k -> decide(libraryName, coordinates));
+    }
+
+    private boolean decide(String libraryName, String coordinates) {
+        if (prefixes.matchesPrefixOf(libraryName.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        for (LibraryFilter filter : filters) {
+            boolean match = filter instanceof CoordinateAwareLibraryFilter ?
+                    ((CoordinateAwareLibraryFilter) filter).isMatch(libraryName, coordinates) :
+                    filter.isMatch(libraryName);
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Node of a prefix tree, terminal if a prefix ends at this node
+     */
+    private static class PrefixNode {
+        private Map<Character, PrefixNode> children;
+        private boolean terminal;
+
+        void add(String prefix) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<>();
+                }
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new PrefixNode());
+            }
+            node.terminal = true;
+        }
+
+        boolean hasChildren() {
+            return children != null && !children.isEmpty();
+        }
+
+        /**
+         * @return true if any prefix in the tree is a prefix of the value
+         */
+        boolean matchesPrefixOf(String value) {
+            PrefixNode node = this;
+            for (int i = 0; !node.terminal; i++) {
+                if (i == value.length() || node.children == null) {
+                    return false;
+                }
+                node = node.children.get(value.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -3,12 +3,15 @@ package net.segner.maven.plugins.communal;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 
+import java.util.Locale;
+
 public class LibraryPrefixFilter implements LibraryFilter {
     private String prefix;
+    private String lowerPrefix;
 
     public LibraryPrefixFilter(String prefix) {
         Validate.notBlank(prefix);
-        this.prefix = prefix;
+        setPrefix(prefix);
     }
 
     public LibraryPrefixFilter() {
@@ -24,6 +27,14 @@ public class LibraryPrefixFilter implements LibraryFilter {
 
     public final void setPrefix(String prefix) {
         this.prefix = prefix;
+        this.lowerPrefix = prefix == null ? null : prefix.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the prefix in lower case, as it is matched
+     */
+    final String getLowerPrefix() {
+        return lowerPrefix;
     }
 
     @Override
@@ -35,9 +46,7 @@ public class LibraryPrefixFilter implements LibraryFilter {
 
     public final boolean isMatch(String jarName) {
         Validate.notBlank(jarName);
-        jarName = jarName.toLowerCase();
-        String lowerPrefix = prefix.toLowerCase();
-        return StringUtils.startsWith(jarName, lowerPrefix);
+        return StringUtils.startsWith(jarName.toLowerCase(Locale.ROOT), lowerPrefix);
     }
 }
 
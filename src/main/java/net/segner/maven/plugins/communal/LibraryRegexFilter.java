@@ -0,0 +1,48 @@
+package net.segner.maven.plugins.communal;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches the complete library file name against a case insensitive regular expression.
+ * For example {@code (spring|hibernate)-.*\.jar}
+ */
+public class LibraryRegexFilter implements LibraryFilter {
+    private String regex;
+    private Pattern pattern;
+
+    public LibraryRegexFilter(String regex) {
+        Validate.notBlank(regex);
+        setRegex(regex);
+    }
+
+    public LibraryRegexFilter() {
+    }
+
+    public void set(String regex) {
+        setRegex(regex);
+    }
+
+    public final String getRegex() {
+        return regex;
+    }
+
+    public final void setRegex(String regex) {
+        this.regex = regex;
+        this.pattern = regex == null ? null : Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryRegexFilter{" +
+                "regex='" + regex + '\'' +
+                '}';
+    }
+
+    @Override
+    public final boolean isMatch(String jarName) {
+        Validate.notBlank(jarName);
+        return pattern != null && pattern.matcher(jarName).matches();
+    }
+}
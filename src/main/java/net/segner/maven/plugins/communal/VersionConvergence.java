@@ -0,0 +1,33 @@
+package net.segner.maven.plugins.communal;
+
+/**
+ * Determines what happens when different modules contain different versions of the same artifact
+ */
+public enum VersionConvergence {
+
+    /**
+     * every version is treated as a separate library
+     */
+    NONE,
+
+    /**
+     * the highest version is moved to the shared location, the other versions are dropped
+     */
+    HIGHEST,
+
+    /**
+     * the lowest version is moved to the shared location, the other versions are dropped
+     */
+    LOWEST,
+
+    /**
+     * the configured pinned version is moved to the shared location, the other versions are dropped. Artifacts without
+     * a pinned version are left alone
+     */
+    PINNED,
+
+    /**
+     * different versions of an artifact fail the build
+     */
+    FAIL
+}
@@ -0,0 +1,75 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import com.google.inject.name.Named;
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutUpToDateCheck;
+import net.segner.maven.plugins.communal.library.ClassLoadingProfile;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads the class-loading log, if one is configured, which orders the libraries hottest first, and writes the
+ * libraries of the EAR that were never loaded to {@code target/skinnywar/<finalName>-unloaded-libraries.txt}
+ */
+@Slf4j
+public class ClassLoadingProfileReader {
+
+    public static final String UNLOADED_LIBRARIES_SUFFIX = "-unloaded-libraries.txt";
+    public static final String MSGWARN_EMPTY_CLASS_LOADING_LOG = "No library found in the class-loading log, keeping the library order: ";
+
+    @Inject
+    @Named("classLoadingLog")
+    private String classLoadingLog;
+
+    @Inject
+    @Named("project.build")
+    private Build build;
+
+    /**
+     * @param moduleLibraries libraries of each module of the EAR
+     * @return the profile of the class-loading log, an empty profile keeping the library order if none is configured
+     */
+    @Nonnull
+    public ClassLoadingProfile read(@Nonnull EarModule ear, @Nonnull Collection<List<TFile>> moduleLibraries) throws IOException {
+        if (StringUtils.isBlank(classLoadingLog)) {
+            return ClassLoadingProfile.empty();
+        }
+        ClassLoadingProfile profile = ClassLoadingProfile.read(Paths.get(classLoadingLog));
+        if (profile.isEmpty()) {
+            log.warn(MSGWARN_EMPTY_CLASS_LOADING_LOG + classLoadingLog);
+            return profile;
+        }
+
+        Set<String> unloaded = new TreeSet<>();
+        List<TFile> libraries = new ArrayList<>(ear.getLibraryFiles());
+        moduleLibraries.forEach(libraries::addAll);
+        libraries.stream()
+                .map(TFile::getName)
+                .filter(libraryName -> !profile.isLoaded(libraryName))
+                .forEach(unloaded::add);
+        File unloadedFile = new File(build.getDirectory() + File.separator + LayoutUpToDateCheck.STATE_FOLDER, build.getFinalName() + UNLOADED_LIBRARIES_SUFFIX);
+        Files.createDirectories(unloadedFile.getParentFile().toPath());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(unloadedFile.toPath(), StandardCharsets.UTF_8))) {
+            out.println("# " + unloaded.size() + " libraries never loaded according to " + classLoadingLog);
+            unloaded.forEach(out::println);
+        }
+        log.info("{} libraries never loaded according to the class-loading log, see {}", unloaded.size(), unloadedFile);
+        return profile;
+    }
+}
@@ -0,0 +1,271 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Every change decided by the layout, collected before any archive is changed: libraries added to and removed from
+ * modules, entries prepended to module manifest Class-Paths, and files (descriptors) written to modules.
+ * <p>
+ * A plan is immutable, it is put together with a {@link Builder}.
+ */
+@Slf4j
+public final class LayoutPlan {
+
+    public static final Attributes.Name ATTR_CLASSPATH = new Attributes.Name("Class-Path");
+
+    private final Map<ApplicationModule, List<Pair<ApplicationModule, TFile>>> additions;
+    private final Map<ApplicationModule, List<String>> removals;
+    private final Map<ApplicationModule, List<String>> classPathPrefixes;
+    private final Map<ApplicationModule, Map<String, byte[]>> fileWrites;
+
+    private LayoutPlan(Builder builder) {
+        additions = copy(builder.additions, Collections::unmodifiableList);
+        removals = copy(builder.removals, Collections::unmodifiableList);
+        classPathPrefixes = copy(builder.classPathPrefixes, Collections::unmodifiableList);
+        fileWrites = copy(builder.fileWrites, Collections::unmodifiableMap);
+    }
+
+    private LayoutPlan(LayoutPlan plan, Map<ApplicationModule, Map<String, byte[]>> fileWrites) {
+        additions = plan.additions;
+        removals = plan.removals;
+        classPathPrefixes = Collections.emptyMap();
+        this.fileWrites = copy(fileWrites, Collections::unmodifiableMap);
+    }
+
+    @Nonnull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return target module mapped to the source module and library file of each library it receives
+     */
+    @Nonnull
+    public Map<ApplicationModule, List<Pair<ApplicationModule, TFile>>> getAdditions() {
+        return additions;
+    }
+
+    /**
+     * @return module mapped to the names of the libraries removed from it
+     */
+    @Nonnull
+    public Map<ApplicationModule, List<String>> getRemovals() {
+        return removals;
+    }
+
+    /**
+     * @return module mapped to the entries prepended to the Class-Path of its manifest
+     */
+    @Nonnull
+    public Map<ApplicationModule, List<String>> getClassPathPrefixes() {
+        return classPathPrefixes;
+    }
+
+    /**
+     * @return module mapped to the path and contents of each file written to it
+     */
+    @Nonnull
+    public Map<ApplicationModule, Map<String, byte[]>> getFileWrites() {
+        return fileWrites;
+    }
+
+    /**
+     * @return names of the libraries the module holds once the plan is applied, mapped to the library file each one is
+     * read from until then: the module's own library, or the library it is copied from
+     */
+    @Nonnull
+    public Map<String, TFile> getPlannedLibraries(@Nonnull ApplicationModule module) {
+        Set<String> removed = new HashSet<>(removals.getOrDefault(module, Collections.emptyList()));
+        Map<String, TFile> plannedLibraries = new LinkedHashMap<>();
+        module.getLibraryFiles().stream()
+                .filter(library -> !removed.contains(library.getName()))
+                .forEach(library -> plannedLibraries.put(library.getName(), library));
+        additions.getOrDefault(module, Collections.emptyList())
+                .forEach(addition -> plannedLibraries.putIfAbsent(addition.getRight().getName(), addition.getRight()));
+        return plannedLibraries;
+    }
+
+    /**
+     * @return true if the plan moves or removes any library
+     */
+    public boolean hasLibraryChanges() {
+        return !additions.isEmpty() || !removals.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return !hasLibraryChanges() && classPathPrefixes.isEmpty() && fileWrites.isEmpty();
+    }
+
+    /**
+     * Applies the library changes of the plan through the modules. Libraries are added before any library is removed,
+     * so every source is still present when it is copied. Within each phase the modules are changed concurrently, while
+     * the changes to a single module are applied in plan order by one worker.
+     */
+    public void applyLibraryChanges(@Nonnull LayoutWorkerPool workerPool) throws IOException {
+        workerPool.map(additions.entrySet(), addition -> {
+            ApplicationModule module = addition.getKey();
+            for (Pair<ApplicationModule, TFile> library : addition.getValue()) {
+                module.copy(library.getRight(), getMirroredLibrary(library.getLeft(), library.getRight()), module.getLibraryPath());
+            }
+            return null;
+        });
+        workerPool.map(removals.entrySet(), removal -> {
+            for (String libraryName : removal.getValue()) {
+                removal.getKey().removeLib(libraryName);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Reads the manifest of each module whose Class-Path changes, while the modules are unchanged, so the edited
+     * manifests are written along with the library changes instead of in a separate update of the archives.
+     *
+     * @return a copy of the plan writing the edited manifests in place of its Class-Path changes
+     */
+    @Nonnull
+    public LayoutPlan withEditedManifests() {
+        Map<ApplicationModule, Map<String, byte[]>> edited = new LinkedHashMap<>();
+        classPathPrefixes.forEach((module, classPathPrefix) -> {
+            try {
+                log.info("Updating module manifest: {}", module.getName());
+                Manifest manifest = module.getManifest();
+                List<String> classPath = new ArrayList<>(classPathPrefix);
+                Collections.addAll(classPath, StringUtils.split(StringUtils.defaultString(manifest.getMainAttributes().getValue(ATTR_CLASSPATH)), " "));
+                manifest.getMainAttributes().put(ATTR_CLASSPATH, StringUtils.join(classPath, " "));
+                ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+                manifest.write(manifestBytes);
+                edited.computeIfAbsent(module, m -> new LinkedHashMap<>()).put(JarFile.MANIFEST_NAME, manifestBytes.toByteArray());
+            } catch (IOException e) {
+                log.warn("Failed to write manifest for {}", module.getName()); //TODO respect warningBreaksBuild flag
+            }
+        });
+        fileWrites.forEach((module, files) -> edited.computeIfAbsent(module, m -> new LinkedHashMap<>()).putAll(files));
+        return new LayoutPlan(this, edited);
+    }
+
+    /**
+     * Applies the file changes of the plan, see {@link #withEditedManifests()} for the manifests. The modules are
+     * changed concurrently, each module by one worker.
+     */
+    public void applyModuleEdits(@Nonnull LayoutWorkerPool workerPool) throws IOException {
+        workerPool.map(fileWrites.entrySet(), files -> {
+            for (Map.Entry<String, byte[]> file : files.getValue().entrySet()) {
+                files.getKey().write(file.getKey(), file.getValue());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Writes the plan as text, one change per line with tab separated fields:
+     * <ul>
+     * <li>{@code ADD <module> <library> <source module>}</li>
+     * <li>{@code REMOVE <module> <library>}</li>
+     * <li>{@code CLASSPATH <module> <entries prepended to the manifest Class-Path>}</li>
+     * <li>{@code WRITE <module> <path> <size>}</li>
+     * </ul>
+     */
+    public void write(@Nonnull PrintWriter out) {
+        out.println("# layout plan, one change per line: ADD, REMOVE, CLASSPATH, WRITE");
+        additions.forEach((module, libraries) -> libraries.forEach(library ->
+                out.println(String.join("\t", "ADD", module.getName(), library.getRight().getName(), library.getLeft().getName()))));
+        removals.forEach((module, libraryNames) -> libraryNames.forEach(libraryName ->
+                out.println(String.join("\t", "REMOVE", module.getName(), libraryName))));
+        classPathPrefixes.forEach((module, classPathPrefix) ->
+                out.println(String.join("\t", "CLASSPATH", module.getName(), StringUtils.join(classPathPrefix, " "))));
+        fileWrites.forEach((module, files) -> files.forEach((path, contents) ->
+                out.println(String.join("\t", "WRITE", module.getName(), path, String.valueOf(contents.length)))));
+    }
+
+    /**
+     * @return the exploded copy of the library, if the source module is unpacked and holds a copy of the same size
+     */
+    @Nullable
+    static TFile getMirroredLibrary(@Nonnull ApplicationModule sourceModule, @Nonnull TFile library) {
+        if (!sourceModule.isUnpacked()) {
+            return null;
+        }
+        TFile mirroredLibrary = new TFile(sourceModule.getTargets().getRight(), sourceModule.getLibraryPath() + File.separator + library.getName());
+        return new File(mirroredLibrary.getPath()).length() == library.toNonArchiveFile().length() ? mirroredLibrary : null;
+    }
+
+    private static <V> Map<ApplicationModule, V> copy(Map<ApplicationModule, V> source, Function<V, V> unmodifiable) {
+        Map<ApplicationModule, V> copy = new LinkedHashMap<>();
+        source.forEach((module, value) -> copy.put(module, unmodifiable.apply(value)));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Collects the changes of a plan, in the order they are to be applied
+     */
+    public static final class Builder {
+        private final Map<ApplicationModule, List<Pair<ApplicationModule, TFile>>> additions = new LinkedHashMap<>();
+        private final Map<ApplicationModule, List<String>> removals = new LinkedHashMap<>();
+        private final Map<ApplicationModule, List<String>> classPathPrefixes = new LinkedHashMap<>();
+        private final Map<ApplicationModule, Map<String, byte[]>> fileWrites = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param target       module receiving the library
+         * @param sourceModule module the library is copied from
+         * @param library      library file within the source module
+         */
+        public Builder addLibrary(@Nonnull ApplicationModule target, @Nonnull ApplicationModule sourceModule, @Nonnull TFile library) {
+            additions.computeIfAbsent(target, module -> new ArrayList<>()).add(Pair.of(sourceModule, library));
+            return this;
+        }
+
+        public Builder removeLibrary(@Nonnull ApplicationModule module, @Nonnull String libraryName) {
+            removals.computeIfAbsent(module, m -> new ArrayList<>()).add(libraryName);
+            return this;
+        }
+
+        /**
+         * @param entries Class-Path entries to insert at the beginning of the module's manifest Class-Path
+         */
+        public Builder prependClassPath(@Nonnull ApplicationModule module, @Nonnull List<String> entries) {
+            classPathPrefixes.computeIfAbsent(module, m -> new ArrayList<>()).addAll(entries);
+            return this;
+        }
+
+        /**
+         * @param path     path of the file relative to the module root
+         * @param contents contents replacing the file, if it exists
+         */
+        public Builder writeFile(@Nonnull ApplicationModule module, @Nonnull String path, @Nonnull byte[] contents) {
+            fileWrites.computeIfAbsent(module, m -> new LinkedHashMap<>()).put(path, contents.clone());
+            return this;
+        }
+
+        @Nonnull
+        public LayoutPlan build() {
+            return new LayoutPlan(this);
+        }
+    }
+}
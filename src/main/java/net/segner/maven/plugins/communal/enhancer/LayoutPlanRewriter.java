@@ -0,0 +1,77 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutUpToDateCheck;
+import net.segner.maven.plugins.communal.io.ArchiveBackend;
+import net.segner.maven.plugins.communal.io.ArchiveRewriter;
+import net.segner.maven.plugins.communal.io.ArchiveTransaction;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the library and file changes of a {@link LayoutPlan} in a single {@link ArchiveTransaction}, instead of
+ * updating each nested archive through TrueVFS: the packed EAR is written in a single pass of the
+ * {@link ArchiveRewriter}, and the exploded copy of the EAR, if any, in a single pass over its files.
+ */
+@Slf4j
+public class LayoutPlanRewriter {
+
+    public static final String ROLLBACK_SUFFIX = "-rollback";
+
+    @Inject
+    private ArchiveRewriter archiveRewriter;
+    @Inject
+    private ArchiveBackend archiveBackend;
+    @Inject
+    @Named("project.build")
+    private Build build;
+
+    public void apply(@Nonnull EarModule ear, @Nonnull LayoutPlan plan) throws IOException {
+        if (plan.isEmpty()) {
+            return;
+        }
+
+        // queued in plan order, so the rewritten archives do not depend on the number of threads
+        ArchiveTransaction transaction = new ArchiveTransaction(archiveBackend, archiveRewriter, getBackupDirectory());
+        for (Map.Entry<ApplicationModule, List<Pair<ApplicationModule, TFile>>> addition : plan.getAdditions().entrySet()) {
+            ApplicationModule module = addition.getKey();
+            for (Pair<ApplicationModule, TFile> library : addition.getValue()) {
+                module.within(transaction).copy(library.getRight(), LayoutPlan.getMirroredLibrary(library.getLeft(), library.getRight()), module.getLibraryPath());
+            }
+        }
+        for (Map.Entry<ApplicationModule, List<String>> removal : plan.getRemovals().entrySet()) {
+            ApplicationModule module = removal.getKey();
+            for (String libraryName : removal.getValue()) {
+                module.within(transaction).rm(module.getLibraryPath() + File.separator + libraryName);
+            }
+        }
+        for (Map.Entry<ApplicationModule, Map<String, byte[]>> files : plan.getFileWrites().entrySet()) {
+            for (Map.Entry<String, byte[]> file : files.getValue().entrySet()) {
+                files.getKey().within(transaction).write(file.getKey(), file.getValue());
+            }
+        }
+        log.debug("Rewriting {}", ear.getModuleRoot().getName());
+        transaction.commit();
+    }
+
+    /**
+     * @return folder holding the previous state of the archives while the transaction commits, outside the exploded EAR
+     */
+    @Nonnull
+    Path getBackupDirectory() {
+        return Paths.get(build.getDirectory(), LayoutUpToDateCheck.STATE_FOLDER, build.getFinalName() + ROLLBACK_SUFFIX);
+    }
+}
@@ -0,0 +1,133 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import com.google.inject.name.Named;
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LibraryMatcher;
+import net.segner.maven.plugins.communal.VersionConvergence;
+import net.segner.maven.plugins.communal.library.LibraryCoordinates;
+import net.segner.maven.plugins.communal.library.LibraryVersionSelector;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converges the libraries of an artifact present in more than one version on the version chosen by the
+ * {@link VersionConvergence} policy. Artifacts are recognized by their coordinates, or by file name if their coordinates
+ * are unknown.
+ */
+@Slf4j
+public class LibraryVersionConverger {
+
+    public static final String MSGINFO_DROPPED_VERSION = "Converged version, dropped: ";
+    public static final String MSGWARN_NOT_CONVERGED = "Library versions not converged, no pinned version among: ";
+    public static final String MSGERR_DIVERGING_VERSIONS = "Different versions of the same library: ";
+
+    @Inject
+    @Named("versionConvergence")
+    private VersionConvergence versionConvergence;
+
+    @Inject
+    @Named("pinnedVersionList")
+    private List<String> pinnedVersionList;
+
+    private LibraryVersionSelector versionSelector;
+
+    public boolean isConverging() {
+        return versionConvergence != null && versionConvergence != VersionConvergence.NONE;
+    }
+
+    /**
+     * Keeps one version of every artifact found in more than one version. The libraries of the other versions are taken
+     * out of the library map.
+     *
+     * @param libraryMap         library key mapped to each module containing the library and the library file within it
+     * @param libraryCoordinates coordinates of the libraries, where known
+     * @param pinnedLibraries    libraries that stay in their modules, their versions are not converged
+     * @return key of each kept library mapped to the libraries of the other versions, by module
+     */
+    @Nonnull
+    public Map<String, Map<ApplicationModule, List<TFile>>> converge(@Nonnull Map<String, Map<ApplicationModule, TFile>> libraryMap,
+                                                                     @Nonnull Map<TFile, LibraryCoordinates> libraryCoordinates,
+                                                                     @Nonnull LibraryMatcher pinnedLibraries) {
+        Map<String, Map<ApplicationModule, List<TFile>>> droppedLibraries = new HashMap<>();
+        if (!isConverging()) {
+            return droppedLibraries;
+        }
+        if (versionSelector == null) {
+            versionSelector = new LibraryVersionSelector(versionConvergence, pinnedVersionList);
+        }
+        Map<String, List<String>> artifactToLibraryKeys = new LinkedHashMap<>();
+        libraryMap.forEach((libraryKey, libraryLocations) -> artifactToLibraryKeys
+                .computeIfAbsent(getArtifactKey(libraryLocations.values().iterator().next(), libraryCoordinates), artifactKey -> new ArrayList<>())
+                .add(libraryKey));
+
+        List<String> diverging = new ArrayList<>();
+        artifactToLibraryKeys.forEach((artifactKey, libraryKeys) -> {
+            Map<String, String> versionToLibraryKey = getVersionToLibraryKey(libraryKeys, libraryMap, libraryCoordinates, pinnedLibraries);
+            if (versionToLibraryKey == null || versionToLibraryKey.size() < 2) {
+                return;
+            }
+            if (versionConvergence == VersionConvergence.FAIL) {
+                log.error(MSGERR_DIVERGING_VERSIONS + artifactKey + " " + versionToLibraryKey.keySet());
+                diverging.add(artifactKey);
+                return;
+            }
+            String version = versionSelector.select(artifactKey, versionToLibraryKey.keySet());
+            if (version == null) {
+                log.warn(MSGWARN_NOT_CONVERGED + artifactKey + " " + versionToLibraryKey.keySet());
+                return;
+            }
+
+            String keptLibraryKey = versionToLibraryKey.get(version);
+            Map<ApplicationModule, List<TFile>> dropped = new LinkedHashMap<>();
+            versionToLibraryKey.values().stream()
+                    .filter(libraryKey -> !libraryKey.equals(keptLibraryKey))
+                    .forEach(libraryKey -> libraryMap.remove(libraryKey).forEach((module, library) -> {
+                        log.info("{}{} [{}], keeping {}", MSGINFO_DROPPED_VERSION, library.getName(), module.getName(), version);
+                        dropped.computeIfAbsent(module, m -> new ArrayList<>()).add(library);
+                    }));
+            droppedLibraries.put(keptLibraryKey, dropped);
+        });
+        Validate.validState(diverging.isEmpty(), MSGERR_DIVERGING_VERSIONS + diverging);
+        return droppedLibraries;
+    }
+
+    /**
+     * @return map of version to the library key holding that version, null if the versions cannot be told apart or a
+     * version is pinned to its modules
+     */
+    private Map<String, String> getVersionToLibraryKey(List<String> libraryKeys, Map<String, Map<ApplicationModule, TFile>> libraryMap,
+                                                       Map<TFile, LibraryCoordinates> libraryCoordinates, LibraryMatcher pinnedLibraries) {
+        if (libraryKeys.size() < 2) {
+            return null;
+        }
+        Map<String, String> versionToLibraryKey = new LinkedHashMap<>();
+        for (String libraryKey : libraryKeys) {
+            TFile library = libraryMap.get(libraryKey).values().iterator().next();
+            LibraryCoordinates coordinates = libraryCoordinates.get(library);
+            String version = coordinates != null ? coordinates.getVersion() : LibraryCoordinates.versionOf(library.getName());
+            if (version == null || versionToLibraryKey.containsKey(version)
+                    || pinnedLibraries.isMatch(library.getName(), coordinates != null ? coordinates.toString() : null)) {
+                return null;
+            }
+            versionToLibraryKey.put(version, libraryKey);
+        }
+        return versionToLibraryKey;
+    }
+
+    /**
+     * @return groupId:artifactId of the library, or the artifactId taken from the file name if its coordinates are unknown
+     */
+    private static String getArtifactKey(TFile library, Map<TFile, LibraryCoordinates> libraryCoordinates) {
+        LibraryCoordinates coordinates = libraryCoordinates.get(library);
+        return coordinates != null ? coordinates.getVersionlessKey() : LibraryCoordinates.artifactIdOf(library.getName());
+    }
+}
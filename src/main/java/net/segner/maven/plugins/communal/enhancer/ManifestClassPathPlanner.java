@@ -0,0 +1,60 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import com.google.inject.name.Named;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.library.ClassLoadingProfile;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import net.segner.maven.plugins.communal.module.EarModule;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Plans the manifest class-path of the modules, if enabled: each module refers to the libraries relocated out of it
+ * into the shared module, hottest first, ahead of its own class-path.
+ */
+public class ManifestClassPathPlanner {
+
+    @Inject
+    @Named("addToManifestClasspath")
+    private Boolean addToManifestClasspath;
+
+    /**
+     * @param plan                  plan holding the library changes
+     * @param relocatedLibraryNames each module mapped to the names of the libraries relocated out of it
+     */
+    public void planClassPath(@Nonnull LayoutPlan.Builder plan, @Nonnull EarModule ear, @Nonnull ApplicationModule sharedModule,
+                              @Nonnull Map<ApplicationModule, Set<String>> relocatedLibraryNames, @Nonnull ClassLoadingProfile profile) throws IOException {
+        if (!addToManifestClasspath) {
+            return;
+        }
+        Path moduleRootPath = ear.getModuleRoot().toPath();
+        List<TFile> sharedLibList = profile.sortHottestFirst(getPlannedLibraries(sharedModule, plan.build()), TFile::getName);
+        for (ApplicationModule module : ear.getModules().values()) {
+            Set<String> relocated = relocatedLibraryNames.getOrDefault(module, Collections.emptySet());
+            List<String> classPath = sharedLibList.stream()
+                    .filter(file -> relocated.contains(file.getName()))
+                    .map(file -> moduleRootPath.relativize(file.toPath()).toString())
+                    .collect(Collectors.toList());
+            if (!classPath.isEmpty()) {
+                plan.prependClassPath(module, classPath);
+            }
+        }
+    }
+
+    /**
+     * @return the libraries of the module once the library changes of the plan are applied
+     */
+    private static List<TFile> getPlannedLibraries(ApplicationModule module, LayoutPlan plan) {
+        return plan.getPlannedLibraries(module).keySet().stream()
+                .map(libraryName -> new TFile(module.getLibrary(), libraryName))
+                .collect(Collectors.toList());
+    }
+}
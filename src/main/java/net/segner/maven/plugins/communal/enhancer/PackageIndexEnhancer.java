@@ -0,0 +1,124 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutReport;
+import net.segner.maven.plugins.communal.LayoutUpToDateCheck;
+import net.segner.maven.plugins.communal.library.ClassIndexer;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import net.segner.maven.plugins.communal.module.EarModule;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.maven.model.Build;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reports the packages of the libraries in the shared module and in the EAR, as they are after the layout, listing
+ * every package followed by the libraries holding it.
+ * <p>
+ * The report is written to {@code target/skinnywar/<finalName>-package-index.txt}, the modules are left unchanged. The
+ * report is informational: neither the JDK nor the application servers read an index at the root of a WAR or an EAR.
+ */
+@Slf4j
+public class PackageIndexEnhancer extends AbstractEnhancer<EarModule> {
+
+    public static final String PACKAGE_INDEX_SUFFIX = "-package-index.txt";
+
+    @Inject
+    private ClassIndexer classIndexer;
+    @Inject
+    private LayoutReport layoutReport;
+    @Inject
+    @Named("project.build")
+    private Build build;
+
+    private SkinnyWarEarEnhancer skinnyEnhancer;
+    private ModuleEnhancer<EarModule> nextEnhancer;
+
+    public void setSkinnyEnhancer(SkinnyWarEarEnhancer skinnyEnhancer) {
+        this.skinnyEnhancer = skinnyEnhancer;
+    }
+
+    /**
+     * @param nextEnhancer rest of the enhancer chain, ending with the skinny enhancer
+     */
+    public void setNextEnhancer(ModuleEnhancer<EarModule> nextEnhancer) {
+        this.nextEnhancer = nextEnhancer;
+    }
+
+    @Override
+    public void enhance() throws IOException {
+        Validate.notNull(skinnyEnhancer);
+        Validate.notNull(nextEnhancer);
+        skinnyEnhancer.addPlanContribution(this::reportPackageIndex);
+        nextEnhancer.enhance();
+    }
+
+    private void reportPackageIndex(LayoutPlan.Builder plan) throws IOException {
+        long phaseStart = System.nanoTime();
+        LayoutPlan libraryChanges = plan.build();
+        Set<ApplicationModule> modules = new LinkedHashSet<>();
+        modules.add(skinnyEnhancer.getSharedModule());
+        modules.add(getTargetModule());
+        StringBuilder report = new StringBuilder("# package, followed by the libraries holding it\n");
+        int indexed = 0;
+        for (ApplicationModule module : modules) {
+            Map<TFile, String> libraries = new LinkedHashMap<>();
+            String libraryFolder = StringUtils.strip(module.getLibraryPath().replace('\\', '/'), "/");
+            String libraryPrefix = libraryFolder.isEmpty() ? libraryFolder : libraryFolder + "/";
+            libraryChanges.getPlannedLibraries(module).forEach((libraryName, library) -> libraries.put(library, libraryPrefix + libraryName));
+            if (libraries.isEmpty()) {
+                continue;
+            }
+            report.append("\n# ").append(module.getName()).append('\n')
+                    .append(toPackageIndex(classIndexer.indexPackages(libraries)));
+            indexed += libraries.size();
+        }
+
+        File reportFile = getReportFile();
+        Files.createDirectories(reportFile.getParentFile().toPath());
+        Files.write(reportFile.toPath(), report.toString().getBytes(StandardCharsets.UTF_8));
+        log.info("Indexed the packages of {} libraries, see {}", indexed, reportFile);
+        layoutReport.recordPhase(LayoutReport.Phase.CLASS_INDEX, phaseStart);
+    }
+
+    /**
+     * @param packages library paths mapped to their packages
+     * @return every package followed by the libraries holding it, one package per line
+     */
+    @Nonnull
+    static String toPackageIndex(@Nonnull Map<String, Set<String>> packages) {
+        Map<String, List<String>> packageLibraries = new TreeMap<>();
+        packages.forEach((library, libraryPackages) -> libraryPackages.forEach(packageName ->
+                packageLibraries.computeIfAbsent(packageName, p -> new ArrayList<>()).add(library)));
+        StringBuilder index = new StringBuilder();
+        packageLibraries.forEach((packageName, libraries) ->
+                index.append(packageName).append('\t').append(StringUtils.join(libraries, " ")).append('\n'));
+        return index.toString();
+    }
+
+    @Nonnull
+    File getReportFile() {
+        return new File(build.getDirectory() + File.separator + LayoutUpToDateCheck.STATE_FOLDER, build.getFinalName() + PACKAGE_INDEX_SUFFIX);
+    }
+
+    @Override
+    public void setTargetModule(EarModule targetModule) {
+        super.setTargetModule(targetModule);
+        nextEnhancer.setTargetModule(targetModule);
+    }
+}
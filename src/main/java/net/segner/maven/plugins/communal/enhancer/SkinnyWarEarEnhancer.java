@@ -3,22 +3,44 @@ package net.segner.maven.plugins.communal.enhancer;
 import com.google.inject.name.Named;
 import lombok.extern.slf4j.Slf4j;
 import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutReport;
+import net.segner.maven.plugins.communal.LayoutUpToDateCheck;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
 import net.segner.maven.plugins.communal.LibraryFilter;
+import net.segner.maven.plugins.communal.LibraryIdentity;
+import net.segner.maven.plugins.communal.LibraryMatcher;
+import net.segner.maven.plugins.communal.io.ArchiveBackend;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+import net.segner.maven.plugins.communal.io.FileLinker;
+import net.segner.maven.plugins.communal.library.ClassLoadingProfile;
+import net.segner.maven.plugins.communal.library.LibraryCoordinateReader;
+import net.segner.maven.plugins.communal.library.LibraryCoordinates;
+import net.segner.maven.plugins.communal.library.LibraryFingerprinter;
+import net.segner.maven.plugins.communal.library.LibraryScanCache;
 import net.segner.maven.plugins.communal.module.ApplicationModule;
 import net.segner.maven.plugins.communal.module.EarModule;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.maven.model.Build;
 
 import javax.inject.Inject;
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.jar.Attributes;
-import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -29,157 +51,400 @@ public abstract class SkinnyWarEarEnhancer extends AbstractEnhancer<EarModule> i
     private Boolean warningBreaksBuild;
 
     @Inject
-    @Named("addToManifestClasspath")
-    private Boolean addToManifestClasspath;
+    @Named("libraryIdentity")
+    private LibraryIdentity libraryIdentity;
+
+    @Inject
+    private LibraryFingerprinter libraryFingerprinter;
+
+    @Inject
+    private LibraryCoordinateReader libraryCoordinateReader;
+
+    @Inject
+    private LibraryScanCache libraryScanCache;
+
+    @Inject
+    @Named("streamingRewrite")
+    private Boolean streamingRewrite;
+
+    @Inject
+    @Named("dryRun")
+    private Boolean dryRun;
+
+    @Inject
+    private FileLinker fileLinker;
+
+    @Inject
+    @Named("project.build")
+    private Build build;
+
+    @Inject
+    private LayoutPlanRewriter layoutPlanRewriter;
+
+    @Inject
+    private ArchiveBackend archiveBackend;
+
+    @Inject
+    private ArchiveInspector archiveInspector;
+
+    @Inject
+    private LayoutReport layoutReport;
+
+    @Inject
+    private LayoutWorkerPool workerPool;
+
+    @Inject
+    private LibraryVersionConverger versionConverger;
+
+    @Inject
+    private ClassLoadingProfileReader classLoadingProfileReader;
+
+    @Inject
+    private ManifestClassPathPlanner classPathPlanner;
 
     public static final String MSGDEBUG_COMMUNAL_LIBRARY = " * skinny: ";
     public static final String MSGDEBUG_SINGLE_LIBRARY = "individual: ";
     public static final String MSGDEBUG_PINNED_LIBRARY = "pinned: ";
     public static final String MSGDEBUG_EAR_LIBRARY = "ear library: ";
+    public static final String MSGWARN_LIBRARY_CONFLICT = "Library conflict, same name with different content: ";
+    public static final String MSGWARN_COORDINATE_CONFLICT = "Library conflict, same name with different coordinates: ";
     public static final String MSGINFO_SUCCESS = "Finished Layout";
-    public static final Attributes.Name ATTR_CLASSPATH = new Attributes.Name("Class-Path");
-
-    private Map<String, List<ApplicationModule>> libraryMap;
-    private List<LibraryFilter> pinnedLibraries;
-    private List<LibraryFilter> earLibraries;
+    public static final String MSGINFO_DRY_RUN = "Dry run, no archive changed. Layout plan written to ";
+    public static final String LAYOUT_PLAN_SUFFIX = "-layout-plan.txt";
+    public static final String MSGINFO_LINKED_LIBRARIES = "Linked {} identical pinned libraries in the exploded EAR, saving {} bytes";
+    public static final Attributes.Name ATTR_CLASSPATH = LayoutPlan.ATTR_CLASSPATH;
 
+    private Map<String, Map<ApplicationModule, TFile>> libraryMap;
+    private Map<TFile, String> libraryFingerprints = Collections.emptyMap();
+    private Map<TFile, LibraryCoordinates> libraryCoordinates = Collections.emptyMap();
+    private LayoutPlan.Builder layoutPlan;
+    private final List<PlanContribution> planContributions = new ArrayList<>();
+    private final List<Map<ApplicationModule, TFile>> pinnedLibraryLocations = new ArrayList<>();
+    private final Map<ApplicationModule, Set<String>> relocatedLibraryNames = new HashMap<>();
+    private LibraryMatcher pinnedLibraries = new LibraryMatcher(null);
+    private LibraryMatcher earLibraries = new LibraryMatcher(null);
 
     protected String sharedModuleName;
 
     public void setEarLibraries(List<LibraryFilter> earLibraries) {
-        this.earLibraries = earLibraries;
+        this.earLibraries = new LibraryMatcher(earLibraries);
     }
 
     public void setPinnedLibraries(List<LibraryFilter> pinnedLibraries) {
-        this.pinnedLibraries = pinnedLibraries;
+        this.pinnedLibraries = new LibraryMatcher(pinnedLibraries);
+    }
+
+    /**
+     * Adds changes of its own to the layout plan, before the plan is applied
+     */
+    public interface PlanContribution {
+        void contribute(LayoutPlan.Builder plan) throws IOException;
+    }
+
+    public void addPlanContribution(PlanContribution contribution) {
+        planContributions.add(contribution);
     }
 
     /**
      * move any artifacts with more than one location over to the shared module
      */
     protected void makeSkinnyModules() throws IOException {
+        LayoutPlan.Builder plan = planLayout();
+        for (PlanContribution contribution : planContributions) {
+            contribution.contribute(plan);
+        }
+        applyLayout(plan.build());
+    }
+
+    /**
+     * Decides the location of every library and the manifest changes, reading the modules without changing them
+     */
+    protected LayoutPlan.Builder planLayout() throws IOException {
         Validate.notNull(getTargetModule(), "No target module");
 
         // map jars (libraries) to their containing module, afterwards the map will contain:
-        //     <libraryName> -> <list of containing modules>
+        //     <library identity> -> <containing module -> library file in that module>
         //
-        libraryMap = new HashMap<>();
+        long phaseStart = System.nanoTime();
+        libraryMap = new LinkedHashMap<>();
         Map<String, ApplicationModule> earModules = getTargetModule().getModules();
-        earModules.values().forEach(this::mergeModuleLibrariesIntoMap);
+        // list the libraries of every module concurrently, each listing mounts a nested archive unless an earlier EAR
+        // of the build held the same module
+        List<ApplicationModule> modules = new ArrayList<>(earModules.values());
+        List<List<TFile>> libraries = workerPool.map(modules, libraryScanCache::getLibraryFiles);
+        Map<ApplicationModule, List<TFile>> moduleLibraries = new LinkedHashMap<>();
+        for (int i = 0; i < modules.size(); i++) {
+            moduleLibraries.put(modules.get(i), libraries.get(i));
+        }
+        layoutReport.recordPhase(LayoutReport.Phase.SCAN, phaseStart);
 
-        // migrate jars that are contained in more than one module
-        final ApplicationModule sharedModule = StringUtils.isNotBlank(sharedModuleName) ? earModules.get(sharedModuleName) : getTargetModule();
-        Validate.notNull(sharedModule, "Shared module not found: " + sharedModuleName);
-        libraryMap.forEach((jarName, warList) -> applyPackagingLayoutToJar(sharedModule, jarName, warList));
-
-        // build list of jars in shared module
-        // go through each module and add list to manifest class-path
-        if (addToManifestClasspath) {
-            Path moduleRootPath = getTargetModule().getModuleRoot().toPath();
-            List<String> sharedLibList = sharedModule.getLibraryFiles()
-                    .stream()
-                    .map(file -> {
-                        return moduleRootPath.relativize(file.toPath()).toString();
-                    })
-                    .collect(Collectors.toList());
-            earModules.forEach((name, module) -> {
-                Manifest manifest = null;
-                try {
-                    log.info("Updating module manifest: {}", module.getName());
-                    manifest = module.getManifest();
-                    List<String> classpath = parseClassPathAttribute(manifest);
-                    classpath.addAll(0, sharedLibList);
-                    manifest.getMainAttributes().put(ATTR_CLASSPATH, StringUtils.join(classpath, " "));
-                    module.saveManifest(manifest);
-                } catch (IOException e) {
-                    log.warn("Failed to write manifest for {}", module.getName()); //TODO respect warningBreaksBuild flag
-                }
-            });
+        phaseStart = System.nanoTime();
+        if (libraryIdentity == LibraryIdentity.CONTENT) {
+            libraryFingerprints = libraryFingerprinter.fingerprintAll(moduleLibraries.values().stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList()));
+        }
+        if (libraryIdentity == LibraryIdentity.COORDINATES || versionConverger.isConverging() || earLibraries.isCoordinateAware() || pinnedLibraries.isCoordinateAware()) {
+            libraryCoordinates = libraryCoordinateReader.readAll(moduleLibraries.values().stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList()));
+        }
+        layoutReport.recordPhase(LayoutReport.Phase.IDENTIFY, phaseStart);
+        if (libraryScanCache.getHits() > 0) {
+            log.info("Reused {} cached module and library scans", libraryScanCache.getHits());
+        }
+
+        phaseStart = System.nanoTime();
+        moduleLibraries.forEach(this::mergeModuleLibrariesIntoMap);
+        if (libraryIdentity == LibraryIdentity.CONTENT) {
+            removeConflictingLibraries(MSGWARN_LIBRARY_CONFLICT);
+        } else if (libraryIdentity == LibraryIdentity.COORDINATES) {
+            removeConflictingLibraries(MSGWARN_COORDINATE_CONFLICT);
+        }
+        Map<String, Map<ApplicationModule, List<TFile>>> droppedLibraries = versionConverger.converge(libraryMap, libraryCoordinates, pinnedLibraries);
+
+        // migrate jars that are contained in more than one module, the hottest libraries first
+        ClassLoadingProfile classLoadingProfile = classLoadingProfileReader.read(getTargetModule(), moduleLibraries.values());
+        final ApplicationModule sharedModule = getSharedModule();
+        layoutPlan = LayoutPlan.builder();
+        pinnedLibraryLocations.clear();
+        relocatedLibraryNames.clear();
+        classLoadingProfile.sortHottestFirst(libraryMap.entrySet(), library -> library.getValue().values().iterator().next().getName())
+                .forEach(library -> applyPackagingLayoutToJar(sharedModule, library.getValue(), droppedLibraries.getOrDefault(library.getKey(), Collections.emptyMap())));
+        LayoutPlan libraryChanges = layoutPlan.build();
+        layoutReport.recordPlan(libraryChanges, this::getLibrarySize);
+
+        // go through each module and add the jars relocated out of it to its manifest class-path
+        classPathPlanner.planClassPath(layoutPlan, getTargetModule(), sharedModule, relocatedLibraryNames, classLoadingProfile);
+        layoutReport.recordPhase(LayoutReport.Phase.PLAN, phaseStart);
+        return layoutPlan;
+    }
+
+    /**
+     * Writes the plan to {@code target/skinnywar/<finalName>-layout-plan.txt} and, unless this is a dry run, applies it:
+     * the edited manifests are prepared while the modules are unchanged, then the libraries are relocated and the
+     * manifests and descriptors of the modules are written in the same update of the archives.
+     */
+    protected void applyLayout(LayoutPlan plan) throws IOException {
+        File planFile = new File(build.getDirectory() + File.separator + LayoutUpToDateCheck.STATE_FOLDER, build.getFinalName() + LAYOUT_PLAN_SUFFIX);
+        Files.createDirectories(planFile.getParentFile().toPath());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(planFile.toPath(), StandardCharsets.UTF_8))) {
+            plan.write(out);
+        }
+        if (dryRun) {
+            log.info(MSGINFO_DRY_RUN + planFile);
+            return;
         }
+
+        long phaseStart = System.nanoTime();
+        LayoutPlan edits = plan.withEditedManifests();
+        layoutReport.recordPhase(LayoutReport.Phase.MANIFEST, phaseStart);
+
+        // relocate the libraries and write the manifests in the same update, the archives change from here on
+        phaseStart = System.nanoTime();
+        archiveInspector.close();
+        if (streamingRewrite) {
+            layoutPlanRewriter.apply(getTargetModule(), edits);
+        } else {
+            edits.applyLibraryChanges(workerPool);
+            edits.applyModuleEdits(workerPool);
+            archiveBackend.sync();
+        }
+        layoutReport.recordPhase(LayoutReport.Phase.RELOCATE, phaseStart);
+
+        linkPinnedLibraries();
     }
 
-    private List<String> parseClassPathAttribute(Manifest manifest) {
-        Attributes attrs = manifest.getMainAttributes();
-        String classpath = attrs.containsKey(ATTR_CLASSPATH) ? attrs.getValue(ATTR_CLASSPATH) : StringUtils.EMPTY;
-        return new ArrayList<>(Arrays.asList(StringUtils.split(classpath, " ")));
+    /**
+     * Replaces identical copies of each pinned library in the exploded modules by hard links to a single copy
+     */
+    private void linkPinnedLibraries() throws IOException {
+        int linked = 0;
+        long bytesSaved = 0;
+        for (Map<ApplicationModule, TFile> libraryLocations : pinnedLibraryLocations) {
+            Path canonical = null;
+            for (Map.Entry<ApplicationModule, TFile> location : libraryLocations.entrySet()) {
+                ApplicationModule module = location.getKey();
+                if (!module.isUnpacked()) {
+                    continue;
+                }
+                Path library = Paths.get(new TFile(module.getTargets().getRight(), module.getLibraryPath() + File.separator + location.getValue().getName()).getPath());
+                if (!Files.isRegularFile(library)) {
+                    continue;
+                }
+                if (canonical == null) {
+                    canonical = library;
+                } else if (fileLinker.linkIdentical(canonical, library)) {
+                    linked++;
+                    bytesSaved += Files.size(library);
+                }
+            }
+        }
+        if (linked > 0) {
+            log.info(MSGINFO_LINKED_LIBRARIES, linked, bytesSaved);
+        }
     }
 
-    private void mergeModuleLibrariesIntoMap(ApplicationModule containedModule) {
-        List<TFile> moduleLibraries = containedModule.getLibraryFiles();
+    private void mergeModuleLibrariesIntoMap(ApplicationModule containedModule, List<TFile> moduleLibraries) {
         for (TFile library : moduleLibraries) {
-            String jarName = library.getName();
+            String libraryKey = getLibraryKey(library);
+            if (libraryMap.containsKey(libraryKey) && libraryMap.get(libraryKey).containsKey(containedModule)) {
+                // e.g. a classifier variant renamed without its version, carrying the same coordinates, keep both apart
+                libraryKey = library.getName();
+            }
 
-            List<ApplicationModule> libraryMappings = libraryMap.get(jarName);
+            Map<ApplicationModule, TFile> libraryMappings = libraryMap.get(libraryKey);
             if (libraryMappings == null) {
-                libraryMappings = new ArrayList<>();
-                libraryMap.put(jarName, libraryMappings);
+                libraryMappings = new LinkedHashMap<>();
+                libraryMap.put(libraryKey, libraryMappings);
             }
-            libraryMappings.add(containedModule);
+            libraryMappings.put(containedModule, library);
         }
     }
 
+    private String getLibraryKey(TFile library) {
+        if (libraryIdentity == LibraryIdentity.CONTENT) {
+            return libraryFingerprints.get(library);
+        }
+        if (libraryIdentity == LibraryIdentity.COORDINATES && libraryCoordinates.containsKey(library)) {
+            // classifier variants carry the coordinates of their artifact, only their file name tells them apart
+            LibraryCoordinates coordinates = libraryCoordinates.get(library);
+            String classifier = LibraryCoordinates.classifierOf(library.getName(), coordinates.getVersion());
+            return classifier != null ? coordinates + ":" + classifier : coordinates.toString();
+        }
+        return library.getName();
+    }
+
+    /**
+     * Libraries sharing a name but not their identity cannot be safely relocated to a single location. These are
+     * reported and left in their original modules.
+     */
+    private void removeConflictingLibraries(String conflictMessage) {
+        Map<String, Set<String>> libraryNameToKeys = new HashMap<>();
+        libraryMap.forEach((libraryKey, libraryLocations) -> libraryLocations.values().forEach(library ->
+                libraryNameToKeys.computeIfAbsent(library.getName(), name -> new TreeSet<>()).add(libraryKey)));
+
+        List<String> conflicts = new ArrayList<>();
+        libraryNameToKeys.forEach((jarName, libraryKeys) -> {
+            if (libraryKeys.size() > 1) {
+                conflicts.add(jarName);
+                List<String> variants = new ArrayList<>();
+                for (String libraryKey : libraryKeys) {
+                    variants.add(libraryMap.get(libraryKey).keySet().stream().map(ApplicationModule::getName).collect(Collectors.toList()).toString());
+                }
+                log.warn(conflictMessage + jarName + " " + StringUtils.join(variants, " / "));
+                for (String libraryKey : libraryKeys) {
+                    Map<ApplicationModule, TFile> libraryLocations = libraryMap.get(libraryKey);
+                    layoutReport.recordLibrary(jarName, LayoutReport.Decision.CONFLICT, libraryLocations.keySet(), getLibrarySize(libraryLocations.values().iterator().next()));
+                }
+            }
+        });
+        Validate.isTrue(conflicts.isEmpty() || !warningBreaksBuild, conflictMessage + conflicts);
+
+        for (String jarName : conflicts) {
+            libraryNameToKeys.get(jarName).forEach(libraryMap::remove);
+        }
+    }
+
+    private String getCoordinateText(TFile library) {
+        LibraryCoordinates coordinates = libraryCoordinates.get(library);
+        return coordinates != null ? coordinates.toString() : null;
+    }
+
     /**
      * Applies the modified packaging layout, providing an EAR layout that is LTW friendly
+     *
+     * @param libraryLocations each module containing the library, mapped to the library file within that module
+     * @param dropped          other versions of the library that are to be removed from their modules
      */
-    private void applyPackagingLayoutToJar(ApplicationModule sharedModule, String jarName, List<ApplicationModule> moduleList) {
+    private void applyPackagingLayoutToJar(ApplicationModule sharedModule, Map<ApplicationModule, TFile> libraryLocations, Map<ApplicationModule, List<TFile>> dropped) {
         Validate.notNull(getTargetModule(), "No target module");
 
-        try {
-            if (isPinnedLibrary(jarName)) { // pinned library, do not move
-                moduleList.forEach(war -> log.debug(MSGDEBUG_PINNED_LIBRARY + jarName + " [" + war.getName() + "]"));
+        List<ApplicationModule> moduleList = new ArrayList<>(libraryLocations.keySet());
+        ApplicationModule sourceModule = libraryLocations.containsKey(sharedModule) ? sharedModule : moduleList.get(0);
+        TFile sourceLibrary = libraryLocations.get(sourceModule);
+        String jarName = sourceLibrary.getName();
+        String coordinateText = getCoordinateText(sourceLibrary);
+        if (isPinnedLibrary(jarName, coordinateText)) { // pinned library, do not move
+            moduleList.forEach(war -> log.debug(MSGDEBUG_PINNED_LIBRARY + jarName + " [" + war.getName() + "]"));
+            layoutReport.recordLibrary(jarName, LayoutReport.Decision.PINNED, moduleList, getLibrarySize(sourceLibrary));
+            pinnedLibraryLocations.add(libraryLocations);
 
-            } else if (isEarLibrary(jarName)) { // ear library
-                log.debug(MSGDEBUG_EAR_LIBRARY + jarName);
-                getTargetModule().addLib(new TFile(moduleList.get(0).getLibrary(), jarName));
-                for (ApplicationModule webmodule : moduleList) {
-                    webmodule.removeLib(jarName);
-                }
-
-            } else if (moduleList.size() > 1) { // purgable library (shared)
-                log.debug(MSGDEBUG_COMMUNAL_LIBRARY + jarName);
-                List<ApplicationModule> copyManifest = new ArrayList<>(moduleList);
-                boolean inCommunal = copyManifest.remove(sharedModule);
-                if (!inCommunal) {
-                    sharedModule.addLib(new TFile(moduleList.get(0).getLibrary(), jarName));
-                }
-                for (ApplicationModule module : copyManifest) {
-                    module.removeLib(jarName);
-                }
+        } else if (isEarLibrary(jarName, coordinateText)) { // ear library
+            log.debug(MSGDEBUG_EAR_LIBRARY + jarName);
+            layoutReport.recordLibrary(jarName, LayoutReport.Decision.EAR, moduleList, getLibrarySize(sourceLibrary));
+            layoutPlan.addLibrary(getTargetModule(), sourceModule, sourceLibrary);
+            for (ApplicationModule webmodule : moduleList) {
+                layoutPlan.removeLibrary(webmodule, libraryLocations.get(webmodule).getName());
+            }
+            removeDroppedLibraries(dropped);
+            if (getTargetModule() == sharedModule) {
+                recordRelocation(sharedModule, moduleList, dropped, jarName);
+            }
 
-            } else if (moduleList.size() == 1) { // war library
-                log.debug("{}{} [{}]", MSGDEBUG_SINGLE_LIBRARY, jarName, moduleList.get(0).getName());
+        } else if (moduleList.size() > 1 || !dropped.isEmpty()) { // purgable library (shared, or converged)
+            log.debug(MSGDEBUG_COMMUNAL_LIBRARY + jarName);
+            layoutReport.recordLibrary(jarName, LayoutReport.Decision.SHARED, moduleList, getLibrarySize(sourceLibrary));
+            List<ApplicationModule> copyManifest = new ArrayList<>(moduleList);
+            boolean inCommunal = copyManifest.remove(sharedModule);
+            if (!inCommunal) {
+                layoutPlan.addLibrary(sharedModule, sourceModule, sourceLibrary);
+            }
+            for (ApplicationModule module : copyManifest) {
+                layoutPlan.removeLibrary(module, libraryLocations.get(module).getName());
             }
+            removeDroppedLibraries(dropped);
+            recordRelocation(sharedModule, copyManifest, dropped, jarName);
 
-        } catch (Exception ex) {
-            throw new RuntimeException(ex.getMessage(), ex);
+        } else if (moduleList.size() == 1) { // war library
+            log.debug("{}{} [{}]", MSGDEBUG_SINGLE_LIBRARY, jarName, moduleList.get(0).getName());
+            layoutReport.recordLibrary(jarName, LayoutReport.Decision.KEPT, moduleList, getLibrarySize(sourceLibrary));
         }
     }
 
+    /**
+     * Records that the modules, including those dropping another version, now find the library in the shared module
+     */
+    private void recordRelocation(ApplicationModule sharedModule, List<ApplicationModule> modules, Map<ApplicationModule, List<TFile>> dropped, String jarName) {
+        Set<ApplicationModule> relocatedFrom = new HashSet<>(modules);
+        relocatedFrom.addAll(dropped.keySet());
+        relocatedFrom.remove(sharedModule);
+        relocatedFrom.forEach(module -> relocatedLibraryNames.computeIfAbsent(module, m -> new HashSet<>()).add(jarName));
+    }
+
+    private void removeDroppedLibraries(Map<ApplicationModule, List<TFile>> dropped) {
+        dropped.forEach((module, libraries) -> libraries.forEach(library -> {
+            layoutPlan.removeLibrary(module, library.getName());
+            layoutReport.recordLibrary(library.getName(), LayoutReport.Decision.DROPPED, Collections.singletonList(module), getLibrarySize(library));
+        }));
+    }
+
+    /**
+     * @return size of the library, read from the central directory of its module while the modules are unchanged
+     */
+    private long getLibrarySize(TFile library) {
+        Long size = archiveInspector.size(library);
+        return size != null ? size : library.length();
+    }
+
     public String getSharedModuleName() {
         return sharedModuleName;
     }
 
-    private boolean isPinnedLibrary(String jarName) {
-        if (pinnedLibraries != null) {
-            for (LibraryFilter lib : pinnedLibraries) {
-                if (lib.isMatch(jarName)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    /**
+     * @return the module receiving the shared libraries: the communal module, or the EAR itself
+     */
+    public ApplicationModule getSharedModule() throws IOException {
+        ApplicationModule sharedModule = StringUtils.isNotBlank(sharedModuleName) ? getTargetModule().getModules().get(sharedModuleName) : getTargetModule();
+        Validate.notNull(sharedModule, "Shared module not found: " + sharedModuleName);
+        return sharedModule;
     }
 
-    private boolean isEarLibrary(String jarName) {
-        if (StringUtils.isNotBlank(jarName)) {
-            if (earLibraries != null) {
-                for (LibraryFilter lib : earLibraries) {
-                    if (lib.isMatch(jarName)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    private boolean isPinnedLibrary(String jarName, String coordinates) {
+        return pinnedLibraries.isMatch(jarName, coordinates);
+    }
+
+    private boolean isEarLibrary(String jarName, String coordinates) {
+        return earLibraries.isMatch(jarName, coordinates);
     }
 }
@@ -22,23 +22,29 @@ public class WeblogicLtwMetadataEnhancer extends AbstractEnhancer<EarModule> {
     @Override
     public void enhance() throws IOException {
         Validate.notNull(skinnyEnhancer);
-        skinnyEnhancer.enhance();
         if (skinnyEnhancer instanceof CommunalSkinnyWarEarEnhancer) {
-            log.info("Enhancing EAR with modified Weblogic classloader-structure...");
-            try {
-                WeblogicApplicationXml weblogicApplicationXml = new WeblogicApplicationXml(getTargetModule());
-                weblogicApplicationXml.setupCommunalWeblogicApplicationXml(skinnyEnhancer.getSharedModuleName());
-                weblogicApplicationXml.persistToEarModule();
-
-                log.info("Finished classloader-structure generation.");
-            } catch (ParserConfigurationException | SAXException | TransformerException e) {
-                throw new IOException(e.getMessage(), e);
-            }
-        } else {
+            // the descriptor is written together with the rest of the layout plan
+            skinnyEnhancer.addPlanContribution(this::planClassloaderStructure);
+        }
+        skinnyEnhancer.enhance();
+        if (!(skinnyEnhancer instanceof CommunalSkinnyWarEarEnhancer)) {
             log.info("Ignored classloader-structure generation -- keeping standard (non-communal) WAR layout");
         }
     }
 
+    private void planClassloaderStructure(LayoutPlan.Builder plan) throws IOException {
+        log.info("Enhancing EAR with modified Weblogic classloader-structure...");
+        try {
+            WeblogicApplicationXml weblogicApplicationXml = new WeblogicApplicationXml(getTargetModule());
+            weblogicApplicationXml.setupCommunalWeblogicApplicationXml(skinnyEnhancer.getSharedModuleName());
+            plan.writeFile(getTargetModule(), WeblogicApplicationXml.PATH_RELATIVE_WL_APP_XML, weblogicApplicationXml.toByteArray());
+
+            log.info("Finished classloader-structure generation.");
+        } catch (ParserConfigurationException | SAXException | TransformerException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public void setTargetModule(EarModule targetModule) {
         super.setTargetModule(targetModule);
@@ -0,0 +1,42 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Performs the file operations of a {@link MirroringFilesystem} on files that may reside inside (nested) archives.
+ * <p>
+ * Paths are given as {@link TFile} so that archive boundaries within a path are known, but implementations are free
+ * to access the files by other means. Changes may be buffered until {@link #sync()} is called.
+ */
+public interface ArchiveBackend {
+
+    /**
+     * @return stream of the file's contents, archives are read as plain files
+     */
+    @Nonnull
+    InputStream newInputStream(@Nonnull TFile file) throws IOException;
+
+    /**
+     * Recursively deletes the given file or directory tree, does nothing if it does not exist.
+     */
+    void rm(@Nonnull TFile file) throws IOException;
+
+    /**
+     * Copies the source file or directory tree to the destination, replacing an existing destination.
+     */
+    void copy(@Nonnull TFile source, @Nonnull TFile destination) throws IOException;
+
+    /**
+     * Writes the contents to the file, replacing an existing file.
+     */
+    void write(@Nonnull TFile file, @Nonnull byte[] contents) throws IOException;
+
+    /**
+     * Writes all buffered changes to disk. Afterwards the changes are visible to other readers of the files.
+     */
+    void sync() throws IOException;
+}
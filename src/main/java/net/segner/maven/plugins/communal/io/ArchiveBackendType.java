@@ -0,0 +1,18 @@
+package net.segner.maven.plugins.communal.io;
+
+/**
+ * Available implementations of {@link ArchiveBackend} for packed archives. Exploded (plain directory) locations are
+ * always handled by {@link DirectoryArchiveBackend}.
+ */
+public enum ArchiveBackendType {
+
+    /**
+     * TrueVFS, changes are written when the archives are unmounted at the end of the build
+     */
+    TRUEVFS,
+
+    /**
+     * JDK zip filesystem provider, nested archives are extracted to temporary files while they are changed
+     */
+    ZIPFS
+}
@@ -0,0 +1,137 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes to be applied to a single archive by the {@link ArchiveRewriter}: entries to remove, entries to add from
+ * another location in the same root archive, with given contents or with the contents of a source read while the
+ * archive is written, and changes to nested archives.
+ * <p>
+ * Entry names always use '/' as separator.
+ */
+public class ArchiveEdit {
+
+    private final Set<String> removals = new LinkedHashSet<>();
+    private final Map<String, List<String>> additions = new LinkedHashMap<>();
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private final Map<String, Source> sources = new LinkedHashMap<>();
+    private final Map<String, ArchiveEdit> nestedEdits = new LinkedHashMap<>();
+
+    /**
+     * Removes the entry from the archive, a folder entry is removed with everything below it. Entries added to the
+     * edit earlier under the same name are dropped.
+     */
+    public ArchiveEdit remove(@Nonnull String entryName) {
+        String name = normalize(entryName);
+        removals.add(name);
+        additions.remove(name);
+        contents.remove(name);
+        sources.remove(name);
+        return this;
+    }
+
+    /**
+     * Adds (or replaces) an entry with the contents of another entry
+     *
+     * @param entryName  name of the entry in this archive
+     * @param sourcePath location of the source entry, starting from the root archive. Each element but the last names
+     *                   a nested archive, the last element names the entry within the innermost archive.
+     */
+    public ArchiveEdit add(@Nonnull String entryName, @Nonnull List<String> sourcePath) {
+        Validate.notEmpty(sourcePath, "Source path of " + entryName + " is empty");
+        String name = normalize(entryName);
+        contents.remove(name);
+        sources.remove(name);
+        additions.put(name, Collections.unmodifiableList(sourcePath));
+        return this;
+    }
+
+    /**
+     * Adds (or replaces) an entry with the given contents
+     */
+    public ArchiveEdit put(@Nonnull String entryName, @Nonnull byte[] entryContents) {
+        String name = normalize(entryName);
+        additions.remove(name);
+        sources.remove(name);
+        contents.put(name, entryContents);
+        return this;
+    }
+
+    /**
+     * Adds (or replaces) an entry with the contents of the source, which is read once the archive is written
+     */
+    public ArchiveEdit put(@Nonnull String entryName, @Nonnull Source source) {
+        String name = normalize(entryName);
+        additions.remove(name);
+        contents.remove(name);
+        sources.put(name, source);
+        return this;
+    }
+
+    /**
+     * @return the edit for the nested archive stored under entryName, created if it does not exist yet
+     */
+    @Nonnull
+    public ArchiveEdit nested(@Nonnull String entryName) {
+        return nestedEdits.computeIfAbsent(normalize(entryName), name -> new ArchiveEdit());
+    }
+
+    @Nonnull
+    public Set<String> getRemovals() {
+        return Collections.unmodifiableSet(removals);
+    }
+
+    @Nonnull
+    public Map<String, List<String>> getAdditions() {
+        return Collections.unmodifiableMap(additions);
+    }
+
+    @Nonnull
+    public Map<String, byte[]> getContents() {
+        return Collections.unmodifiableMap(contents);
+    }
+
+    @Nonnull
+    public Map<String, Source> getSources() {
+        return Collections.unmodifiableMap(sources);
+    }
+
+    @Nonnull
+    public Map<String, ArchiveEdit> getNestedEdits() {
+        return Collections.unmodifiableMap(nestedEdits);
+    }
+
+    /**
+     * @return true if applying this edit would leave the archive unchanged
+     */
+    public boolean isEmpty() {
+        return removals.isEmpty() && additions.isEmpty() && contents.isEmpty() && sources.isEmpty() && nestedEdits.values().stream().allMatch(ArchiveEdit::isEmpty);
+    }
+
+    /**
+     * Contents of an entry, such as a file in another archive
+     */
+    public interface Source {
+        @Nonnull
+        InputStream open() throws IOException;
+    }
+
+    @Nonnull
+    public static String normalize(@Nonnull String entryName) {
+        String normalized = entryName.replace('\\', '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,585 @@
+package net.segner.maven.plugins.communal.io;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Read-only view of (nested) archives that avoids mounting them in TrueVFS.
+ * <p>
+ * Archives on disk are memory mapped and only their central directory is parsed, of archives larger than 2GB only the
+ * central directory and the entries read are mapped. Nested archives are opened lazily: stored entries are used in
+ * place, deflated entries are inflated into memory up to the memory threshold of the {@link BufferPool}, into a mapped
+ * temporary file otherwise. Central directories are kept until the inspector is closed, inflated archive data in memory
+ * is kept within the memory budget of the buffer pool and inflated again when needed.
+ * <p>
+ * The view reflects the archives on disk. Once archives are about to change, the inspector must be closed; afterwards
+ * every method returns null and callers fall back to TrueVFS, which also sees pending changes.
+ */
+@Named
+@Singleton
+@Slf4j
+public class ArchiveInspector {
+
+    private static final String TEMP_PREFIX = "skinnywar-";
+    // end of central directory records, with the longest comment and zip64 records
+    private static final int TAIL_LENGTH = 128 * 1024;
+
+    private final Map<String, Archive> archives = new ConcurrentHashMap<>();
+    private final Map<String, ByteBuffer> nestedData = new LinkedHashMap<>(16, 0.75f, true);
+    // inflated to temporary files, kept until the inspector is closed
+    private final Map<String, ByteBuffer> spilledData = new ConcurrentHashMap<>();
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final List<Path> tempFiles = new ArrayList<>();
+    private final BufferPool bufferPool;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    public ArchiveInspector() {
+        this(BufferPool.DEFAULT);
+    }
+
+    /**
+     * @param bufferPool decides which nested archives are inflated into memory, and provides the temporary files of
+     *                   the others
+     */
+    @Inject
+    public ArchiveInspector(@Nonnull BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * @return true if the file or folder exists, null if this cannot be determined without TrueVFS
+     */
+    @Nullable
+    public Boolean exists(@Nonnull TFile file) {
+        return inspect(file, true, (archive, path) -> archive.directory.exists(path));
+    }
+
+    /**
+     * @return names of the direct children of the folder, mapped to true for folders, null if this cannot be determined
+     * without TrueVFS. Nested archives are not folders.
+     */
+    @Nullable
+    public Map<String, Boolean> list(@Nonnull TFile folder) {
+        return inspect(folder, false, (archive, path) -> {
+            Map<String, Boolean> children = archive.directory.list(path);
+            return children == null ? new LinkedHashMap<>() : new LinkedHashMap<>(children);
+        });
+    }
+
+    /**
+     * @return the contents of the file, nested archives are read as plain files. Null if the file does not exist or
+     * cannot be read without TrueVFS
+     */
+    @Nullable
+    public byte[] read(@Nonnull TFile file) {
+        return inspect(file, true, (archive, path) -> {
+            ZipDirectory.Entry entry = archive.directory.getEntry(path);
+            if (entry == null || entry.isDirectory()) {
+                return null;
+            }
+            try (InputStream in = newInputStream(archive, entry)) {
+                return IOUtils.toByteArray(in);
+            }
+        });
+    }
+
+    /**
+     * Reads the contents of the file as a stream rather than into memory, nested archives are read as plain files
+     *
+     * @return the result of the reader, null if the file does not exist or cannot be read without TrueVFS. The reader
+     * may have consumed part of the stream when reading fails.
+     */
+    @Nullable
+    public <R> R read(@Nonnull TFile file, @Nonnull StreamReader<R> reader) {
+        return inspect(file, true, (archive, path) -> {
+            ZipDirectory.Entry entry = archive.directory.getEntry(path);
+            if (entry == null || entry.isDirectory()) {
+                return null;
+            }
+            try (InputStream in = newInputStream(archive, entry)) {
+                return reader.read(in);
+            }
+        });
+    }
+
+    /**
+     * @return contents of the entries of the archive whose names match, null if the archive cannot be read without
+     * TrueVFS
+     */
+    @Nullable
+    public Map<String, byte[]> readEntries(@Nonnull TFile archiveFile, @Nonnull Pattern entryNames) {
+        return inspect(archiveFile, false, (parent, path) -> {
+            Archive archive = path.isEmpty() ? parent : getNestedArchive(parent, path);
+            if (archive == null) {
+                return null;
+            }
+            Map<String, byte[]> contents = new LinkedHashMap<>();
+            for (ZipDirectory.Entry entry : archive.directory.getEntries()) {
+                if (!entry.isDirectory() && entryNames.matcher(entry.getName()).matches()) {
+                    try (InputStream in = newInputStream(archive, entry)) {
+                        contents.put(entry.getName(), IOUtils.toByteArray(in));
+                    }
+                }
+            }
+            return contents;
+        });
+    }
+
+    /**
+     * @return uncompressed size of the file, null if the file does not exist or cannot be read without TrueVFS
+     */
+    @Nullable
+    public Long size(@Nonnull TFile file) {
+        return inspect(file, true, (archive, path) -> {
+            ZipDirectory.Entry entry = archive.directory.getEntry(path);
+            return entry == null || entry.isDirectory() ? null : entry.getSize();
+        });
+    }
+
+    /**
+     * @return CRC-32 of the file as recorded in the central directory, null if the file does not exist or cannot be read
+     * without TrueVFS
+     */
+    @Nullable
+    public Long crc(@Nonnull TFile file) {
+        return inspect(file, true, (archive, path) -> {
+            ZipDirectory.Entry entry = archive.directory.getEntry(path);
+            return entry == null || entry.isDirectory() ? null : entry.getCrc();
+        });
+    }
+
+    /**
+     * @return central directory entry of the file, null if the file does not exist, is a directory or cannot be read
+     * without TrueVFS
+     */
+    @Nullable
+    public ZipDirectory.Entry entry(@Nonnull TFile file) {
+        return inspect(file, true, (archive, path) -> {
+            ZipDirectory.Entry entry = archive.directory.getEntry(path);
+            return entry == null || entry.isDirectory() ? null : entry;
+        });
+    }
+
+    /**
+     * @return entries of the central directory of the archive file on disk, null if the file is not an archive this
+     * inspector can read
+     */
+    @Nullable
+    public Collection<ZipDirectory.Entry> entries(@Nonnull File archiveFile) {
+        if (closed) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            Archive archive = mapArchive(archiveFile.getAbsolutePath(), archiveFile);
+            return archive == null ? null : archive.directory.getEntries();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to read the central directory of {}: {}", archiveFile, e.toString());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the archive file on disk containing the given file is writable, null if the file is not inside
+     * an archive this inspector can read
+     */
+    @Nullable
+    public Boolean canWrite(@Nonnull TFile file) {
+        return inspect(file, true, (archive, path) -> {
+            Archive topLevel = archive;
+            while (topLevel.parent != null) {
+                topLevel = topLevel.parent;
+            }
+            return topLevel.file.canWrite();
+        });
+    }
+
+    /**
+     * Releases every archive. Afterwards the inspector no longer answers, so that changes made to the archives are
+     * never hidden by a stale view.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            archives.clear();
+            synchronized (nestedData) {
+                nestedData.values().forEach(data -> bufferPool.releaseMemory(data.capacity()));
+                nestedData.clear();
+            }
+            spilledData.clear();
+            synchronized (mappings) {
+                mappings.forEach(ArchiveInspector::unmap);
+                mappings.clear();
+                for (Path tempFile : tempFiles) {
+                    try {
+                        Files.deleteIfExists(tempFile);
+                    } catch (IOException e) {
+                        log.debug("Unable to delete {}: {}", tempFile, e.toString());
+                        tempFile.toFile().deleteOnExit();
+                    }
+                }
+                tempFiles.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public interface StreamReader<R> {
+        R read(InputStream in) throws IOException;
+    }
+
+    private interface Inspection<R> {
+        R inspect(Archive archive, String path) throws IOException;
+    }
+
+    /**
+     * Runs the inspection on the innermost archive containing the file, with the path of the file within that archive
+     *
+     * @param plain true to treat an archive file as a plain file of its enclosing archive, rather than as the root of
+     *              its own contents
+     */
+    @Nullable
+    private <R> R inspect(TFile file, boolean plain, Inspection<R> inspection) {
+        if (closed) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            TFile archiveFile = plain ? file.getEnclArchive() : file.getInnerArchive();
+            if (archiveFile == null) {
+                return null;
+            }
+            Archive archive = getArchive(archiveFile);
+            String path = plain ? file.getEnclEntryName() : file.getInnerEntryName();
+            return archive == null ? null : inspection.inspect(archive, StringUtils.defaultString(path));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to inspect {}, using TrueVFS: {}", file, e.toString());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    private Archive getArchive(TFile archiveFile) throws IOException {
+        String key = archiveFile.getNormalizedAbsolutePath();
+        Archive archive = archives.get(key);
+        if (archive != null && archive.isCurrent()) {
+            return archive;
+        }
+
+        TFile enclArchive = archiveFile.getEnclArchive();
+        if (enclArchive == null) {
+            archive = mapArchive(key, new File(archiveFile.getPath()));
+        } else {
+            Archive parent = getArchive(enclArchive);
+            archive = parent == null ? null : getNestedArchive(parent, archiveFile.getEnclEntryName());
+        }
+        if (archive != null) {
+            Archive existing = archives.putIfAbsent(key, archive);
+            if (existing != null && existing.isCurrent()) {
+                return existing;
+            }
+            archives.put(key, archive);
+        }
+        return archive;
+    }
+
+    @Nullable
+    private Archive mapArchive(String key, File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        long length = file.length();
+        long lastModified = file.lastModified();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (length <= Integer.MAX_VALUE) {
+                MappedByteBuffer mapping = map(channel, 0, channel.size());
+                return new Archive(key, null, null, ZipDirectory.read(mapping, ZipDirectory.getCharset(file.getName())), mapping, file, length, lastModified);
+            }
+
+            // larger than a buffer, only the central directory is mapped, entries are mapped when read
+            long start = length - TAIL_LENGTH;
+            MappedByteBuffer tail = map(channel, start, TAIL_LENGTH);
+            long directoryStart = ZipDirectory.getDirectoryStart(tail, start);
+            if (directoryStart < start) {
+                start = directoryStart;
+                tail = map(channel, start, length - start);
+            }
+            return new Archive(key, null, null, ZipDirectory.read(tail, start, ZipDirectory.getCharset(file.getName())), null, file, length, lastModified);
+        }
+    }
+
+    /**
+     * Maps the part of the file, which stays mapped until the inspector is closed
+     */
+    private MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Unable to map more than 2GB");
+        }
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        synchronized (mappings) {
+            mappings.add(mapping);
+        }
+        return mapping;
+    }
+
+    @Nullable
+    private Archive getNestedArchive(Archive parent, String entryName) throws IOException {
+        String key = parent.key + "/" + entryName;
+        Archive cached = archives.get(key);
+        if (cached != null && cached.parent == parent) {
+            return cached;
+        }
+        ZipDirectory.Entry entry = parent.directory.getEntry(entryName);
+        if (entry == null || entry.isDirectory()) {
+            return null;
+        }
+        if (entry.getMethod() == ZipDirectory.METHOD_STORED && !entry.isEncrypted()) {
+            ByteBuffer data = getRawData(parent, entry);
+            return new Archive(key, parent, entryName, ZipDirectory.read(data, ZipDirectory.getCharset(entryName)), data, null, 0, 0);
+        }
+        if (entry.getSize() > bufferPool.getMemoryThreshold() || !reserveNestedData(entry.getSize())) {
+            ByteBuffer data = inflateToFile(parent, entry);
+            return new Archive(key, parent, entryName, ZipDirectory.read(data, ZipDirectory.getCharset(entryName)), data, null, 0, 0);
+        }
+        ByteBuffer data = inflate(parent, entry);
+        cacheNestedData(key, data);
+        return new Archive(key, parent, entryName, ZipDirectory.read(data, ZipDirectory.getCharset(entryName)), null, null, 0, 0);
+    }
+
+    /**
+     * @return the compressed data of the entry
+     */
+    private ByteBuffer getRawData(Archive archive, ZipDirectory.Entry entry) throws IOException {
+        if (isWindowed(archive)) {
+            return ZipDirectory.getRawData(mapEntry(archive, entry), entry.getLocalHeaderOffset(), entry);
+        }
+        return ZipDirectory.getRawData(getData(archive), entry);
+    }
+
+    /**
+     * @return stream of the uncompressed data of the entry
+     */
+    private InputStream newInputStream(Archive archive, ZipDirectory.Entry entry) throws IOException {
+        if (isWindowed(archive)) {
+            return ZipDirectory.newInputStream(mapEntry(archive, entry), entry.getLocalHeaderOffset(), entry);
+        }
+        return ZipDirectory.newInputStream(getData(archive), entry);
+    }
+
+    /**
+     * @return true for an archive on disk of which only the central directory is mapped
+     */
+    private static boolean isWindowed(Archive archive) {
+        return archive.parent == null && archive.data == null;
+    }
+
+    private ByteBuffer mapEntry(Archive archive, ZipDirectory.Entry entry) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive.file.toPath(), StandardOpenOption.READ)) {
+            long position = entry.getLocalHeaderOffset();
+            return map(channel, position, Math.min(ZipDirectory.getLocalRecordLength(entry), channel.size() - position));
+        }
+    }
+
+    /**
+     * @return the archive data, inflating it again if it was dropped from the memory budget
+     */
+    private ByteBuffer getData(Archive archive) throws IOException {
+        if (archive.data != null) {
+            return archive.data;
+        }
+        synchronized (nestedData) {
+            ByteBuffer data = nestedData.get(archive.key);
+            if (data != null) {
+                return data;
+            }
+        }
+        ByteBuffer spilled = spilledData.get(archive.key);
+        if (spilled != null) {
+            return spilled;
+        }
+
+        ZipDirectory.Entry entry = archive.parent.directory.getEntry(archive.entryName);
+        if (!reserveNestedData(entry.getSize())) {
+            // the budget is taken by data in use, this archive moves to a temporary file
+            ByteBuffer data = inflateToFile(archive.parent, entry);
+            spilledData.put(archive.key, data);
+            return data;
+        }
+        ByteBuffer data = inflate(archive.parent, entry);
+        cacheNestedData(archive.key, data);
+        return data;
+    }
+
+    /**
+     * Inflates the nested archive into memory reserved with {@link #reserveNestedData(long)}
+     */
+    private ByteBuffer inflate(Archive parent, ZipDirectory.Entry entry) throws IOException {
+        boolean inflated = false;
+        try {
+            byte[] data = new byte[(int) entry.getSize()];
+            try (InputStream in = newInputStream(parent, entry)) {
+                IOUtils.readFully(in, data);
+            }
+            inflated = true;
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        } finally {
+            if (!inflated) {
+                bufferPool.releaseMemory(entry.getSize());
+            }
+        }
+    }
+
+    /**
+     * Inflates the nested archive to a temporary file of the buffer pool and maps it, the file is deleted once the
+     * inspector is closed
+     */
+    private ByteBuffer inflateToFile(Archive parent, ZipDirectory.Entry entry) throws IOException {
+        if (entry.getSize() > Integer.MAX_VALUE) {
+            throw new IOException("Nested archive too large: " + entry.getName());
+        }
+        Path tempFile = bufferPool.createTempFile(TEMP_PREFIX, "-" + FilenameUtils.getName(entry.getName()));
+        synchronized (mappings) {
+            tempFiles.add(tempFile);
+        }
+        try (InputStream in = newInputStream(parent, entry); OutputStream out = Files.newOutputStream(tempFile)) {
+            bufferPool.copy(in, out);
+        }
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+            return map(channel, 0, channel.size()).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Reserves memory of the buffer pool for inflated archive data, dropping the least recently used data to make room
+     *
+     * @return false if the data does not fit the memory budget of the buffer pool
+     */
+    private boolean reserveNestedData(long size) {
+        synchronized (nestedData) {
+            while (!bufferPool.reserveMemory(size)) {
+                if (nestedData.isEmpty()) {
+                    return false;
+                }
+                Map.Entry<String, ByteBuffer> eldest = nestedData.entrySet().iterator().next();
+                nestedData.remove(eldest.getKey());
+                bufferPool.releaseMemory(eldest.getValue().capacity());
+            }
+            return true;
+        }
+    }
+
+    private void cacheNestedData(String key, ByteBuffer data) {
+        synchronized (nestedData) {
+            ByteBuffer previous = nestedData.put(key, data);
+            if (previous != null) {
+                bufferPool.releaseMemory(previous.capacity());
+            }
+        }
+    }
+
+    /**
+     * Unmaps the buffer right away rather than when it is garbage collected, as some platforms do not allow mapped files
+     * to be replaced. Best effort, the buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Unable to unmap archive, it is released once garbage collected: {}", e.toString());
+        }
+    }
+
+    private static final class Archive {
+        private final String key;
+        private final Archive parent;
+        private final String entryName;
+        private final ZipDirectory directory;
+        private final ByteBuffer data;
+        private final File file;
+        private final long length;
+        private final long lastModified;
+
+        Archive(String key, Archive parent, String entryName, ZipDirectory directory, ByteBuffer data, File file, long length, long lastModified) {
+            this.key = key;
+            this.parent = parent;
+            this.entryName = entryName;
+            this.directory = directory;
+            this.data = data;
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return false if the archive file on disk has been changed since it was mapped
+         */
+        boolean isCurrent() {
+            Archive topLevel = this;
+            while (topLevel.parent != null) {
+                topLevel = topLevel.parent;
+            }
+            return topLevel.file.length() == topLevel.length && topLevel.file.lastModified() == topLevel.lastModified;
+        }
+    }
+}
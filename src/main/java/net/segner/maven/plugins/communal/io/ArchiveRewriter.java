@@ -0,0 +1,480 @@
+package net.segner.maven.plugins.communal.io;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipOutputStream;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Applies an {@link ArchiveEdit} to an archive in a single streaming pass.
+ * <p>
+ * Entries that are not changed, including nested archives without changes, are copied as raw compressed bytes with
+ * their original CRC-32 rather than being inflated and deflated again. Only nested archives that are edited, or that
+ * provide the source of an added entry, are extracted to temporary files.
+ * <p>
+ * Edited nested archives are rewritten, and compressed, concurrently on the layout worker pool, as are the new
+ * entries. Their parent is then assembled sequentially in the original entry order, so the result does not depend on
+ * the number of threads. The entries written are compressed following the {@link CompressionPolicy}, and ordered and
+ * timestamped following the {@link ReproducibleOutput}. Temporary files and copy buffers come from the
+ * {@link BufferPool}.
+ */
+@Slf4j
+public class ArchiveRewriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_PREFIX = "skinnywar-";
+
+    private final LayoutWorkerPool workerPool;
+    private final CompressionPolicy compressionPolicy;
+    private final ReproducibleOutput reproducibleOutput;
+    private final BufferPool bufferPool;
+
+    public ArchiveRewriter(@Nonnull LayoutWorkerPool workerPool) {
+        this(workerPool, CompressionPolicy.DEFAULT, ReproducibleOutput.DISABLED, BufferPool.DEFAULT);
+    }
+
+    @Inject
+    public ArchiveRewriter(@Nonnull LayoutWorkerPool workerPool, @Nonnull CompressionPolicy compressionPolicy, @Nonnull ReproducibleOutput reproducibleOutput, @Nonnull BufferPool bufferPool) {
+        this.workerPool = workerPool;
+        this.compressionPolicy = compressionPolicy;
+        this.reproducibleOutput = reproducibleOutput;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Rewrites the archive with the given changes. The archive is replaced only once the new archive is complete.
+     */
+    public void rewrite(@Nonnull Path archive, @Nonnull ArchiveEdit edit) throws IOException {
+        Path output = prepare(archive, edit);
+        if (output != null) {
+            replace(output, archive);
+        }
+    }
+
+    /**
+     * Writes the archive with the given changes next to the archive, which is left unchanged
+     *
+     * @return the rewritten archive, to be moved over the archive by the caller, or null if the edit changes nothing
+     */
+    @Nullable
+    public Path prepare(@Nonnull Path archive, @Nonnull ArchiveEdit edit) throws IOException {
+        if (edit.isEmpty()) {
+            log.debug("No changes for {}", archive);
+            return null;
+        }
+
+        Path output = Files.createTempFile(archive.toAbsolutePath().getParent(), archive.getFileName().toString(), ".tmp");
+        try (Spool spool = new Spool(archive, bufferPool)) {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE)) {
+                write(spool, Collections.emptyList(), edit, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(output);
+            throw e;
+        }
+        return output;
+    }
+
+    /**
+     * writes the archive found at archivePath with the edit applied to the stream, closing the stream afterwards
+     */
+    private void write(Spool spool, List<String> archivePath, ArchiveEdit edit, OutputStream out) throws IOException {
+        RawZipFile source = spool.open(archivePath);
+
+        // rewrite the edited nested archives first, concurrently
+        List<ZipEntry> editedEntries = new ArrayList<>();
+        for (ZipEntry entry : source) {
+            ArchiveEdit nestedEdit = edit.getNestedEdits().get(entry.getName());
+            if (!isReplaced(edit, entry.getName()) && nestedEdit != null && !nestedEdit.isEmpty()) {
+                editedEntries.add(entry);
+            }
+        }
+        List<RewrittenEntry> rewrittenEntries = workerPool.map(editedEntries, entry ->
+                rewriteNested(spool, append(archivePath, entry.getName()), entry, edit.getNestedEdits().get(entry.getName())));
+        Map<String, RewrittenEntry> rewritten = new HashMap<>();
+        rewrittenEntries.forEach(entry -> rewritten.put(entry.entry.getName(), entry));
+        List<CompressedEntry> contents = workerPool.map(edit.getContents().entrySet(), content -> compress(content.getKey(), content.getValue()));
+        List<PendingEntry> sources = workerPool.map(edit.getSources().entrySet(), added -> compress(spool, added.getKey(), added.getValue()));
+
+        // the kept entries in their original order, followed by the additions, the new contents and the sources
+        List<Pair<String, PendingEntry>> entries = new ArrayList<>();
+        for (ZipEntry entry : source) {
+            String name = entry.getName();
+            if (isReplaced(edit, name)) {
+                continue;
+            }
+            RewrittenEntry rewrittenEntry = rewritten.get(name);
+            if (rewrittenEntry != null) {
+                entries.add(Pair.of(name, rewrittenEntry));
+            } else {
+                entries.add(Pair.of(name, zip -> copy(source, entry, entry.clone(), zip)));
+            }
+        }
+        for (Map.Entry<String, List<String>> addition : edit.getAdditions().entrySet()) {
+            List<String> sourcePath = addition.getValue();
+            entries.add(Pair.of(addition.getKey(), zip -> {
+                RawZipFile container = spool.open(sourcePath.subList(0, sourcePath.size() - 1));
+                String sourceName = sourcePath.get(sourcePath.size() - 1);
+                ZipEntry sourceEntry = container.entry(sourceName);
+                if (sourceEntry == null) {
+                    throw new FileNotFoundException("Missing source entry " + String.join("!/", sourcePath));
+                }
+                copy(container, sourceEntry, new RawZipFile.RenamedZipEntry(addition.getKey(), sourceEntry), zip);
+            }));
+        }
+        for (CompressedEntry content : contents) {
+            entries.add(Pair.of(content.entry.getName(), content));
+        }
+        int sourceIndex = 0;
+        for (String name : edit.getSources().keySet()) {
+            entries.add(Pair.of(name, sources.get(sourceIndex++)));
+        }
+        if (reproducibleOutput.isEnabled()) {
+            entries.sort(Comparator.comparing(Pair::getLeft, ReproducibleOutput.entryOrder()));
+        }
+
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Pair<String, PendingEntry> entry : entries) {
+                entry.getRight().write(zip);
+            }
+        }
+    }
+
+    /**
+     * Sets the timestamp of the reproducible mode on the entry, if enabled
+     */
+    private ZipEntry stamp(ZipEntry entry) {
+        if (reproducibleOutput.isEnabled()) {
+            entry.setTime(reproducibleOutput.getEntryTime());
+        }
+        return entry;
+    }
+
+    /**
+     * Writes the nested archive with its edit applied to a temporary file, in the compressed form it is stored in
+     */
+    private RewrittenEntry rewriteNested(Spool spool, List<String> nestedPath, ZipEntry entry, ArchiveEdit nestedEdit) throws IOException {
+        Path rewrittenArchive = spool.createTempFile(entry.getName());
+        CRC32 crc = new CRC32();
+        try (OutputStream out = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(rewrittenArchive), BUFFER_SIZE), crc)) {
+            write(spool, nestedPath, nestedEdit, out);
+        }
+        long size = Files.size(rewrittenArchive);
+
+        ZipEntry rewritten = new ZipEntry(entry.getName());
+        rewritten.setTime(entry.getTime());
+        rewritten.setExternalAttributes(entry.getExternalAttributes());
+        rewritten.setComment(entry.getComment());
+        rewritten.setSize(size);
+        rewritten.setCrc(crc.getValue());
+        if (entry.getMethod() == ZipEntry.STORED || compressionPolicy.isStored(entry.getName())) {
+            rewritten.setMethod(ZipEntry.STORED);
+            rewritten.setCompressedSize(size);
+            return new RewrittenEntry(rewritten, rewrittenArchive);
+        }
+
+        Path deflatedArchive = spool.createTempFile(entry.getName());
+        Deflater deflater = new Deflater(compressionPolicy.getLevel(), true);
+        try (OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(deflatedArchive), BUFFER_SIZE), deflater, BUFFER_SIZE)) {
+            try (InputStream in = Files.newInputStream(rewrittenArchive)) {
+                bufferPool.copy(in, out);
+            }
+        } finally {
+            deflater.end();
+        }
+        Files.delete(rewrittenArchive);
+        rewritten.setMethod(ZipEntry.DEFLATED);
+        rewritten.setCompressedSize(Files.size(deflatedArchive));
+        return new RewrittenEntry(rewritten, deflatedArchive);
+    }
+
+    /**
+     * Reads the source of a new entry and compresses it following the compression policy. Contents up to the memory
+     * threshold of the buffer pool are compressed in memory, larger contents are compressed to a temporary file.
+     */
+    private PendingEntry compress(Spool spool, String name, ArchiveEdit.Source source) throws IOException {
+        try (InputStream in = source.open()) {
+            byte[] head = IOUtils.toByteArray(new BoundedInputStream(in, bufferPool.getMemoryThreshold() + 1L));
+            if (head.length <= bufferPool.getMemoryThreshold()) {
+                return compress(name, head);
+            }
+
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(reproducibleOutput.isEnabled() ? reproducibleOutput.getEntryTime() : System.currentTimeMillis());
+            Path compressed = spool.createTempFile(name);
+            CheckedInputStream contents = new CheckedInputStream(new SequenceInputStream(new ByteArrayInputStream(head), in), new CRC32());
+            long size;
+            if (compressionPolicy.isStored(name)) {
+                try (OutputStream out = Files.newOutputStream(compressed)) {
+                    size = bufferPool.copy(contents, out);
+                }
+                entry.setMethod(ZipEntry.STORED);
+            } else {
+                Deflater deflater = new Deflater(compressionPolicy.getLevel(), true);
+                try (OutputStream out = new DeflaterOutputStream(new BufferedOutputStream(Files.newOutputStream(compressed), BUFFER_SIZE), deflater, BUFFER_SIZE)) {
+                    size = bufferPool.copy(contents, out);
+                } finally {
+                    deflater.end();
+                }
+                entry.setMethod(ZipEntry.DEFLATED);
+            }
+            entry.setCrc(contents.getChecksum().getValue());
+            entry.setSize(size);
+            entry.setCompressedSize(Files.size(compressed));
+            return new RewrittenEntry(entry, compressed);
+        }
+    }
+
+    /**
+     * Compresses a new entry following the compression policy
+     */
+    private CompressedEntry compress(String name, byte[] contents) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(reproducibleOutput.isEnabled() ? reproducibleOutput.getEntryTime() : System.currentTimeMillis());
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        entry.setCrc(crc.getValue());
+        entry.setSize(contents.length);
+        if (compressionPolicy.isStored(name)) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setCompressedSize(contents.length);
+            return new CompressedEntry(entry, contents);
+        }
+
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(compressionPolicy.getLevel(), true);
+        try (OutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+            out.write(contents);
+        } finally {
+            deflater.end();
+        }
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setCompressedSize(deflated.size());
+        return new CompressedEntry(entry, deflated.toByteArray());
+    }
+
+    /**
+     * Copies the entry as raw compressed bytes, or inflated if the compression policy stores it
+     */
+    private void copy(RawZipFile source, ZipEntry sourceEntry, ZipEntry target, ZipOutputStream zip) throws IOException {
+        boolean inflate = sourceEntry.getMethod() != ZipEntry.STORED && !sourceEntry.isDirectory() && compressionPolicy.isStored(target.getName());
+        if (inflate) {
+            target.setMethod(ZipEntry.STORED);
+            target.setCompressedSize(sourceEntry.getSize());
+        }
+        zip.putNextEntry(stamp(target), false);
+        // archives may be read by several workers, which must not interleave
+        synchronized (source) {
+            try (InputStream in = inflate ? source.getInputStream(sourceEntry.getName()) : source.getRawInputStream(sourceEntry.getName())) {
+                if (in != null) {
+                    bufferPool.copy(in, zip);
+                }
+            }
+        }
+        zip.closeEntry();
+    }
+
+    private static boolean isReplaced(ArchiveEdit edit, String name) {
+        return isRemoved(edit, name) || edit.getAdditions().containsKey(name) || edit.getContents().containsKey(name) || edit.getSources().containsKey(name);
+    }
+
+    /**
+     * @return true if the entry, or a folder holding it, is removed
+     */
+    private static boolean isRemoved(ArchiveEdit edit, String name) {
+        String path = StringUtils.removeEnd(name, "/");
+        while (!edit.getRemovals().contains(path)) {
+            int separator = path.lastIndexOf('/');
+            if (separator < 0) {
+                return false;
+            }
+            path = path.substring(0, separator);
+        }
+        return true;
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static List<String> append(List<String> path, String name) {
+        List<String> appended = new ArrayList<>(path);
+        appended.add(name);
+        return appended;
+    }
+
+    /**
+     * An entry of the archive being written, written once the order of the entries is known
+     */
+    private interface PendingEntry {
+        void write(ZipOutputStream zip) throws IOException;
+    }
+
+    private static class CompressedEntry implements PendingEntry {
+        private final ZipEntry entry;
+        private final byte[] data;
+
+        CompressedEntry(ZipEntry entry, byte[] data) {
+            this.entry = entry;
+            this.data = data;
+        }
+
+        @Override
+        public void write(ZipOutputStream zip) throws IOException {
+            zip.putNextEntry(entry, false);
+            zip.write(data);
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * An entry whose compressed data is in a temporary file
+     */
+    private class RewrittenEntry implements PendingEntry {
+        private final ZipEntry entry;
+        private final Path data;
+
+        RewrittenEntry(ZipEntry entry, Path data) {
+            this.entry = entry;
+            this.data = data;
+        }
+
+        @Override
+        public void write(ZipOutputStream zip) throws IOException {
+            zip.putNextEntry(stamp(entry), false);
+            try (InputStream in = Files.newInputStream(data)) {
+                bufferPool.copy(in, zip);
+            }
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * Opens archives by their path from the root archive, extracting nested archives to temporary files on first use.
+     * Each archive is extracted under its own lock, so different nested archives are extracted concurrently, only the
+     * reads of a parent archive are serialized.
+     */
+    private static class Spool implements Closeable {
+
+        private final Map<List<String>, SpooledArchive> archives = new HashMap<>();
+        private final List<Path> tempFiles = new ArrayList<>();
+        private final BufferPool bufferPool;
+
+        Spool(Path root, BufferPool bufferPool) throws IOException {
+            this.bufferPool = bufferPool;
+            SpooledArchive rootArchive = new SpooledArchive(Collections.emptyList());
+            rootArchive.archive = new RawZipFile(root);
+            archives.put(Collections.emptyList(), rootArchive);
+        }
+
+        RawZipFile open(List<String> archivePath) throws IOException {
+            SpooledArchive spooled;
+            synchronized (this) {
+                spooled = archives.computeIfAbsent(new ArrayList<>(archivePath), SpooledArchive::new);
+            }
+            return spooled.open();
+        }
+
+        Path createTempFile(String entryName) throws IOException {
+            Path tempFile = bufferPool.createTempFile(TEMP_PREFIX, "-" + FilenameUtils.getName(entryName));
+            synchronized (this) {
+                tempFiles.add(tempFile);
+            }
+            return tempFile;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            IOException failure = null;
+            for (SpooledArchive spooled : archives.values()) {
+                try {
+                    spooled.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            for (Path tempFile : tempFiles) {
+                Files.deleteIfExists(tempFile);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * A nested archive, extracted by the first worker opening it while the other workers opening it wait
+         */
+        private class SpooledArchive {
+
+            private final List<String> archivePath;
+            private RawZipFile archive;
+
+            SpooledArchive(List<String> archivePath) {
+                this.archivePath = archivePath;
+            }
+
+            synchronized RawZipFile open() throws IOException {
+                if (archive == null) {
+                    RawZipFile parent = Spool.this.open(archivePath.subList(0, archivePath.size() - 1));
+                    String name = archivePath.get(archivePath.size() - 1);
+                    Path extracted = createTempFile(name);
+                    synchronized (parent) {
+                        try (InputStream in = parent.getInputStream(name)) {
+                            if (in == null) {
+                                throw new FileNotFoundException("Missing nested archive " + String.join("!/", archivePath));
+                            }
+                            try (OutputStream out = Files.newOutputStream(extracted)) {
+                                bufferPool.copy(in, out);
+                            }
+                        }
+                    }
+                    archive = new RawZipFile(extracted);
+                }
+                return archive;
+            }
+
+            synchronized void close() throws IOException {
+                if (archive != null) {
+                    archive.close();
+                }
+            }
+        }
+    }
+}
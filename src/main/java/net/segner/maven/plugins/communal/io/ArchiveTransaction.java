@@ -0,0 +1,341 @@
+package net.segner.maven.plugins.communal.io;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@inheritDoc}
+ * <p>
+ * Queues the changes instead of applying them, until the transaction is committed. Files are read through the given
+ * backend. Use {@link MirroringFilesystem#within(ArchiveTransaction)} to queue the changes of a mirroring filesystem.
+ * <p>
+ * On commit, the changes to each archive on disk, including all archives nested in it, are applied with a single pass
+ * of the {@link ArchiveRewriter}. The changes to plain directories, such as an exploded EAR, are applied in a single
+ * pass in queue order. If the commit fails, the changes already applied are rolled back.
+ * <p>
+ * The previous state of the replaced archives and files is moved to the backup directory, which should be on the same
+ * file store, until the commit is done. Backups left over by an interrupted commit are removed by the next one.
+ */
+@Slf4j
+public class ArchiveTransaction implements ArchiveBackend {
+
+    private final ArchiveBackend archiveBackend;
+    private final ArchiveRewriter archiveRewriter;
+    private final Path backupDirectory;
+    private final List<Operation> operations = new ArrayList<>();
+    private int backupCount;
+
+    /**
+     * @param backupDirectory directory holding the previous state during the commit, removed once the commit is done
+     */
+    public ArchiveTransaction(@Nonnull ArchiveBackend archiveBackend, @Nonnull ArchiveRewriter archiveRewriter, @Nonnull Path backupDirectory) {
+        this.archiveBackend = archiveBackend;
+        this.archiveRewriter = archiveRewriter;
+        this.backupDirectory = backupDirectory;
+    }
+
+    @Nonnull
+    @Override
+    public InputStream newInputStream(@Nonnull TFile file) throws IOException {
+        return archiveBackend.newInputStream(file);
+    }
+
+    @Override
+    public synchronized void rm(@Nonnull TFile file) {
+        operations.add(new Operation(file, null, null));
+    }
+
+    @Override
+    public synchronized void copy(@Nonnull TFile source, @Nonnull TFile destination) {
+        operations.add(new Operation(destination, source, null));
+    }
+
+    @Override
+    public synchronized void write(@Nonnull TFile file, @Nonnull byte[] contents) {
+        operations.add(new Operation(file, null, contents.clone()));
+    }
+
+    /**
+     * Commits the queued changes
+     */
+    @Override
+    public void sync() throws IOException {
+        commit();
+    }
+
+    /**
+     * @return true if no change is queued
+     */
+    public synchronized boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Discards the queued changes
+     */
+    public synchronized void rollback() {
+        operations.clear();
+    }
+
+    /**
+     * Applies the queued changes. Archives are written next to the originals first, then the plain directories are
+     * changed, and finally the written archives replace the originals. Any failure restores the previous state.
+     */
+    public synchronized void commit() throws IOException {
+        if (operations.isEmpty()) {
+            return;
+        }
+        // the archives on disk must hold every change made outside of this transaction
+        archiveBackend.sync();
+        if (Files.exists(backupDirectory)) {
+            log.warn("Removing the backups of an interrupted layout: {}", backupDirectory);
+            deleteTree(backupDirectory);
+        }
+        backupCount = 0;
+
+        Map<Path, ArchiveEdit> archiveEdits = new LinkedHashMap<>();
+        Map<Path, TFile> archives = new LinkedHashMap<>();
+        List<Operation> directoryOperations = new ArrayList<>();
+        for (Operation operation : operations) {
+            queue(operation, archiveEdits, archives, directoryOperations);
+        }
+        operations.clear();
+
+        Map<Path, Path> rewritten = new LinkedHashMap<>();
+        LinkedList<Undo> undoLog = new LinkedList<>();
+        Map<Path, Path> backups = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Path, ArchiveEdit> archiveEdit : archiveEdits.entrySet()) {
+                TVFS.umount(archives.get(archiveEdit.getKey()));
+                log.debug("Rewriting {}", archiveEdit.getKey());
+                Path output = archiveRewriter.prepare(archiveEdit.getKey(), archiveEdit.getValue());
+                if (output != null) {
+                    rewritten.put(archiveEdit.getKey(), output);
+                }
+            }
+
+            for (Operation operation : directoryOperations) {
+                applyToDirectory(operation, undoLog, backups);
+            }
+
+            // release the archives before they are replaced underneath
+            archiveBackend.sync();
+            for (Map.Entry<Path, Path> archive : rewritten.entrySet()) {
+                TVFS.umount(archives.get(archive.getKey()));
+                Path backup = backup(archive.getKey());
+                backups.put(archive.getKey(), backup);
+                undoLog.addFirst(() -> move(backup, archive.getKey()));
+                move(archive.getValue(), archive.getKey());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Rolling back changes: {}", e.toString());
+            for (Undo undo : undoLog) {
+                try {
+                    undo.run();
+                } catch (IOException | RuntimeException undoFailure) {
+                    e.addSuppressed(undoFailure);
+                }
+            }
+            for (Path output : rewritten.values()) {
+                Files.deleteIfExists(output);
+            }
+            if (e.getSuppressed().length == 0) {
+                try {
+                    deleteTree(backupDirectory);
+                } catch (IOException cleanupFailure) {
+                    e.addSuppressed(cleanupFailure);
+                }
+            } else {
+                log.error("Rollback incomplete, the previous state is kept in {}", backupDirectory);
+            }
+            throw e;
+        }
+
+        // committed, the previous state is no longer needed
+        deleteTree(backupDirectory);
+    }
+
+    /**
+     * Adds the operation to the edit of the archive on disk holding the file, or to the directory operations
+     */
+    private void queue(Operation operation, Map<Path, ArchiveEdit> archiveEdits, Map<Path, TFile> archives, List<Operation> directoryOperations) throws IOException {
+        Location target = locate(operation.file);
+        if (target == null) {
+            directoryOperations.add(operation);
+            return;
+        }
+
+        Path archivePath = Paths.get(target.archive.getPath());
+        archives.putIfAbsent(archivePath, target.archive);
+        ArchiveEdit edit = archiveEdits.computeIfAbsent(archivePath, path -> new ArchiveEdit());
+        List<String> entryPath = target.entryPath;
+        for (String nestedArchive : entryPath.subList(0, entryPath.size() - 1)) {
+            edit = edit.nested(nestedArchive);
+        }
+        String entryName = entryPath.get(entryPath.size() - 1);
+
+        if (operation.source != null && !operation.source.isArchive() && operation.source.isDirectory()) {
+            // folders are copied entry by entry
+            TFile[] children = operation.source.listFiles();
+            for (TFile child : children == null ? new TFile[0] : children) {
+                queue(new Operation(new TFile(operation.file, child.getName()), child, null), archiveEdits, archives, directoryOperations);
+            }
+        } else if (operation.source != null) {
+            Location source = locate(operation.source);
+            if (source != null && Paths.get(source.archive.getPath()).equals(archivePath)) {
+                edit.add(entryName, source.entryPath);
+            } else {
+                // read while the archive is written rather than held in memory until then
+                TFile sourceFile = operation.source;
+                edit.put(entryName, () -> archiveBackend.newInputStream(sourceFile));
+            }
+        } else if (operation.contents != null) {
+            edit.put(entryName, operation.contents);
+        } else {
+            edit.remove(entryName);
+        }
+    }
+
+    /**
+     * Applies the operation, keeping the previous state of the file the first time it is changed
+     */
+    private void applyToDirectory(Operation operation, LinkedList<Undo> undoLog, Map<Path, Path> backups) throws IOException {
+        Path path = Paths.get(operation.file.getPath());
+        if (backups.containsKey(path)) {
+            // changed before within this commit, the first change restores the previous state
+            deleteTree(path);
+        } else if (Files.exists(path)) {
+            Path backup = backup(path);
+            backups.put(path, backup);
+            undoLog.addFirst(() -> {
+                deleteTree(path);
+                move(backup, path);
+            });
+        } else {
+            backups.put(path, null);
+            undoLog.addFirst(() -> deleteTree(path));
+        }
+
+        if (operation.source != null) {
+            archiveBackend.copy(operation.source, operation.file);
+        } else if (operation.contents != null) {
+            archiveBackend.write(operation.file, operation.contents);
+        }
+    }
+
+    /**
+     * Locates the file within the archive on disk holding it, skipping archive-like names of plain directories
+     *
+     * @return the archive and the names of the nested archives leading to the file followed by the file's entry name,
+     * or null if the file is located in plain directories only
+     */
+    @Nullable
+    private static Location locate(@Nonnull TFile file) {
+        LinkedList<TFile> enclosing = new LinkedList<>();
+        for (TFile archive = file.getEnclArchive(); archive != null; archive = archive.getEnclArchive()) {
+            enclosing.addFirst(archive);
+        }
+        enclosing.add(file);
+
+        TFile root = null;
+        List<String> entryPath = new ArrayList<>();
+        for (int i = 0; i < enclosing.size(); i++) {
+            TFile element = enclosing.get(i);
+            if (root == null) {
+                if (i < enclosing.size() - 1 && new File(element.getPath()).isFile()) {
+                    root = element;
+                }
+                continue;
+            }
+            String entryName = element.getEnclEntryName();
+            TFile parent = enclosing.get(i - 1);
+            if (parent != root && parent.toNonArchiveFile().isDirectory()) {
+                // the parent is a folder within the archive, despite its name
+                entryName = entryPath.remove(entryPath.size() - 1) + "/" + entryName;
+            }
+            entryPath.add(entryName);
+        }
+        return root == null ? null : new Location(root, entryPath);
+    }
+
+    /**
+     * Moves the file or folder to the backup directory, numbered as files of different folders may share their name
+     */
+    private Path backup(Path path) throws IOException {
+        Files.createDirectories(backupDirectory);
+        Path backup = backupDirectory.resolve(backupCount++ + "-" + path.getFileName());
+        move(path, backup);
+        return backup;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteTree(Path path) throws IOException {
+        if (Files.exists(path)) {
+            try (Stream<Path> tree = Files.walk(path)) {
+                for (Path child : tree.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(child);
+                }
+            }
+        }
+    }
+
+    private static final class Location {
+        private final TFile archive;
+        private final List<String> entryPath;
+
+        Location(TFile archive, List<String> entryPath) {
+            this.archive = archive;
+            this.entryPath = Collections.unmodifiableList(entryPath);
+        }
+    }
+
+    /**
+     * A queued change: a removal if neither source nor contents are given
+     */
+    private static final class Operation {
+        private final TFile file;
+        private final TFile source;
+        private final byte[] contents;
+
+        Operation(TFile file, TFile source, byte[] contents) {
+            this.file = file;
+            this.source = source;
+            this.contents = contents;
+        }
+    }
+
+    /**
+     * Reverts one change of a failed commit
+     */
+    private interface Undo {
+        void run() throws IOException;
+    }
+}
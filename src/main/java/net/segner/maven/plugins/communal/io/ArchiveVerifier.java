@@ -0,0 +1,123 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Verifies a written archive the way the application server reads it, with the zip implementation of the JDK: the
+ * central directory is read, including zip64 records, and every entry is inflated and checked against the size and
+ * CRC-32 recorded in the central directory.
+ * <p>
+ * Entries are streamed, never held in memory as a whole. The modules of the EAR are extracted to a temporary file while
+ * their CRC-32 is checked, and verified in turn, the archives nested deeper are checked by their CRC-32 only.
+ */
+public class ArchiveVerifier {
+
+    private static final String TEMP_PREFIX = "skinnywar-";
+    private static final int NESTED_DEPTH = 1;
+
+    private final BufferPool bufferPool;
+
+    @Inject
+    public ArchiveVerifier(@Nonnull BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Verifies the archive, or each archive of an exploded archive
+     *
+     * @return number of entries verified
+     * @throws ZipException if the archive is corrupt, naming the corrupt entry
+     */
+    public long verify(@Nonnull Path archive) throws IOException {
+        if (!Files.isDirectory(archive)) {
+            return verify(archive, archive.getFileName().toString(), NESTED_DEPTH);
+        }
+        List<Path> modules;
+        try (Stream<Path> children = Files.list(archive)) {
+            modules = children.filter(Files::isRegularFile)
+                    .filter(child -> CompressionPolicy.isArchive(child.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        long verified = 0;
+        for (Path module : modules) {
+            verified += verify(module, module.getFileName().toString(), NESTED_DEPTH - 1);
+        }
+        return verified;
+    }
+
+    private long verify(Path archive, String archivePath, int depth) throws IOException {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(archive.toFile());
+        } catch (ZipException e) {
+            throw new ZipException("Invalid central directory of " + archivePath + ": " + e.getMessage());
+        }
+        long verified = 0;
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryPath = archivePath + "!/" + entry.getName();
+                if (depth > 0 && !entry.isDirectory() && CompressionPolicy.isArchive(entry.getName())) {
+                    verified += verifyNested(zip, entry, entryPath, depth - 1);
+                } else {
+                    copyChecked(zip, entry, entryPath, NullOutputStream.NULL_OUTPUT_STREAM);
+                }
+                verified++;
+            }
+        } finally {
+            zip.close();
+        }
+        return verified;
+    }
+
+    private long verifyNested(ZipFile zip, ZipEntry entry, String entryPath, int depth) throws IOException {
+        Path extracted = bufferPool.createTempFile(TEMP_PREFIX, "-" + FilenameUtils.getName(entry.getName()));
+        try {
+            try (OutputStream out = Files.newOutputStream(extracted)) {
+                copyChecked(zip, entry, entryPath, out);
+            }
+            return verify(extracted, entryPath, depth);
+        } finally {
+            Files.deleteIfExists(extracted);
+        }
+    }
+
+    /**
+     * Streams the entry to the output, checking its size and CRC-32
+     */
+    private void copyChecked(ZipFile zip, ZipEntry entry, String entryPath, OutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        long size;
+        try (InputStream in = new CheckedInputStream(zip.getInputStream(entry), crc)) {
+            size = bufferPool.copy(in, out);
+        } catch (ZipException e) {
+            throw new ZipException("Unreadable entry " + entryPath + ": " + e.getMessage());
+        }
+        if (entry.getSize() != -1 && size != entry.getSize()) {
+            throw new ZipException("Size mismatch of " + entryPath + ": " + size + " bytes, expected " + entry.getSize());
+        }
+        if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+            throw new ZipException("CRC-32 mismatch of " + entryPath + ": " + Long.toHexString(crc.getValue()) + ", expected " + Long.toHexString(entry.getCrc()));
+        }
+    }
+}
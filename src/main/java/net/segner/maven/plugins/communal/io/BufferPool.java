@@ -0,0 +1,127 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporary storage of the plugin: the directory of its temporary files, the memory it may hold in buffers, and the
+ * copy buffers it reuses.
+ * <p>
+ * A buffer stays in memory up to the memory threshold, and only while the buffers in memory stay within the memory
+ * budget, it is moved to a temporary file otherwise. The memory held in buffers is then bounded by the budget,
+ * whatever the size of the EAR and of its nested archives.
+ * <p>
+ * Executions running in the same JVM, such as the modules of a {@code mvn -T} build, share the buffer pool of their
+ * configuration through {@link #shared(Path, int, long)}, and with it a single memory budget.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+    public static final BufferPool DEFAULT = new BufferPool(null, DEFAULT_MEMORY_THRESHOLD, DEFAULT_MEMORY_BUDGET);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final ConcurrentMap<String, BufferPool> SHARED = new ConcurrentHashMap<>();
+
+    private final Path tempDirectory;
+    private final int memoryThreshold;
+    private final long memoryBudget;
+    private final AtomicLong memoryInUse = new AtomicLong();
+    // one per concurrent copy at most
+    private final Queue<byte[]> copyBuffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param tempDirectory   directory of the temporary files, the default temporary directory if null
+     * @param memoryThreshold largest buffer kept in memory, in bytes
+     * @param memoryBudget    memory held by all buffers, in bytes
+     */
+    public BufferPool(@Nullable Path tempDirectory, int memoryThreshold, long memoryBudget) {
+        Validate.isTrue(memoryThreshold >= 0, "Memory threshold must not be negative: %d", memoryThreshold);
+        Validate.isTrue(memoryBudget >= 0, "Memory budget must not be negative: %d", memoryBudget);
+        this.tempDirectory = tempDirectory;
+        this.memoryThreshold = memoryThreshold;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the buffer pool of the configuration, the same for every execution of this JVM configured alike
+     */
+    @Nonnull
+    public static BufferPool shared(@Nullable Path tempDirectory, int memoryThreshold, long memoryBudget) {
+        BufferPool bufferPool = new BufferPool(tempDirectory != null ? tempDirectory.toAbsolutePath().normalize() : null, memoryThreshold, memoryBudget);
+        return SHARED.computeIfAbsent(bufferPool.toString(), configuration -> bufferPool);
+    }
+
+    @Nonnull
+    public Path createTempFile(@Nonnull String prefix, @Nonnull String suffix) throws IOException {
+        if (tempDirectory == null) {
+            return Files.createTempFile(prefix, suffix);
+        }
+        Files.createDirectories(tempDirectory);
+        return Files.createTempFile(tempDirectory, prefix, suffix);
+    }
+
+    /**
+     * Copies the stream with a reused copy buffer
+     *
+     * @return number of bytes copied
+     */
+    public long copy(@Nonnull InputStream in, @Nonnull OutputStream out) throws IOException {
+        byte[] buffer = copyBuffers.poll();
+        if (buffer == null) {
+            buffer = new byte[COPY_BUFFER_SIZE];
+        }
+        try {
+            return IOUtils.copyLarge(in, out, buffer);
+        } finally {
+            copyBuffers.offer(buffer);
+        }
+    }
+
+    public int getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * @return memory held by the buffers in memory, in bytes
+     */
+    public long getMemoryInUse() {
+        return memoryInUse.get();
+    }
+
+    /**
+     * @return true if the memory is reserved, false if it would exceed the memory budget
+     */
+    boolean reserveMemory(long bytes) {
+        long inUse;
+        do {
+            inUse = memoryInUse.get();
+            if (inUse + bytes > memoryBudget) {
+                return false;
+            }
+        } while (!memoryInUse.compareAndSet(inUse, inUse + bytes));
+        return true;
+    }
+
+    void releaseMemory(long bytes) {
+        memoryInUse.addAndGet(-bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "tempDirectory=" + tempDirectory + ", memoryThreshold=" + memoryThreshold + ", memoryBudget=" + memoryBudget;
+    }
+}
@@ -0,0 +1,60 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Decides how the {@link ArchiveRewriter} compresses the entries it writes. Nested archives, which are compressed
+ * already, may be stored, every other entry is deflated at the configured level.
+ * <p>
+ * A stored nested archive can be opened in place by the application server, without an inflate pass. Turning a
+ * deflated nested archive into a stored one only inflates it, its CRC-32 is unchanged.
+ */
+public class CompressionPolicy {
+
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(false, Deflater.DEFAULT_COMPRESSION);
+
+    private static final List<String> ARCHIVE_EXTENSIONS = Arrays.asList("jar", "war", "rar", "ear", "zip");
+
+    private final boolean storeArchives;
+    private final int level;
+
+    /**
+     * @param storeArchives true to store nested archives rather than deflate them
+     * @param level         deflate level of the other entries, 0 to 9 or -1 for the default level
+     */
+    public CompressionPolicy(boolean storeArchives, int level) {
+        Validate.inclusiveBetween(Deflater.DEFAULT_COMPRESSION, Deflater.BEST_COMPRESSION, level, "Compression level must be between -1 and 9: " + level);
+        this.storeArchives = storeArchives;
+        this.level = level;
+    }
+
+    /**
+     * @return true if the entry is to be stored rather than deflated
+     */
+    public boolean isStored(@Nonnull String entryName) {
+        return storeArchives && isArchive(entryName);
+    }
+
+    /**
+     * @return true if the entry is a nested archive, by its extension
+     */
+    public static boolean isArchive(@Nonnull String entryName) {
+        return ARCHIVE_EXTENSIONS.contains(FilenameUtils.getExtension(entryName).toLowerCase(Locale.ROOT));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public String toString() {
+        return "storeArchives=" + storeArchives + ", level=" + level;
+    }
+}
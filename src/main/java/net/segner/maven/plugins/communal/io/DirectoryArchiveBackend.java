@@ -0,0 +1,126 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@inheritDoc}
+ * <p>
+ * Handles files in plain directories, such as an exploded EAR, directly through the default filesystem. Files within
+ * packed archives are passed on to the archive backend. Plain files are copied by the {@link FileLinker}.
+ */
+public class DirectoryArchiveBackend implements ArchiveBackend {
+
+    private final ArchiveBackend archiveBackend;
+    private final FileLinker fileLinker;
+
+    public DirectoryArchiveBackend(@Nonnull ArchiveBackend archiveBackend) {
+        this(archiveBackend, new FileLinker(false));
+    }
+
+    public DirectoryArchiveBackend(@Nonnull ArchiveBackend archiveBackend, @Nonnull FileLinker fileLinker) {
+        this.archiveBackend = archiveBackend;
+        this.fileLinker = fileLinker;
+    }
+
+    public ArchiveBackend getArchiveBackend() {
+        return archiveBackend;
+    }
+
+    @Nonnull
+    @Override
+    public InputStream newInputStream(@Nonnull TFile file) throws IOException {
+        return isPlain(file) ? Files.newInputStream(Paths.get(file.getPath())) : archiveBackend.newInputStream(file);
+    }
+
+    @Override
+    public void rm(@Nonnull TFile file) throws IOException {
+        if (!isPlain(file)) {
+            archiveBackend.rm(file);
+            return;
+        }
+        Path path = Paths.get(file.getPath());
+        if (Files.exists(path)) {
+            try (Stream<Path> tree = Files.walk(path)) {
+                for (Path child : tree.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(child);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void copy(@Nonnull TFile source, @Nonnull TFile destination) throws IOException {
+        if (!isPlain(destination)) {
+            archiveBackend.copy(source, destination);
+            return;
+        }
+
+        Path destinationPath = Paths.get(destination.getPath());
+        Files.createDirectories(destinationPath.getParent());
+        if (!isPlain(source)) {
+            try (InputStream in = archiveBackend.newInputStream(source)) {
+                Files.copy(in, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return;
+        }
+
+        Path sourcePath = Paths.get(source.getPath());
+        try (Stream<Path> tree = Files.walk(sourcePath)) {
+            List<Path> children = tree.collect(Collectors.toList());
+            for (Path child : children) {
+                Path target = destinationPath.resolve(sourcePath.relativize(child));
+                if (Files.isDirectory(child)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.createDirectories(target.getParent());
+                    fileLinker.copy(child, target);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(@Nonnull TFile file, @Nonnull byte[] contents) throws IOException {
+        if (!isPlain(file)) {
+            archiveBackend.write(file, contents);
+            return;
+        }
+        Path path = Paths.get(file.getPath());
+        Files.createDirectories(path.getParent());
+        // the file may be linked to other files, which keep their contents
+        Files.deleteIfExists(path);
+        Files.write(path, contents);
+    }
+
+    @Override
+    public void sync() throws IOException {
+        archiveBackend.sync();
+    }
+
+    /**
+     * @return true if the file is located in plain directories only, regardless of archive-like names on the path
+     */
+    boolean isPlain(@Nonnull TFile file) {
+        File ancestor = new File(file.getPath());
+        if (ancestor.exists()) {
+            return true;
+        }
+        do {
+            ancestor = ancestor.getParentFile();
+        } while (ancestor != null && !ancestor.exists());
+        return ancestor != null && ancestor.isDirectory();
+    }
+}
@@ -0,0 +1,98 @@
+package net.segner.maven.plugins.communal.io;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies plain files without passing their contents through the heap: as hard links if enabled and supported by the
+ * filesystem, otherwise with {@link FileChannel#transferTo}.
+ * <p>
+ * Linked files share their contents, so files in plain directories must be replaced rather than changed in place.
+ */
+@Singleton
+@Slf4j
+public class FileLinker {
+
+    private static final String LINK_SUFFIX = ".skinnywar-link";
+
+    private final boolean hardLinks;
+
+    @Inject
+    public FileLinker(@Named("linkExplodedLibraries") Boolean hardLinks) {
+        this.hardLinks = Boolean.TRUE.equals(hardLinks);
+    }
+
+    /**
+     * Copies the file, replacing an existing target
+     */
+    public void copy(@Nonnull Path source, @Nonnull Path target) throws IOException {
+        if (hardLinks && link(source, target)) {
+            return;
+        }
+        Path partial = target.resolveSibling(target.getFileName() + LINK_SUFFIX);
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            for (long position = 0; position < size; ) {
+                position += in.transferTo(position, size - position, out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.setLastModifiedTime(partial, Files.getLastModifiedTime(source));
+        replace(partial, target);
+    }
+
+    /**
+     * Replaces the duplicate with a hard link to the canonical file, if hard links are enabled and both files have
+     * the same contents
+     *
+     * @return true if the duplicate was replaced
+     */
+    public boolean linkIdentical(@Nonnull Path canonical, @Nonnull Path duplicate) throws IOException {
+        if (!hardLinks || Files.isSameFile(canonical, duplicate)
+                || Files.size(canonical) != Files.size(duplicate)
+                || !FileUtils.contentEquals(canonical.toFile(), duplicate.toFile())) {
+            return false;
+        }
+        return link(canonical, duplicate);
+    }
+
+    /**
+     * @return false if the filesystem does not support hard links between the files
+     */
+    private boolean link(Path source, Path target) throws IOException {
+        Path link = target.resolveSibling(target.getFileName() + LINK_SUFFIX);
+        Files.deleteIfExists(link);
+        try {
+            Files.createLink(link, source);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("Unable to link {} to {}, copying instead: {}", target, source, e.toString());
+            return false;
+        }
+        replace(link, target);
+        return true;
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.segner.maven.plugins.communal.io;
 
+import com.google.inject.Inject;
 import net.java.truevfs.access.TFile;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.tuple.Pair;
@@ -8,6 +9,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -16,6 +18,7 @@ import java.util.List;
 public class GenericMirroringFilesystem implements MirroringFilesystem {
 
     private TFile master, slave;
+    private ArchiveBackend archiveBackend = new DirectoryArchiveBackend(new TrueVfsArchiveBackend());
 
     protected GenericMirroringFilesystem() {
     }
@@ -28,6 +31,16 @@ public class GenericMirroringFilesystem implements MirroringFilesystem {
         this(new TFile(master), new TFile(slave));
     }
 
+    @Inject(optional = true)
+    public void setArchiveBackend(ArchiveBackend archiveBackend) {
+        Validate.notNull(archiveBackend);
+        this.archiveBackend = archiveBackend;
+    }
+
+    public ArchiveBackend getArchiveBackend() {
+        return archiveBackend;
+    }
+
     protected void setTargets(TFile master, TFile slave) {
         Validate.notNull(master);
         if (master.equals(slave)) {
@@ -83,7 +96,7 @@ public class GenericMirroringFilesystem implements MirroringFilesystem {
     public void rm(String relativePath) throws IOException {
         for (TFile target : targetList()) {
             if (!target.exists()) continue;
-            new TFile(target, relativePath).rm_r();
+            archiveBackend.rm(new TFile(target, relativePath));
         }
     }
 
@@ -106,17 +119,61 @@ public class GenericMirroringFilesystem implements MirroringFilesystem {
      */
     @Override
     public void copy(TFile file, String relativeFolderDestination) throws IOException {
+        copy(file, null, relativeFolderDestination);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void copy(TFile file, TFile mirroredFile, String relativeFolderDestination) throws IOException {
         for (TFile target : targetList()) {
             if (!target.exists()) continue;
+            TFile source = (target == slave && mirroredFile != null && new File(mirroredFile.getPath()).isFile()) ? mirroredFile : file;
             TFile destination = new TFile(target, relativeFolderDestination);
-            TFile destinationFile = new TFile(destination, file.getName());
-            if (!file.equals(destinationFile)) {
-                file.toNonArchiveFile().cp_rp(destinationFile.isDirectory() ? destinationFile.toNonArchiveFile() : destinationFile);
+            TFile destinationFile = new TFile(destination, source.getName());
+            if (!source.equals(destinationFile)) {
+                archiveBackend.copy(source, destinationFile);
             }
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(String relativePath, byte[] contents) throws IOException {
+        for (TFile target : targetList()) {
+            if (!target.exists()) continue;
+            archiveBackend.write(new TFile(target, relativePath), contents);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MirroringFilesystem within(ArchiveTransaction transaction) {
+        Validate.notNull(transaction);
+        GenericMirroringFilesystem view = new GenericMirroringFilesystem(master, slave);
+        view.setArchiveBackend(transaction);
+        return view;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MirroringFilesystem slaveOnly() {
+        if (slave == null) {
+            return null;
+        }
+        GenericMirroringFilesystem slaveOnly = new GenericMirroringFilesystem(slave, null);
+        slaveOnly.setArchiveBackend(archiveBackend);
+        return slaveOnly;
+    }
+
     private List<TFile> targetList() {
-        return Arrays.asList(master, slave);
+        return slave == null ? Collections.singletonList(master) : Arrays.asList(master, slave);
     }
 }
@@ -4,6 +4,7 @@ package net.segner.maven.plugins.communal.io;
 import net.java.truevfs.access.TFile;
 import org.apache.commons.lang3.tuple.Pair;
 
+import javax.annotation.Nullable;
 import java.io.FileFilter;
 import java.io.IOException;
 
@@ -53,4 +54,33 @@ public interface MirroringFilesystem {
     void copy(TFile source, TFile destination) throws IOException;
 
     void copy(TFile source, String relativeDestination) throws IOException;
+
+    /**
+     * Copies the source to the master filesystem, and its mirrored copy to the slave filesystem so that the slave is
+     * not written from a packed archive.
+     *
+     * @param mirroredSource an identical copy of the source in plain directories, or null to copy the source to both
+     */
+    void copy(TFile source, @Nullable TFile mirroredSource, String relativeDestination) throws IOException;
+
+    /**
+     * Writes the contents to the file in both filesystems, replacing an existing file.
+     *
+     * @param relativePath path of the file
+     * @param contents     the file contents
+     * @throws IOException if any I/O error occurs.
+     */
+    void write(String relativePath, byte[] contents) throws IOException;
+
+    /**
+     * @return a view of both filesystems queuing its changes in the transaction, the changes are applied once the
+     * transaction is committed
+     */
+    MirroringFilesystem within(ArchiveTransaction transaction);
+
+    /**
+     * @return a filesystem applying changes to the slave target only, or null if there is no slave target
+     */
+    @Nullable
+    MirroringFilesystem slaveOnly();
 }
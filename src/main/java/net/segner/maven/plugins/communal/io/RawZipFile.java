@@ -0,0 +1,37 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipFile;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Zip file that additionally exposes the compressed bytes of its entries, allowing entries to be copied to another zip
+ * file without inflating and deflating them again.
+ */
+public class RawZipFile extends ZipFile {
+
+    public RawZipFile(Path path) throws IOException {
+        super(path);
+    }
+
+    /**
+     * @return stream of the entry data exactly as stored in the archive, or null if there is no such entry
+     */
+    public InputStream getRawInputStream(@Nonnull String name) throws IOException {
+        return getInputStream(name, false, false);
+    }
+
+    /**
+     * Entry carrying the metadata (method, sizes, CRC-32, time) of another entry under a new name, for raw copies.
+     */
+    public static class RenamedZipEntry extends ZipEntry {
+
+        public RenamedZipEntry(String name, ZipEntry template) {
+            super(name, template);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the reproducible mode of the {@link ArchiveRewriter}: every archive it writes lists its entries in a
+ * canonical order, {@code META-INF/} and {@code META-INF/MANIFEST.MF} first, then by name, and every entry carries the
+ * same timestamp. Identical inputs then give byte-identical archives.
+ * <p>
+ * The timestamp follows {@code project.build.outputTimestamp}, given as seconds since the epoch or as an ISO-8601
+ * date-time with offset, like the other plugins of the build.
+ */
+public class ReproducibleOutput {
+
+    public static final ReproducibleOutput DISABLED = new ReproducibleOutput(false, 0);
+
+    /**
+     * earliest time a zip entry can hold
+     */
+    public static final long DEFAULT_TIMESTAMP = 315532802000L;
+
+    private static final String MANIFEST_FOLDER = "META-INF/";
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private final boolean enabled;
+    private final long timestamp;
+
+    private ReproducibleOutput(boolean enabled, long timestamp) {
+        this.enabled = enabled;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @param outputTimestamp value of {@code project.build.outputTimestamp}, the default timestamp is used if it is not set
+     */
+    @Nonnull
+    public static ReproducibleOutput of(@Nullable String outputTimestamp) {
+        // maven treats single characters as unset, allowing the property to be overridden
+        if (StringUtils.length(StringUtils.trim(outputTimestamp)) < 2) {
+            return new ReproducibleOutput(true, DEFAULT_TIMESTAMP);
+        }
+        String value = outputTimestamp.trim();
+        if (StringUtils.isNumeric(value)) {
+            return new ReproducibleOutput(true, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        }
+        try {
+            return new ReproducibleOutput(true, OffsetDateTime.parse(value).toInstant().toEpochMilli());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid project.build.outputTimestamp, expecting seconds since the epoch or an ISO-8601 date-time: " + value, e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the timestamp of every entry, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Zip entries hold their time in the local time zone of the writer. The returned time is stored as the same local
+     * date and time as the timestamp in UTC, on every machine.
+     *
+     * @return time to set on the entries
+     */
+    public long getEntryTime() {
+        return timestamp - TimeZone.getDefault().getOffset(timestamp);
+    }
+
+    /**
+     * @return canonical order of the entry names
+     */
+    @Nonnull
+    public static Comparator<String> entryOrder() {
+        return Comparator.comparing((String name) -> !name.equals(MANIFEST_FOLDER))
+                .thenComparing(name -> !name.equals(MANIFEST_NAME))
+                .thenComparing(Comparator.naturalOrder());
+    }
+
+    @Override
+    public String toString() {
+        return enabled ? "timestamp=" + timestamp : "disabled";
+    }
+}
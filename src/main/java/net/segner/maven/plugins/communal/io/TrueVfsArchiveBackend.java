@@ -0,0 +1,48 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.access.TFileOutputStream;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@inheritDoc}
+ * <p>
+ * Archive changes are kept in TrueVFS's global mount state and written when the archives are unmounted.
+ */
+public class TrueVfsArchiveBackend implements ArchiveBackend {
+
+    @Nonnull
+    @Override
+    public InputStream newInputStream(@Nonnull TFile file) throws IOException {
+        return new TFileInputStream(file.toNonArchiveFile());
+    }
+
+    @Override
+    public void rm(@Nonnull TFile file) throws IOException {
+        if (file.exists()) {
+            file.rm_r();
+        }
+    }
+
+    @Override
+    public void copy(@Nonnull TFile source, @Nonnull TFile destination) throws IOException {
+        source.toNonArchiveFile().cp_rp(destination.isDirectory() ? destination.toNonArchiveFile() : destination);
+    }
+
+    @Override
+    public void write(@Nonnull TFile file, @Nonnull byte[] contents) throws IOException {
+        try (OutputStream out = new TFileOutputStream(file)) {
+            out.write(contents);
+        }
+    }
+
+    @Override
+    public void sync() {
+        // written by TVFS.umount() once the layout is complete
+    }
+}
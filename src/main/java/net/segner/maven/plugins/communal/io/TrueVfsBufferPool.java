@@ -0,0 +1,435 @@
+package net.segner.maven.plugins.communal.io;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truecommons.cio.AbstractInputSocket;
+import net.java.truecommons.cio.AbstractOutputSocket;
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.InputSocket;
+import net.java.truecommons.cio.IoBuffer;
+import net.java.truecommons.cio.IoBufferPool;
+import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truevfs.kernel.spec.spi.IoBufferPoolFactory;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the buffers TrueVFS uses to cache entries and to update nested archives, following the current
+ * {@link BufferPool} rather than buffering everything in the default temporary directory.
+ * <p>
+ * TrueVFS locates its buffer pool once per JVM, through {@link Factory}, so the pool follows the buffer pool
+ * {@link #acquire(BufferPool) acquired} by the executions running, and the default buffer pool once they are done.
+ * Executions running concurrently must then use the same buffer pool. A buffer keeps the buffer pool it was allocated
+ * with.
+ * <p>
+ * Buffers give back their memory and delete their file when TrueVFS releases them. Buffers TrueVFS drops without
+ * releasing them are released once collected, as a safety net, the next time a buffer is allocated.
+ */
+@Slf4j
+public class TrueVfsBufferPool extends IoBufferPool {
+
+    private static final String TEMP_PREFIX = "skinnywar-";
+    private static final byte[] EMPTY = new byte[0];
+
+    private static volatile BufferPool bufferPool = BufferPool.DEFAULT;
+    // executions using the buffer pool, guarded by the class
+    private static int users;
+
+    // buffers not collected yet, the references must stay reachable to be enqueued
+    private static final Set<BufferReference> BUFFERS = ConcurrentHashMap.newKeySet();
+    private static final ReferenceQueue<Buffer> COLLECTED = new ReferenceQueue<>();
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    /**
+     * Buffers TrueVFS in the buffer pool until the execution {@link #release(BufferPool) releases} it
+     *
+     * @throws IllegalStateException if an execution running concurrently uses another buffer pool
+     */
+    public static synchronized void acquire(@Nonnull BufferPool bufferPool) {
+        Validate.notNull(bufferPool);
+        if (users > 0 && bufferPool != TrueVfsBufferPool.bufferPool) {
+            throw new IllegalStateException("Executions running concurrently must configure the same buffers, found "
+                    + TrueVfsBufferPool.bufferPool + " and " + bufferPool);
+        }
+        TrueVfsBufferPool.bufferPool = bufferPool;
+        users++;
+    }
+
+    /**
+     * Ends a {@link #acquire(BufferPool)}, TrueVFS buffers in the default buffer pool once no execution uses the
+     * buffer pool anymore
+     */
+    public static synchronized void release(@Nonnull BufferPool bufferPool) {
+        if (users == 0 || bufferPool != TrueVfsBufferPool.bufferPool) {
+            return;
+        }
+        if (--users == 0) {
+            TrueVfsBufferPool.bufferPool = BufferPool.DEFAULT;
+        }
+    }
+
+    @Override
+    public IoBuffer allocate() {
+        releaseCollected();
+        Buffer buffer = new Buffer(new Storage(bufferPool), TEMP_PREFIX + allocated.incrementAndGet());
+        BUFFERS.add(new BufferReference(buffer));
+        return buffer;
+    }
+
+    /**
+     * Releases the storage of the buffers collected without being released
+     */
+    static void releaseCollected() {
+        Reference<? extends Buffer> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            BUFFERS.remove(collected);
+            ((BufferReference) collected).storage.release();
+        }
+    }
+
+    private static class BufferReference extends PhantomReference<Buffer> {
+
+        private final Storage storage;
+
+        BufferReference(Buffer buffer) {
+            super(buffer, COLLECTED);
+            this.storage = buffer.storage;
+        }
+    }
+
+    /**
+     * Memory reserved in the buffer pool and file of the contents of a buffer, released without the buffer
+     */
+    private static class Storage {
+
+        private final BufferPool pool;
+        private long memory;
+        private Path file;
+
+        Storage(BufferPool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Releases the previous storage
+         */
+        synchronized void replace(long newMemory, Path newFile) {
+            release();
+            memory = newMemory;
+            file = newFile;
+        }
+
+        synchronized void release() {
+            pool.releaseMemory(memory);
+            memory = 0;
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.debug("Failed to delete buffer {}", file, e);
+                }
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Registered as a service, ranks before the file buffer pool of TrueVFS
+     */
+    public static class Factory extends IoBufferPoolFactory {
+
+        @Override
+        public IoBufferPool get() {
+            return new TrueVfsBufferPool();
+        }
+
+        @Override
+        public int getPriority() {
+            return 100;
+        }
+    }
+
+    /**
+     * Buffer in memory, moved to a temporary file once it exceeds the memory threshold or the memory budget. Each
+     * write replaces the contents, streams already open keep reading the previous contents.
+     */
+    private static class Buffer implements IoBuffer {
+
+        private final Storage storage;
+        private final BufferPool pool;
+        private final String name;
+        private byte[] memory;
+        private Path file;
+        private long size;
+        private long readTime = UNKNOWN;
+        private long writeTime = UNKNOWN;
+
+        Buffer(Storage storage, String name) {
+            this.storage = storage;
+            this.pool = storage.pool;
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public synchronized long getSize(Size type) {
+            return size;
+        }
+
+        @Override
+        public synchronized long getTime(Access type) {
+            if (type == Access.READ) {
+                return readTime;
+            }
+            return type == Access.WRITE ? writeTime : UNKNOWN;
+        }
+
+        @Override
+        public Boolean isPermitted(Access type, Entity entity) {
+            return type == Access.READ || type == Access.WRITE ? Boolean.TRUE : null;
+        }
+
+        @Override
+        public InputSocket<Buffer> input() {
+            return new AbstractInputSocket<Buffer>() {
+                @Override
+                public Buffer target() {
+                    return Buffer.this;
+                }
+
+                @Override
+                public InputStream stream(OutputSocket<? extends Entry> peer) throws IOException {
+                    return openStream();
+                }
+
+                @Override
+                public SeekableByteChannel channel(OutputSocket<? extends Entry> peer) throws IOException {
+                    return openChannel();
+                }
+            };
+        }
+
+        @Override
+        public OutputSocket<Buffer> output() {
+            return new AbstractOutputSocket<Buffer>() {
+                @Override
+                public Buffer target() {
+                    return Buffer.this;
+                }
+
+                @Override
+                public OutputStream stream(InputSocket<? extends Entry> peer) {
+                    return new BufferOutputStream();
+                }
+
+                @Override
+                public SeekableByteChannel channel(InputSocket<? extends Entry> peer) throws IOException {
+                    // random access writes always go to a file
+                    Path channelFile = createBufferFile();
+                    return new FileChannel(channelFile, Files.newByteChannel(channelFile, StandardOpenOption.WRITE, StandardOpenOption.READ));
+                }
+            };
+        }
+
+        @Override
+        public synchronized void release() {
+            replace(null, null, 0);
+        }
+
+        /**
+         * The file is deleted on exit at the latest, as buffers that are never released may not be collected before
+         */
+        private Path createBufferFile() throws IOException {
+            Path bufferFile = pool.createTempFile(TEMP_PREFIX, ".buffer");
+            bufferFile.toFile().deleteOnExit();
+            return bufferFile;
+        }
+
+        private synchronized InputStream openStream() throws IOException {
+            readTime = System.currentTimeMillis();
+            if (file != null) {
+                return Files.newInputStream(file);
+            }
+            return new ByteArrayInputStream(memory != null ? memory : EMPTY, 0, (int) size);
+        }
+
+        private synchronized SeekableByteChannel openChannel() throws IOException {
+            readTime = System.currentTimeMillis();
+            if (file != null) {
+                return Files.newByteChannel(file, StandardOpenOption.READ);
+            }
+            return new ByteBufferChannel(ByteBuffer.wrap(memory != null ? memory : EMPTY, 0, (int) size).slice().asReadOnlyBuffer());
+        }
+
+        /**
+         * Replaces the contents, releasing the memory or the file of the previous contents
+         */
+        private synchronized void replace(byte[] newMemory, Path newFile, long newSize) {
+            storage.replace(newMemory != null ? newMemory.length : 0, newFile);
+            memory = newMemory;
+            file = newFile;
+            size = newSize;
+            writeTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Writes into memory while the contents fit, then into a temporary file
+         */
+        private class BufferOutputStream extends OutputStream {
+
+            private byte[] bytes = EMPTY;
+            private int count;
+            private Path spillFile;
+            private OutputStream spill;
+            private long written;
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+                if (spill == null && !ensureCapacity((long) count + len)) {
+                    spill();
+                }
+                if (spill != null) {
+                    spill.write(b, off, len);
+                } else {
+                    System.arraycopy(b, off, bytes, count, len);
+                    count += len;
+                }
+                written += len;
+            }
+
+            private boolean ensureCapacity(long capacity) {
+                if (capacity <= bytes.length) {
+                    return true;
+                }
+                if (capacity > pool.getMemoryThreshold()) {
+                    return false;
+                }
+                int newCapacity = (int) Math.min(pool.getMemoryThreshold(), Math.max(capacity, 2L * bytes.length));
+                if (!pool.reserveMemory(newCapacity - bytes.length)) {
+                    return false;
+                }
+                bytes = Arrays.copyOf(bytes, newCapacity);
+                return true;
+            }
+
+            private void spill() throws IOException {
+                spillFile = createBufferFile();
+                spill = new BufferedOutputStream(Files.newOutputStream(spillFile));
+                spill.write(bytes, 0, count);
+                pool.releaseMemory(bytes.length);
+                bytes = EMPTY;
+                count = 0;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (spill != null) {
+                    spill.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (spill != null) {
+                    spill.close();
+                    replace(null, spillFile, written);
+                } else {
+                    replace(bytes, null, count);
+                }
+            }
+        }
+
+        /**
+         * Channel on a temporary file, which becomes the contents once closed
+         */
+        private class FileChannel implements SeekableByteChannel {
+
+            private final Path channelFile;
+            private final SeekableByteChannel channel;
+
+            FileChannel(Path channelFile, SeekableByteChannel channel) {
+                this.channelFile = channelFile;
+                this.channel = channel;
+            }
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                return channel.read(dst);
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                return channel.write(src);
+            }
+
+            @Override
+            public long position() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public SeekableByteChannel position(long newPosition) throws IOException {
+                channel.position(newPosition);
+                return this;
+            }
+
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public SeekableByteChannel truncate(long newSize) throws IOException {
+                channel.truncate(newSize);
+                return this;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (channel.isOpen()) {
+                    long channelSize = channel.size();
+                    channel.close();
+                    replace(null, channelFile, channelSize);
+                }
+            }
+        }
+    }
+}
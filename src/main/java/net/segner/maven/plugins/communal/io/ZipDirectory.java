@@ -0,0 +1,519 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Central directory of a zip archive held in a {@link ByteBuffer}, typically a memory mapped file or an entry of
+ * another archive.
+ * <p>
+ * Only the central directory is parsed, including zip64 records, so listing an archive does not touch the entry data.
+ * Entry data is read from the buffer on request. A buffer holds at most 2GB, so of larger archives the buffer holds a
+ * part only: the tail from the central directory on to parse it, or the local header and data of an entry to read it.
+ * <p>
+ * Entry names flagged as UTF-8 are decoded as UTF-8, other names with the charset of the archive type, as TrueVFS
+ * reads them: UTF-8 for jar, war and ear archives, IBM437 for zip archives.
+ */
+public final class ZipDirectory {
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int ZIP64_EOCD_LENGTH = 56;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+    private static final int ZIP64_MAGIC_COUNT = 0xffff;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final Charset JAR_CHARSET = StandardCharsets.UTF_8;
+    private static final Charset ZIP_CHARSET = Charset.forName("IBM437");
+
+    private final Map<String, Entry> entries;
+    private final Map<String, Map<String, Boolean>> folders;
+
+    private ZipDirectory(Map<String, Entry> entries, Map<String, Map<String, Boolean>> folders) {
+        this.entries = entries;
+        this.folders = folders;
+    }
+
+    /**
+     * Parses the central directory of the archive in the buffer. The buffer is not retained.
+     *
+     * @throws ZipException if the buffer does not hold a (supported) zip archive
+     */
+    @Nonnull
+    public static ZipDirectory read(@Nonnull ByteBuffer archive) throws ZipException {
+        return read(archive, 0, JAR_CHARSET);
+    }
+
+    /**
+     * Parses the central directory of the archive in the buffer. The buffer is not retained.
+     *
+     * @param charset charset of the entry names not flagged as UTF-8, see {@link #getCharset(String)}
+     * @throws ZipException if the buffer does not hold a (supported) zip archive
+     */
+    @Nonnull
+    public static ZipDirectory read(@Nonnull ByteBuffer archive, @Nonnull Charset charset) throws ZipException {
+        return read(archive, 0, charset);
+    }
+
+    /**
+     * Parses the central directory of the archive whose tail is in the buffer. The buffer is not retained.
+     *
+     * @param archiveOffset offset within the archive of the start of the buffer, at most the
+     *                      {@link #getDirectoryStart(ByteBuffer, long) start of the central directory}
+     * @throws ZipException if the buffer does not hold the tail of a (supported) zip archive
+     */
+    @Nonnull
+    public static ZipDirectory read(@Nonnull ByteBuffer archive, long archiveOffset) throws ZipException {
+        return read(archive, archiveOffset, JAR_CHARSET);
+    }
+
+    /**
+     * Parses the central directory of the archive whose tail is in the buffer. The buffer is not retained.
+     *
+     * @param archiveOffset offset within the archive of the start of the buffer, at most the
+     *                      {@link #getDirectoryStart(ByteBuffer, long) start of the central directory}
+     * @param charset       charset of the entry names not flagged as UTF-8, see {@link #getCharset(String)}
+     * @throws ZipException if the buffer does not hold the tail of a (supported) zip archive
+     */
+    @Nonnull
+    public static ZipDirectory read(@Nonnull ByteBuffer archive, long archiveOffset, @Nonnull Charset charset) throws ZipException {
+        ByteBuffer buffer = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        EndRecord endRecord = readEndRecord(buffer, archiveOffset);
+        long directorySize = endRecord.directorySize;
+        int position = checkedPosition(buffer, endRecord.getDirectoryStart() - archiveOffset, (int) Math.min(directorySize, Integer.MAX_VALUE));
+        long directoryLimit = position + directorySize;
+        long preamble = endRecord.preamble;
+
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        Map<String, Map<String, Boolean>> folders = new HashMap<>();
+        folders.put(StringUtils.EMPTY, new LinkedHashMap<>());
+        // the headers are read up to the end of the central directory rather than counted, writers without zip64
+        // support record only the lower 16 bits of the entry count of archives with 65536 entries or more
+        long entriesRead = 0;
+        while (position < directoryLimit) {
+            checkedPosition(buffer, position, CENTRAL_HEADER_LENGTH);
+            if (buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int flags = buffer.getShort(position + 8) & 0xffff;
+            int method = buffer.getShort(position + 10) & 0xffff;
+            int dosTime = buffer.getInt(position + 12);
+            long crc = buffer.getInt(position + 16) & ZIP64_MAGIC;
+            long compressedSize = buffer.getInt(position + 20) & ZIP64_MAGIC;
+            long size = buffer.getInt(position + 24) & ZIP64_MAGIC;
+            int nameLength = buffer.getShort(position + 28) & 0xffff;
+            int extraLength = buffer.getShort(position + 30) & 0xffff;
+            int commentLength = buffer.getShort(position + 32) & 0xffff;
+            long localHeaderOffset = buffer.getInt(position + 42) & ZIP64_MAGIC;
+            checkedPosition(buffer, position, CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength);
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = buffer.duplicate();
+            nameBuffer.position(position + CENTRAL_HEADER_LENGTH);
+            nameBuffer.get(nameBytes);
+            String name = new String(nameBytes, (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : charset);
+
+            // zip64 extra field values are present only for the fields marked in the header
+            int extra = position + CENTRAL_HEADER_LENGTH + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = buffer.getShort(extra) & 0xffff;
+                int length = buffer.getShort(extra + 2) & 0xffff;
+                if (id == ZIP64_EXTRA_ID) {
+                    int value = extra + 4;
+                    if (size == ZIP64_MAGIC && value + 8 <= extraEnd) {
+                        size = buffer.getLong(value);
+                        value += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC && value + 8 <= extraEnd) {
+                        compressedSize = buffer.getLong(value);
+                        value += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC && value + 8 <= extraEnd) {
+                        localHeaderOffset = buffer.getLong(value);
+                    }
+                }
+                extra += 4 + length;
+            }
+            position = extraEnd + commentLength;
+
+            boolean directory = name.endsWith("/");
+            String path = StringUtils.removeEnd(name, "/");
+            Entry entry = new Entry(path, directory, (flags & FLAG_ENCRYPTED) != 0, method, dosTime, crc, compressedSize, size, localHeaderOffset + preamble);
+            if (!entries.containsKey(path) || !directory) {
+                entries.put(path, entry);
+            }
+            addToFolders(folders, path, directory);
+            entriesRead++;
+        }
+        if ((entriesRead & ZIP64_MAGIC_COUNT) != (endRecord.entryCount & ZIP64_MAGIC_COUNT)) {
+            throw new ZipException("Central directory holds " + entriesRead + " entries, expected " + endRecord.entryCount);
+        }
+        return new ZipDirectory(entries, folders);
+    }
+
+    /**
+     * @return charset of the entry names of the archive that are not flagged as UTF-8, by the type of the archive
+     */
+    @Nonnull
+    public static Charset getCharset(@Nonnull String archiveName) {
+        return StringUtils.endsWithIgnoreCase(archiveName, ".zip") ? ZIP_CHARSET : JAR_CHARSET;
+    }
+
+    /**
+     * @param archive       tail of the archive, holding its end of central directory records
+     * @param archiveOffset offset within the archive of the start of the buffer
+     * @return offset within the archive of its central directory
+     * @throws ZipException if the buffer does not hold the end of central directory records of a zip archive
+     */
+    public static long getDirectoryStart(@Nonnull ByteBuffer archive, long archiveOffset) throws ZipException {
+        return readEndRecord(archive.duplicate().order(ByteOrder.LITTLE_ENDIAN), archiveOffset).getDirectoryStart();
+    }
+
+    private static EndRecord readEndRecord(ByteBuffer buffer, long archiveOffset) throws ZipException {
+        int eocd = findEndOfCentralDirectory(buffer);
+        long entryCount = buffer.getShort(eocd + 10) & 0xffff;
+        long directorySize = buffer.getInt(eocd + 12) & ZIP64_MAGIC;
+        long directoryOffset = buffer.getInt(eocd + 16) & ZIP64_MAGIC;
+        long directoryEnd = archiveOffset + eocd;
+
+        int locator = eocd - ZIP64_EOCD_LOCATOR_LENGTH;
+        if (locator >= 0 && buffer.getInt(locator) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+            long zip64EocdOffset = buffer.getLong(locator + 8);
+            int zip64Eocd = checkedPosition(buffer, zip64EocdOffset - archiveOffset, ZIP64_EOCD_LENGTH);
+            if (buffer.getInt(zip64Eocd) != ZIP64_EOCD_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory record");
+            }
+            entryCount = buffer.getLong(zip64Eocd + 32);
+            directorySize = buffer.getLong(zip64Eocd + 40);
+            directoryOffset = buffer.getLong(zip64Eocd + 48);
+            directoryEnd = zip64EocdOffset;
+        } else if (entryCount == ZIP64_MAGIC_COUNT || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+            throw new ZipException("Missing zip64 end of central directory locator");
+        }
+
+        // data preceding the archive (e.g. a launcher script) shifts every offset recorded in the archive
+        long preamble = directoryEnd - directorySize - directoryOffset;
+        if (preamble < 0) {
+            throw new ZipException("Invalid central directory offset");
+        }
+        return new EndRecord(entryCount, directoryOffset, directorySize, preamble);
+    }
+
+    private static void addToFolders(Map<String, Map<String, Boolean>> folders, String path, boolean directory) {
+        String child = path;
+        boolean childIsFolder = directory;
+        while (!child.isEmpty()) {
+            int separator = child.lastIndexOf('/');
+            String parent = separator < 0 ? StringUtils.EMPTY : child.substring(0, separator);
+            Map<String, Boolean> siblings = folders.computeIfAbsent(parent, folder -> new LinkedHashMap<>());
+            String childName = child.substring(separator + 1);
+            Boolean known = siblings.get(childName);
+            siblings.put(childName, (known != null && known) || childIsFolder);
+            if (childIsFolder) {
+                folders.computeIfAbsent(child, folder -> new LinkedHashMap<>());
+            }
+            if (known != null) {
+                return;
+            }
+            child = parent;
+            childIsFolder = true;
+        }
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) throws ZipException {
+        int limit = buffer.limit();
+        int lowest = Math.max(0, limit - EOCD_LENGTH - MAX_COMMENT_LENGTH);
+        for (int position = limit - EOCD_LENGTH; position >= lowest; position--) {
+            if (buffer.getInt(position) == EOCD_SIGNATURE && position + EOCD_LENGTH + (buffer.getShort(position + 20) & 0xffff) == limit) {
+                return position;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    private static int checkedPosition(ByteBuffer buffer, long position, int length) throws ZipException {
+        if (position < 0 || position + length > buffer.limit()) {
+            throw new ZipException("Truncated zip archive");
+        }
+        return (int) position;
+    }
+
+    /**
+     * @return the file or directory entry of that name, null if there is none. Folders only implied by the names of
+     * their contents have no entry.
+     */
+    @Nullable
+    public Entry getEntry(@Nonnull String path) {
+        return entries.get(StringUtils.removeEnd(path, "/"));
+    }
+
+    /**
+     * @return every entry, in central directory order
+     */
+    @Nonnull
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * @return true if the path is an entry or a folder of the archive, the empty path being its root
+     */
+    public boolean exists(@Nonnull String path) {
+        String normalized = StringUtils.removeEnd(path, "/");
+        return entries.containsKey(normalized) || folders.containsKey(normalized);
+    }
+
+    /**
+     * @return names of the direct children of the folder, mapped to true for folders, null if there is no such folder
+     */
+    @Nullable
+    public Map<String, Boolean> list(@Nonnull String folder) {
+        Map<String, Boolean> children = folders.get(StringUtils.removeEnd(folder, "/"));
+        return children == null ? null : Collections.unmodifiableMap(children);
+    }
+
+    /**
+     * @return the compressed data of the entry, as a slice of the archive buffer
+     */
+    @Nonnull
+    public static ByteBuffer getRawData(@Nonnull ByteBuffer archive, @Nonnull Entry entry) throws ZipException {
+        return getRawData(archive, 0, entry);
+    }
+
+    /**
+     * @param archive       part of the archive holding the local header and the data of the entry
+     * @param archiveOffset offset within the archive of the start of the buffer
+     * @return the compressed data of the entry, as a slice of the buffer
+     */
+    @Nonnull
+    public static ByteBuffer getRawData(@Nonnull ByteBuffer archive, long archiveOffset, @Nonnull Entry entry) throws ZipException {
+        ByteBuffer buffer = archive.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int header = checkedPosition(buffer, entry.getLocalHeaderOffset() - archiveOffset, LOCAL_HEADER_LENGTH);
+        if (buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header: " + entry.getName());
+        }
+        int nameLength = buffer.getShort(header + 26) & 0xffff;
+        int extraLength = buffer.getShort(header + 28) & 0xffff;
+        if (entry.getCompressedSize() > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.getName());
+        }
+        int data = checkedPosition(buffer, (long) header + LOCAL_HEADER_LENGTH + nameLength + extraLength, (int) entry.getCompressedSize());
+        buffer.position(data);
+        buffer.limit(data + (int) entry.getCompressedSize());
+        return buffer.slice();
+    }
+
+    /**
+     * @return upper bound of the length of the local header and the data of the entry, the part of the archive
+     * {@link #getRawData(ByteBuffer, long, Entry)} needs
+     */
+    public static long getLocalRecordLength(@Nonnull Entry entry) {
+        return LOCAL_HEADER_LENGTH + 0xffff + 0xffff + entry.getCompressedSize();
+    }
+
+    /**
+     * @return stream of the uncompressed data of the entry
+     */
+    @Nonnull
+    public static InputStream newInputStream(@Nonnull ByteBuffer archive, @Nonnull Entry entry) throws IOException {
+        return newInputStream(archive, 0, entry);
+    }
+
+    /**
+     * @param archive       part of the archive holding the local header and the data of the entry
+     * @param archiveOffset offset within the archive of the start of the buffer
+     * @return stream of the uncompressed data of the entry
+     */
+    @Nonnull
+    public static InputStream newInputStream(@Nonnull ByteBuffer archive, long archiveOffset, @Nonnull Entry entry) throws IOException {
+        if (entry.isEncrypted()) {
+            throw new ZipException("Encrypted entry: " + entry.getName());
+        }
+        InputStream raw = new ByteBufferInputStream(getRawData(archive, archiveOffset, entry));
+        switch (entry.getMethod()) {
+            case METHOD_STORED:
+                return raw;
+            case METHOD_DEFLATED:
+                return new EntryInflaterInputStream(raw);
+            default:
+                throw new ZipException("Unsupported compression method " + entry.getMethod() + ": " + entry.getName());
+        }
+    }
+
+    /**
+     * Entry of the central directory, names of directory entries are given without their trailing '/'
+     */
+    public static final class Entry {
+        private final String name;
+        private final boolean directory;
+        private final boolean encrypted;
+        private final int method;
+        private final int dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        Entry(String name, boolean directory, boolean encrypted, int method, int dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.directory = directory;
+            this.encrypted = encrypted;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public boolean isEncrypted() {
+            return encrypted;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return modification time and date, as recorded in the MS-DOS format of the central directory
+         */
+        public int getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+    }
+
+    private static final class EndRecord {
+        private final long entryCount;
+        private final long directoryOffset;
+        private final long directorySize;
+        private final long preamble;
+
+        EndRecord(long entryCount, long directoryOffset, long directorySize, long preamble) {
+            this.entryCount = entryCount;
+            this.directoryOffset = directoryOffset;
+            this.directorySize = directorySize;
+            this.preamble = preamble;
+        }
+
+        long getDirectoryStart() {
+            return directoryOffset + preamble;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Inflates raw deflate data. Like the JDK zip implementation, a dummy byte is supplied once the data is exhausted,
+     * as the inflater may need it to detect the end of the stream.
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+
+        EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of deflated entry");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inf.end();
+            super.close();
+        }
+    }
+}
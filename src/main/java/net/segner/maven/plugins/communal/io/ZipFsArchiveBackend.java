@@ -0,0 +1,211 @@
+package net.segner.maven.plugins.communal.io;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@inheritDoc}
+ * <p>
+ * Archives are opened with the JDK zip filesystem provider, which keeps no global state. The provider writes changed
+ * entries to temporary files rather than keeping them in the heap. Nested archives are extracted to temporary files
+ * while open, and written back into their parent archive on {@link #sync()} if they were changed.
+ */
+@Slf4j
+public class ZipFsArchiveBackend implements ArchiveBackend {
+
+    private static final String TEMP_PREFIX = "skinnywar-";
+    private static final Map<String, ?> ZIPFS_ENV = Collections.singletonMap("useTempFile", Boolean.TRUE);
+
+    // in opening order, parents are always opened before their nested archives
+    private final Map<String, OpenArchive> openArchives = new LinkedHashMap<>();
+    private final List<TFile> topLevelArchives = new ArrayList<>();
+    private final BufferPool bufferPool;
+
+    public ZipFsArchiveBackend() {
+        this(BufferPool.DEFAULT);
+    }
+
+    /**
+     * @param bufferPool provides the temporary files of the extracted nested archives
+     */
+    public ZipFsArchiveBackend(@Nonnull BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    @Nonnull
+    @Override
+    public InputStream newInputStream(@Nonnull TFile file) throws IOException {
+        return Files.newInputStream(resolve(file));
+    }
+
+    @Override
+    public void rm(@Nonnull TFile file) throws IOException {
+        Path path = resolve(file);
+        if (Files.exists(path)) {
+            changed(file);
+            try (Stream<Path> tree = Files.walk(path)) {
+                for (Path child : tree.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(child);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void copy(@Nonnull TFile source, @Nonnull TFile destination) throws IOException {
+        Path sourcePath = resolve(source);
+        Path destinationPath = resolve(destination);
+        changed(destination);
+        try (Stream<Path> tree = Files.walk(sourcePath)) {
+            for (Path child : tree.collect(Collectors.toList())) {
+                Path target = destinationPath;
+                for (Path name : sourcePath.relativize(child)) {
+                    target = target.resolve(name.toString());
+                }
+                if (Files.isDirectory(child)) {
+                    Files.createDirectories(target);
+                } else {
+                    if (target.getParent() != null) {
+                        Files.createDirectories(target.getParent());
+                    }
+                    Files.copy(child, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(@Nonnull TFile file, @Nonnull byte[] contents) throws IOException {
+        Path path = resolve(file);
+        changed(file);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, contents);
+    }
+
+    /**
+     * Closes every open archive, nested archives first, writing nested archives back into their parents
+     */
+    @Override
+    public synchronized void sync() throws IOException {
+        List<OpenArchive> archives = new ArrayList<>(openArchives.values());
+        openArchives.clear();
+        for (int i = archives.size() - 1; i >= 0; i--) {
+            archives.get(i).close();
+        }
+
+        // TrueVFS may still hold the previous state of these archives
+        for (TFile archive : topLevelArchives) {
+            TVFS.umount(archive);
+        }
+        topLevelArchives.clear();
+    }
+
+    /**
+     * Marks the archives enclosing the file as changed, nested archives that are only read are not written back
+     */
+    private synchronized void changed(@Nonnull TFile file) {
+        for (TFile archive = file.getEnclArchive(); archive != null; archive = archive.getEnclArchive()) {
+            OpenArchive open = openArchives.get(archive.getPath());
+            if (open != null) {
+                open.changed = true;
+            }
+        }
+    }
+
+    /**
+     * @return path of the file within the filesystem of its innermost enclosing archive
+     */
+    @Nonnull
+    private Path resolve(@Nonnull TFile file) throws IOException {
+        TFile archive = file.getEnclArchive();
+        if (archive == null) {
+            return Paths.get(file.getPath());
+        }
+        // an exploded module keeps the name of its archive
+        Path path = resolve(archive);
+        if (!Files.isDirectory(path)) {
+            path = open(archive).fileSystem.getPath("/");
+        }
+        for (String name : file.getEnclEntryName().split("/")) {
+            path = path.resolve(name);
+        }
+        return path;
+    }
+
+    @Nonnull
+    private synchronized OpenArchive open(@Nonnull TFile archive) throws IOException {
+        OpenArchive open = openArchives.get(archive.getPath());
+        if (open == null) {
+            Path archivePath = resolve(archive);
+            if (archivePath.getFileSystem() == FileSystems.getDefault()) {
+                // flush and release any TrueVFS state before the archive is changed by other means
+                TVFS.umount(archive);
+                topLevelArchives.add(archive);
+                open = new OpenArchive(newFileSystem(archivePath), archivePath, null);
+            } else {
+                Path extracted = bufferPool.createTempFile(TEMP_PREFIX, "-" + archive.getName());
+                Files.copy(archivePath, extracted, StandardCopyOption.REPLACE_EXISTING);
+                open = new OpenArchive(newFileSystem(extracted), archivePath, extracted);
+            }
+            log.debug("zipfs opened: {}", archive.getPath());
+            openArchives.put(archive.getPath(), open);
+        }
+        return open;
+    }
+
+    @Nonnull
+    private static FileSystem newFileSystem(@Nonnull Path archive) throws IOException {
+        for (FileSystemProvider provider : FileSystemProvider.installedProviders()) {
+            if ("jar".equalsIgnoreCase(provider.getScheme())) {
+                return provider.newFileSystem(archive, ZIPFS_ENV);
+            }
+        }
+        throw new ProviderNotFoundException("No zip filesystem provider installed");
+    }
+
+    private static class OpenArchive {
+        private final FileSystem fileSystem;
+        private final Path location;
+        private final Path extracted;
+        private boolean changed;
+
+        OpenArchive(FileSystem fileSystem, Path location, Path extracted) {
+            this.fileSystem = fileSystem;
+            this.location = location;
+            this.extracted = extracted;
+        }
+
+        void close() throws IOException {
+            fileSystem.close();
+            if (extracted != null) {
+                if (changed) {
+                    Files.copy(extracted, location, StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.delete(extracted);
+            }
+        }
+    }
+}
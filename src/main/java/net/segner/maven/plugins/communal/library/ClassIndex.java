@@ -0,0 +1,161 @@
+package net.segner.maven.plugins.communal.library;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the classes contained in a set of libraries, mapping each class to the libraries containing it.
+ * <p>
+ * Classes of multi-release jars found below {@code META-INF/versions/<release>/} are indexed separately per release,
+ * only copies for the same release are considered duplicates.
+ */
+public class ClassIndex {
+
+    private final Map<String, List<ClassEntry>> classes = new TreeMap<>();
+    private final Set<String> libraries = new TreeSet<>();
+
+    public void addLibrary(@Nonnull String library, @Nonnull Collection<ClassEntry> libraryClasses) {
+        libraries.add(library);
+        for (ClassEntry entry : libraryClasses) {
+            classes.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).add(entry);
+        }
+    }
+
+    /**
+     * @return number of indexed libraries
+     */
+    public int getLibraryCount() {
+        return libraries.size();
+    }
+
+    /**
+     * @return number of distinct classes, counting every release of a multi-release class
+     */
+    public int getClassCount() {
+        return classes.size();
+    }
+
+    /**
+     * @return classes found in more than one library, sorted by class name, with every copy of the class
+     */
+    @Nonnull
+    public Map<String, List<ClassEntry>> getDuplicateClasses() {
+        Map<String, List<ClassEntry>> duplicates = new LinkedHashMap<>();
+        classes.forEach((key, entries) -> {
+            if (entries.stream().map(ClassEntry::getLibrary).distinct().count() > 1) {
+                duplicates.put(key, Collections.unmodifiableList(entries));
+            }
+        });
+        return duplicates;
+    }
+
+    /**
+     * A package is split when its classes are spread over several libraries, such that no single library holds all of
+     * them. Packages merely duplicated in full are reported as duplicate classes instead.
+     *
+     * @return split packages, sorted by name, mapped to each library and the number of the package's classes it holds
+     */
+    @Nonnull
+    public Map<String, Map<String, Integer>> getSplitPackages() {
+        Map<String, Map<String, Set<String>>> packageToLibraryClasses = new TreeMap<>();
+        classes.forEach((key, entries) -> entries.stream()
+                .filter(entry -> entry.getRelease() == 0)
+                .forEach(entry -> packageToLibraryClasses
+                        .computeIfAbsent(entry.getPackageName(), packageName -> new TreeMap<>())
+                        .computeIfAbsent(entry.getLibrary(), library -> new HashSet<>())
+                        .add(entry.getClassName())));
+
+        Map<String, Map<String, Integer>> splitPackages = new LinkedHashMap<>();
+        packageToLibraryClasses.forEach((packageName, libraryClasses) -> {
+            if (libraryClasses.size() < 2) {
+                return;
+            }
+            Set<String> packageClasses = libraryClasses.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+            boolean complete = libraryClasses.values().stream().anyMatch(libraryClassSet -> libraryClassSet.size() == packageClasses.size());
+            if (!complete) {
+                Map<String, Integer> classCounts = new LinkedHashMap<>();
+                libraryClasses.forEach((library, libraryClassSet) -> classCounts.put(library, libraryClassSet.size()));
+                splitPackages.put(packageName, classCounts);
+            }
+        });
+        return splitPackages;
+    }
+
+    /**
+     * A class within a library, identified by the CRC-32 and size of its bytes as recorded in the library's central
+     * directory
+     */
+    public static final class ClassEntry {
+        private final String className;
+        private final int release;
+        private final String library;
+        private final long crc;
+        private final long size;
+
+        public ClassEntry(@Nonnull String className, int release, @Nonnull String library, long crc, long size) {
+            this.className = className;
+            this.release = release;
+            this.library = library;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        @Nonnull
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return java release of a multi-release class, 0 for the base version
+         */
+        public int getRelease() {
+            return release;
+        }
+
+        @Nonnull
+        public String getLibrary() {
+            return library;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Nonnull
+        public String getPackageName() {
+            int separator = className.lastIndexOf('.');
+            return separator < 0 ? StringUtils.EMPTY : className.substring(0, separator);
+        }
+
+        /**
+         * @return the class name, followed by the release for a multi-release class
+         */
+        @Nonnull
+        public String getKey() {
+            return release == 0 ? className : className + " [release " + release + "]";
+        }
+
+        /**
+         * @return true if both classes have the same bytes
+         */
+        public boolean isSameContent(@Nonnull ClassEntry other) {
+            return crc == other.crc && size == other.size;
+        }
+    }
+}
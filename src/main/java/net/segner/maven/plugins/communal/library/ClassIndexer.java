@@ -0,0 +1,164 @@
+package net.segner.maven.plugins.communal.library;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truecommons.io.ByteBufferChannel;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.java.truevfs.comp.zip.ZipFile;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.io.BufferPool;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds a {@link ClassIndex} of library archives, or the package index of their libraries.
+ * <p>
+ * Only the central directory of each library is read, classes are told apart by the CRC-32 and size recorded there
+ * rather than by inflating them. Libraries residing directly on disk are opened as zip files, libraries nested inside
+ * another archive are read into memory first, or into a temporary file of the {@link BufferPool} if they are larger
+ * than its memory threshold. Libraries are indexed in parallel on the layout worker pool.
+ */
+@Named
+@Singleton
+@Slf4j
+public class ClassIndexer {
+
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String TEMP_PREFIX = "skinnywar-";
+    private static final Pattern VERSIONED_ENTRY = Pattern.compile("META-INF/versions/(\\d+)/(.+)");
+    private static final List<String> IGNORED_CLASSES = Arrays.asList("module-info", "package-info");
+
+    @Inject
+    private LayoutWorkerPool workerPool;
+    @Inject
+    private BufferPool bufferPool;
+
+    /**
+     * @param libraries library archives, mapped to the name they are reported by
+     */
+    @Nonnull
+    public ClassIndex index(@Nonnull Map<TFile, String> libraries) throws IOException {
+        List<TFile> libraryFiles = new ArrayList<>(libraries.keySet());
+        List<List<ClassIndex.ClassEntry>> libraryClasses = workerPool.map(libraryFiles, library -> readClasses(library, libraries.get(library)));
+
+        // added in library order, so the index does not depend on the number of threads
+        ClassIndex classIndex = new ClassIndex();
+        for (int i = 0; i < libraryFiles.size(); i++) {
+            classIndex.addLibrary(libraries.get(libraryFiles.get(i)), libraryClasses.get(i));
+        }
+        log.debug("Indexed {} classes in {} libraries", classIndex.getClassCount(), classIndex.getLibraryCount());
+        return classIndex;
+    }
+
+    /**
+     * Lists the packages of each library: every folder holding an entry outside of {@code META-INF}, with {@code /}
+     * separators, and the names of the entries at the root of the library.
+     *
+     * @param libraries library archives, mapped to the name they are reported by
+     * @return library names, in the given order, mapped to their sorted packages
+     */
+    @Nonnull
+    public Map<String, Set<String>> indexPackages(@Nonnull Map<TFile, String> libraries) throws IOException {
+        List<TFile> libraryFiles = new ArrayList<>(libraries.keySet());
+        List<Set<String>> libraryPackages = workerPool.map(libraryFiles, library -> read(library, ClassIndexer::readPackages));
+        Map<String, Set<String>> packages = new LinkedHashMap<>();
+        for (int i = 0; i < libraryFiles.size(); i++) {
+            packages.put(libraries.get(libraryFiles.get(i)), libraryPackages.get(i));
+        }
+        return packages;
+    }
+
+    private List<ClassIndex.ClassEntry> readClasses(TFile library, String libraryName) throws IOException {
+        return read(library, zip -> readClasses(zip, libraryName));
+    }
+
+    private <T> T read(TFile library, Function<ZipFile, T> reader) throws IOException {
+        if (library.getEnclArchive() == null && new File(library.getPath()).isFile()) {
+            try (ZipFile zip = new ZipFile(Paths.get(library.getPath()))) {
+                return reader.apply(zip);
+            }
+        }
+        TFile source = library.toNonArchiveFile();
+        if (source.length() <= bufferPool.getMemoryThreshold()) {
+            byte[] bytes;
+            try (InputStream in = new TFileInputStream(source)) {
+                bytes = IOUtils.toByteArray(in);
+            }
+            try (ZipFile zip = new ZipFile(new ByteBufferChannel(ByteBuffer.wrap(bytes).asReadOnlyBuffer()))) {
+                return reader.apply(zip);
+            }
+        }
+
+        Path tempFile = bufferPool.createTempFile(TEMP_PREFIX, "-" + library.getName());
+        try {
+            try (InputStream in = new TFileInputStream(source); OutputStream out = Files.newOutputStream(tempFile)) {
+                bufferPool.copy(in, out);
+            }
+            try (ZipFile zip = new ZipFile(tempFile)) {
+                return reader.apply(zip);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static Set<String> readPackages(ZipFile zip) {
+        Set<String> packages = new TreeSet<>();
+        for (ZipEntry entry : zip) {
+            String name = entry.getName();
+            if (entry.isDirectory() || name.startsWith("META-INF/")) {
+                continue;
+            }
+            packages.add(name.contains("/") ? StringUtils.substringBeforeLast(name, "/") : name);
+        }
+        return packages;
+    }
+
+    private static List<ClassIndex.ClassEntry> readClasses(ZipFile zip, String libraryName) {
+        List<ClassIndex.ClassEntry> classes = new ArrayList<>();
+        for (ZipEntry entry : zip) {
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.endsWith(CLASS_EXTENSION)) {
+                continue;
+            }
+            int release = 0;
+            Matcher versioned = VERSIONED_ENTRY.matcher(name);
+            if (versioned.matches()) {
+                release = Integer.parseInt(versioned.group(1));
+                name = versioned.group(2);
+            } else if (name.startsWith("META-INF/")) {
+                continue;
+            }
+            String className = StringUtils.removeEnd(name, CLASS_EXTENSION);
+            if (IGNORED_CLASSES.contains(StringUtils.substringAfterLast("/" + className, "/"))) {
+                continue;
+            }
+            classes.add(new ClassIndex.ClassEntry(className.replace('/', '.'), release, libraryName, entry.getCrc(), entry.getSize()));
+        }
+        return classes;
+    }
+}
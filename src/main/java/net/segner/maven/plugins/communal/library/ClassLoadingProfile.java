@@ -0,0 +1,102 @@
+package net.segner.maven.plugins.communal.library;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Libraries used by an earlier run of the application, read from its class-loading log as written by
+ * {@code -verbose:class} (java 8) or {@code -Xlog:class+load} (java 9 and later).
+ * <p>
+ * Libraries are recognized by file name, wherever they were loaded from. A library is hotter than another when more
+ * of its classes were loaded, or as many but earlier.
+ */
+public class ClassLoadingProfile {
+
+    private static final Pattern LOADED_CLASS = Pattern.compile("\\[Loaded \\S+ from (.+)]|\\bsource: (.+)");
+    private static final Pattern LIBRARY_NAME = Pattern.compile("([^/\\\\!:\\s]+\\.jar)");
+
+    private final Map<String, Integer> loadedClasses = new HashMap<>();
+    private final Map<String, Integer> firstLoaded = new HashMap<>();
+
+    /**
+     * @return a profile without any loaded library, ordering libraries as given
+     */
+    @Nonnull
+    public static ClassLoadingProfile empty() {
+        return new ClassLoadingProfile();
+    }
+
+    @Nonnull
+    public static ClassLoadingProfile read(@Nonnull Path classLoadingLog) throws IOException {
+        ClassLoadingProfile profile = new ClassLoadingProfile();
+        try (BufferedReader in = Files.newBufferedReader(classLoadingLog, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                profile.addLine(line);
+            }
+        }
+        return profile;
+    }
+
+    void addLine(@Nonnull String line) {
+        Matcher loadedClass = LOADED_CLASS.matcher(line);
+        if (!loadedClass.find()) {
+            return;
+        }
+        String source = loadedClass.group(1) != null ? loadedClass.group(1) : loadedClass.group(2);
+        String libraryName = null;
+        Matcher library = LIBRARY_NAME.matcher(source);
+        while (library.find()) {
+            // the innermost library of a nested source, such as app.ear!/lib/x.jar
+            libraryName = library.group(1);
+        }
+        if (libraryName != null) {
+            loadedClasses.merge(libraryName, 1, Integer::sum);
+            firstLoaded.putIfAbsent(libraryName, firstLoaded.size());
+        }
+    }
+
+    /**
+     * @return true if no library was found in the log
+     */
+    public boolean isEmpty() {
+        return loadedClasses.isEmpty();
+    }
+
+    public boolean isLoaded(@Nonnull String libraryName) {
+        return loadedClasses.containsKey(libraryName);
+    }
+
+    /**
+     * @return number of classes loaded from the library
+     */
+    public int getLoadedClasses(@Nonnull String libraryName) {
+        return loadedClasses.getOrDefault(libraryName, 0);
+    }
+
+    /**
+     * @return the items ordered hottest library first, items of libraries that were never loaded keep their order
+     * after the others
+     */
+    @Nonnull
+    public <T> List<T> sortHottestFirst(@Nonnull Collection<T> items, @Nonnull Function<T, String> libraryName) {
+        List<T> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparing(libraryName, Comparator
+                .comparing((String name) -> -getLoadedClasses(name))
+                .thenComparing(name -> firstLoaded.getOrDefault(name, Integer.MAX_VALUE))));
+        return sorted;
+    }
+}
@@ -0,0 +1,169 @@
+package net.segner.maven.plugins.communal.library;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.comp.zip.ZipEntry;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+import net.segner.maven.plugins.communal.io.RawZipFile;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the maven coordinates of library archives from their embedded {@code META-INF/maven/<groupId>/<artifactId>/pom.properties}.
+ * <p>
+ * Only the central directory of a library is read to find the descriptor, and only the descriptor itself is inflated.
+ * Libraries residing directly on disk are opened as zip files, libraries nested inside another archive are read through
+ * the {@link ArchiveInspector} or else browsed through TrueVFS.
+ */
+@Named
+@Singleton
+@Slf4j
+public class LibraryCoordinateReader {
+
+    private static final String MAVEN_DESCRIPTOR_FOLDER = "META-INF/maven";
+    private static final String POM_PROPERTIES = "pom.properties";
+    private static final Pattern POM_PROPERTIES_ENTRY = Pattern.compile("META-INF/maven/[^/]+/[^/]+/pom\\.properties");
+
+    @Inject
+    private LayoutWorkerPool workerPool;
+    @Inject
+    private ArchiveInspector archiveInspector;
+    @Inject
+    private LibraryScanCache scanCache;
+
+    /**
+     * Reads the coordinates of every library in parallel on the layout worker pool, reusing the coordinates of unchanged
+     * libraries from earlier executions
+     *
+     * @return map of library to its coordinates, libraries without (unambiguous) coordinates are left out
+     */
+    @Nonnull
+    public Map<TFile, LibraryCoordinates> readAll(@Nonnull Collection<TFile> libraries) throws IOException {
+        List<TFile> distinctLibraries = new ArrayList<>(new LinkedHashSet<>(libraries));
+        List<LibraryCoordinates> coordinates = workerPool.map(distinctLibraries, library -> scanCache != null ?
+                scanCache.coordinates(library, this::read) :
+                read(library));
+        Map<TFile, LibraryCoordinates> libraryCoordinates = new HashMap<>();
+        for (int i = 0; i < distinctLibraries.size(); i++) {
+            if (coordinates.get(i) != null) {
+                libraryCoordinates.put(distinctLibraries.get(i), coordinates.get(i));
+            }
+        }
+        return libraryCoordinates;
+    }
+
+    /**
+     * @return coordinates of the library, null if it has no maven descriptor or several that cannot be told apart
+     */
+    @Nullable
+    public LibraryCoordinates read(@Nonnull TFile library) throws IOException {
+        List<LibraryCoordinates> candidates = library.getEnclArchive() == null && new File(library.getPath()).isFile() ?
+                readFromDisk(library) :
+                readFromArchive(library);
+        LibraryCoordinates coordinates = choose(library.getName(), candidates);
+        log.debug("coordinates: {} {}", coordinates, library.getName());
+        return coordinates;
+    }
+
+    private List<LibraryCoordinates> readFromDisk(TFile library) throws IOException {
+        List<LibraryCoordinates> candidates = new ArrayList<>();
+        try (RawZipFile zip = new RawZipFile(Paths.get(library.getPath()))) {
+            for (ZipEntry entry : zip) {
+                if (POM_PROPERTIES_ENTRY.matcher(entry.getName()).matches()) {
+                    try (InputStream in = zip.getInputStream(entry.getName())) {
+                        addCandidate(candidates, in);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private List<LibraryCoordinates> readFromArchive(TFile library) throws IOException {
+        List<LibraryCoordinates> candidates = new ArrayList<>();
+        Map<String, byte[]> descriptors = archiveInspector != null ? archiveInspector.readEntries(library, POM_PROPERTIES_ENTRY) : null;
+        if (descriptors != null) {
+            for (byte[] descriptor : descriptors.values()) {
+                addCandidate(candidates, new ByteArrayInputStream(descriptor));
+            }
+            return candidates;
+        }
+        TFile[] groups = new TFile(library, MAVEN_DESCRIPTOR_FOLDER).listFiles();
+        if (groups == null) {
+            return candidates;
+        }
+        for (TFile group : groups) {
+            TFile[] artifacts = group.listFiles();
+            if (artifacts == null) {
+                continue;
+            }
+            for (TFile artifact : artifacts) {
+                TFile pomProperties = new TFile(artifact, POM_PROPERTIES);
+                if (pomProperties.isFile()) {
+                    try (InputStream in = new TFileInputStream(pomProperties)) {
+                        addCandidate(candidates, in);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static void addCandidate(List<LibraryCoordinates> candidates, InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        String groupId = StringUtils.trimToNull(properties.getProperty("groupId"));
+        String artifactId = StringUtils.trimToNull(properties.getProperty("artifactId"));
+        String version = StringUtils.trimToNull(properties.getProperty("version"));
+        if (groupId != null && artifactId != null && version != null) {
+            candidates.add(new LibraryCoordinates(groupId, artifactId, version));
+        }
+    }
+
+    /**
+     * Archives that bundle other artifacts (shaded or uber jars) carry several descriptors. The descriptor whose
+     * artifactId begins the file name is taken to be the archive's own; without such a hint the archive is ambiguous.
+     */
+    @Nullable
+    static LibraryCoordinates choose(@Nonnull String libraryName, @Nonnull List<LibraryCoordinates> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        String baseName = FilenameUtils.getBaseName(libraryName);
+        LibraryCoordinates chosen = null;
+        boolean ambiguous = false;
+        for (LibraryCoordinates candidate : candidates) {
+            if (!baseName.startsWith(candidate.getArtifactId())) {
+                continue;
+            }
+            if (chosen == null || candidate.getArtifactId().length() > chosen.getArtifactId().length()) {
+                chosen = candidate;
+                ambiguous = false;
+            } else if (candidate.getArtifactId().length() == chosen.getArtifactId().length() && !candidate.equals(chosen)) {
+                ambiguous = true;
+            }
+        }
+        return ambiguous ? null : chosen;
+    }
+}
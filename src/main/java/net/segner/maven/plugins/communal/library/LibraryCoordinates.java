@@ -0,0 +1,113 @@
+package net.segner.maven.plugins.communal.library;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maven coordinates of a library, as recorded in the {@code pom.properties} that maven embeds in the archives it builds
+ */
+public final class LibraryCoordinates {
+    private static final Pattern VERSIONED_FILE_NAME = Pattern.compile("(.+?)-(\\d.*)");
+
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+
+    public LibraryCoordinates(@Nonnull String groupId, @Nonnull String artifactId, @Nonnull String version) {
+        Validate.notBlank(groupId);
+        Validate.notBlank(artifactId);
+        Validate.notBlank(version);
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+    }
+
+    @Nonnull
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @Nonnull
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    @Nonnull
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return groupId:artifactId, identifying the library regardless of its version
+     */
+    @Nonnull
+    public String getVersionlessKey() {
+        return groupId + ':' + artifactId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        LibraryCoordinates that = (LibraryCoordinates) o;
+        return groupId.equals(that.groupId) && artifactId.equals(that.artifactId) && version.equals(that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(groupId, artifactId, version);
+    }
+
+    /**
+     * @return groupId:artifactId:version
+     */
+    @Override
+    public String toString() {
+        return StringUtils.join(new String[]{groupId, artifactId, version}, ':');
+    }
+
+    /**
+     * @return the file name without extension and version, assuming the name maven gives to libraries
+     * ({@code artifactId-version.jar})
+     */
+    @Nonnull
+    public static String artifactIdOf(@Nonnull String jarName) {
+        String baseName = FilenameUtils.getBaseName(jarName);
+        Matcher matcher = VERSIONED_FILE_NAME.matcher(baseName);
+        return matcher.matches() ? matcher.group(1) : baseName;
+    }
+
+    /**
+     * @return the version part of a maven library file name ({@code artifactId-version.jar}), null if there is none
+     */
+    @Nullable
+    public static String versionOf(@Nonnull String jarName) {
+        Matcher matcher = VERSIONED_FILE_NAME.matcher(FilenameUtils.getBaseName(jarName));
+        return matcher.matches() ? matcher.group(2) : null;
+    }
+
+    /**
+     * @return the classifier of a maven library file name ({@code artifactId-version-classifier.jar}), null if the file
+     * name has none or does not carry the version
+     */
+    @Nullable
+    public static String classifierOf(@Nonnull String jarName, @Nonnull String version) {
+        String baseName = FilenameUtils.getBaseName(jarName);
+        int versionEnd = baseName.lastIndexOf("-" + version + "-");
+        if (versionEnd < 0) {
+            return null;
+        }
+        return StringUtils.trimToNull(baseName.substring(versionEnd + version.length() + 2));
+    }
+}
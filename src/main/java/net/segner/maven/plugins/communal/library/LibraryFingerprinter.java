@@ -0,0 +1,140 @@
+package net.segner.maven.plugins.communal.library;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes content fingerprints (SHA-256) of library archives.
+ * <p>
+ * Libraries residing directly on disk are memory mapped, libraries nested inside another archive are read through the
+ * {@link ArchiveInspector} or else streamed.
+ */
+@Named
+@Singleton
+@Slf4j
+public class LibraryFingerprinter {
+
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @Inject
+    private LayoutWorkerPool workerPool;
+    @Inject
+    private ArchiveInspector archiveInspector;
+    @Inject
+    private LibraryScanCache scanCache;
+
+    /**
+     * Fingerprints every library in parallel on the layout worker pool, reusing the fingerprints of unchanged libraries
+     * from earlier executions
+     *
+     * @return map of library to its hex encoded content digest
+     */
+    @Nonnull
+    public Map<TFile, String> fingerprintAll(@Nonnull Collection<TFile> libraries) throws IOException {
+        List<TFile> distinctLibraries = new ArrayList<>(new LinkedHashSet<>(libraries));
+        List<String> digests = workerPool.map(distinctLibraries, library -> scanCache != null ?
+                scanCache.fingerprint(library, this::fingerprint) :
+                fingerprint(library));
+        Map<TFile, String> fingerprints = new HashMap<>();
+        for (int i = 0; i < distinctLibraries.size(); i++) {
+            fingerprints.put(distinctLibraries.get(i), digests.get(i));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @return hex encoded content digest of the library
+     */
+    @Nonnull
+    public String fingerprint(@Nonnull TFile library) throws IOException {
+        MessageDigest digest = newDigest();
+        if (library.getEnclArchive() == null) {
+            digestMapped(library, digest);
+        } else {
+            digestStreamed(library, digest);
+        }
+        String fingerprint = toHex(digest.digest());
+        log.debug("fingerprint: {} {}", fingerprint, library.getName());
+        return fingerprint;
+    }
+
+    private void digestMapped(TFile library, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(library.getPath()), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW_SIZE) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, size - position));
+                digest.update(window);
+            }
+        }
+    }
+
+    private void digestStreamed(TFile library, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Long digested = archiveInspector != null ? archiveInspector.read(library, in -> digest(in, digest, buffer)) : null;
+        if (digested != null) {
+            return;
+        }
+        // the inspector may have failed half way
+        digest.reset();
+        try (InputStream in = new TFileInputStream(library.toNonArchiveFile())) {
+            digest(in, digest, buffer);
+        }
+    }
+
+    /**
+     * @return number of bytes digested
+     */
+    private static long digest(InputStream in, MessageDigest digest, byte[] buffer) throws IOException {
+        long digested = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            digested += read;
+        }
+        return digested;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+
+    @Nonnull
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,217 @@
+package net.segner.maven.plugins.communal.library;
+
+import lombok.extern.slf4j.Slf4j;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.LibraryIdentity;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+import net.segner.maven.plugins.communal.io.ZipDirectory;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Library listings of modules, and fingerprints and coordinates of libraries, shared by every EAR laid out in this JVM,
+ * so a reactor packaging the same WARs and libraries into several EARs scans them once.
+ * <p>
+ * Archives are keyed by their contents rather than by their location: a nested archive by its name, sizes, modification
+ * time and the CRC-32 recorded in the central directory of its parent, an archive on disk by its path, size and
+ * modification time. Archives that cannot be keyed without TrueVFS are not cached.
+ * <p>
+ * Keys are read from the central directory so that an unchanged library is recognized without being read, at the price
+ * of the strength of a digest: a CRC-32 tells accidental changes apart, not changes crafted to collide. A library
+ * matching another on every field of its key shares its fingerprint, also under {@link LibraryIdentity#CONTENT}, whose
+ * SHA-256 then stands for the first of the two.
+ * Executions running concurrently wait for a value another execution is computing rather than computing it again.
+ */
+@Named
+@Singleton
+@Slf4j
+public class LibraryScanCache {
+
+    /**
+     * The cache is dropped once it grows past this size, so a long-lived JVM such as a build daemon does not keep every
+     * library it has ever seen
+     */
+    private static final int MAX_ENTRIES = 100_000;
+    private static final ConcurrentMap<String, FutureTask<Object>> VALUES = new ConcurrentHashMap<>();
+
+    private final ArchiveInspector archiveInspector;
+
+    // keys of the libraries listed by this execution, known without reading their module again
+    private final Map<TFile, String> libraryKeys = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @Inject
+    public LibraryScanCache(@Nonnull ArchiveInspector archiveInspector) {
+        this.archiveInspector = archiveInspector;
+    }
+
+    /**
+     * Drops every cached value
+     */
+    public static void clear() {
+        VALUES.clear();
+    }
+
+    /**
+     * @return number of values this execution found in the cache
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the libraries of the module, listed by an earlier execution if the module is unchanged
+     */
+    @Nonnull
+    public List<TFile> getLibraryFiles(@Nonnull ApplicationModule module) throws IOException {
+        String moduleKey = keyOf(module.getModuleRoot());
+        if (moduleKey == null) {
+            return module.getLibraryFiles();
+        }
+        Map<String, String> libraries = get("libraries:" + moduleKey + "!/" + module.getLibraryPath(),
+                () -> listLibraries(module),
+                listed -> !listed.containsValue(null));
+
+        List<TFile> libraryFiles = new ArrayList<>(libraries.size());
+        libraries.forEach((name, key) -> {
+            TFile library = new TFile(module.getLibrary(), name);
+            if (key != null) {
+                libraryKeys.put(library, key);
+            }
+            libraryFiles.add(library);
+        });
+        return libraryFiles;
+    }
+
+    /**
+     * @return fingerprint of the library, computed by an earlier execution if the library is unchanged
+     */
+    @Nonnull
+    public String fingerprint(@Nonnull TFile library, @Nonnull LayoutWorkerPool.Task<TFile, String> fingerprinter) throws IOException {
+        String key = getLibraryKey(library);
+        if (key == null) {
+            return fingerprinter.apply(library);
+        }
+        return get("fingerprint:" + key, () -> fingerprinter.apply(library), fingerprint -> true);
+    }
+
+    /**
+     * @return coordinates of the library, read by an earlier execution if the library is unchanged
+     */
+    @Nullable
+    public LibraryCoordinates coordinates(@Nonnull TFile library, @Nonnull LayoutWorkerPool.Task<TFile, LibraryCoordinates> reader) throws IOException {
+        String key = getLibraryKey(library);
+        if (key == null) {
+            return reader.apply(library);
+        }
+        return get("coordinates:" + key, () -> reader.apply(library), coordinates -> true);
+    }
+
+    private Map<String, String> listLibraries(ApplicationModule module) throws IOException {
+        Map<String, String> libraries = new LinkedHashMap<>();
+        for (TFile library : module.getLibraryFiles()) {
+            libraries.put(library.getName(), keyOf(library));
+        }
+        return libraries;
+    }
+
+    @Nullable
+    private String getLibraryKey(TFile library) throws IOException {
+        String key = libraryKeys.get(library);
+        return key != null ? key : keyOf(library);
+    }
+
+    /**
+     * @return key of the archive contents, null if the archive cannot be keyed without TrueVFS
+     */
+    @Nullable
+    private String keyOf(TFile archive) throws IOException {
+        if (archive.getEnclArchive() == null) {
+            File file = new File(archive.getPath());
+            if (!file.isFile()) {
+                return null;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return "file:" + file.getAbsolutePath() + ":" + attributes.size() + ":" + attributes.lastModifiedTime();
+        }
+        ZipDirectory.Entry entry = archiveInspector.entry(archive);
+        if (entry == null) {
+            return null;
+        }
+        return "entry:" + archive.getName() + ":" + entry.getSize() + ":" + entry.getCompressedSize() + ":"
+                + Integer.toHexString(entry.getDosTime()) + ":" + Long.toHexString(entry.getCrc());
+    }
+
+    private interface Computation<T> {
+        T compute() throws IOException;
+    }
+
+    /**
+     * Returns the cached value, or computes it on the calling thread while other callers of the same key wait for it.
+     * Failed computations and values that are not cacheable are dropped again, a computation that failed in another
+     * execution is retried.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T get(String key, Computation<T> computation, Predicate<T> cacheable) throws IOException {
+        FutureTask<Object> task = new FutureTask<>(computation::compute);
+        FutureTask<Object> cached = VALUES.putIfAbsent(key, task);
+        if (cached == null) {
+            if (VALUES.size() > MAX_ENTRIES) {
+                log.debug("Library scan cache exceeds {} entries, dropping it", MAX_ENTRIES);
+                VALUES.clear();
+            }
+            cached = task;
+            task.run();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        T value;
+        try {
+            value = (T) cached.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a library scan of another execution");
+        } catch (ExecutionException e) {
+            VALUES.remove(key, cached);
+            if (cached != task) {
+                // failed in another execution, possibly because that execution was cancelled
+                return get(key, computation, cacheable);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+        if (!cacheable.test(value)) {
+            VALUES.remove(key, cached);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,79 @@
+package net.segner.maven.plugins.communal.library;
+
+import net.segner.maven.plugins.communal.VersionConvergence;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.apache.maven.artifact.versioning.ComparableVersion;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the version an artifact converges on, following a {@link VersionConvergence} policy.
+ * <p>
+ * Artifacts are identified by {@code groupId:artifactId}, or by the artifactId alone when the groupId of a library is
+ * unknown. Pinned versions are given as {@code groupId:artifactId:version} or {@code artifactId:version}.
+ */
+public class LibraryVersionSelector {
+
+    private final VersionConvergence policy;
+    private final Map<String, String> pinnedVersions = new HashMap<>();
+
+    public LibraryVersionSelector(@Nonnull VersionConvergence policy, @Nullable List<String> pinnedVersionList) {
+        this.policy = policy;
+        if (pinnedVersionList != null) {
+            for (String pinnedVersion : pinnedVersionList) {
+                int separator = StringUtils.lastIndexOf(StringUtils.trim(pinnedVersion), ':');
+                Validate.isTrue(separator > 0, "Pinned versions must be given as groupId:artifactId:version: " + pinnedVersion);
+                String trimmed = pinnedVersion.trim();
+                pinnedVersions.put(trimmed.substring(0, separator), trimmed.substring(separator + 1));
+            }
+        }
+    }
+
+    /**
+     * @param artifactKey groupId:artifactId, or artifactId if the groupId is unknown
+     * @param versions    the different versions found of the artifact
+     * @return the version to converge on, null if the artifact is not to be converged
+     */
+    @Nullable
+    public String select(@Nonnull String artifactKey, @Nonnull Collection<String> versions) {
+        Comparator<String> byVersion = Comparator.comparing(ComparableVersion::new);
+        switch (policy) {
+            case HIGHEST:
+                return versions.stream().max(byVersion).orElse(null);
+            case LOWEST:
+                return versions.stream().min(byVersion).orElse(null);
+            case PINNED:
+                String pinnedVersion = getPinnedVersion(artifactKey);
+                return versions.contains(pinnedVersion) ? pinnedVersion : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the pinned version of the artifact, null if none is configured
+     */
+    @Nullable
+    public String getPinnedVersion(@Nonnull String artifactKey) {
+        if (pinnedVersions.containsKey(artifactKey)) {
+            return pinnedVersions.get(artifactKey);
+        }
+        // a groupId known on only one side cannot be compared, fall back to the artifactId
+        String artifactId = StringUtils.substringAfterLast(":" + artifactKey, ":");
+        for (Map.Entry<String, String> pinnedVersion : pinnedVersions.entrySet()) {
+            String key = pinnedVersion.getKey();
+            boolean eitherWithoutGroup = !key.contains(":") || !artifactKey.contains(":");
+            if (eitherWithoutGroup && artifactId.equals(StringUtils.substringAfterLast(":" + key, ":"))) {
+                return pinnedVersion.getValue();
+            }
+        }
+        return null;
+    }
+}
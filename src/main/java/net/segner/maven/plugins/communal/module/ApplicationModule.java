@@ -2,6 +2,7 @@ package net.segner.maven.plugins.communal.module;
 
 
 import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.io.MirroringFilesystem;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
@@ -9,7 +10,7 @@ import java.util.List;
 import java.util.jar.Manifest;
 
 
-public interface ApplicationModule {
+public interface ApplicationModule extends MirroringFilesystem {
 
     @Nonnull
     String getName();
@@ -26,6 +27,11 @@ public interface ApplicationModule {
 
     void setLibraryPath(String libLocation);
 
+    /**
+     * @return library location relative to the module root
+     */
+    String getLibraryPath();
+
     TFile getLibrary();
 
     void addLib(TFile library) throws IOException;
@@ -2,6 +2,9 @@ package net.segner.maven.plugins.communal.module;
 
 import lombok.extern.slf4j.Slf4j;
 import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import net.segner.maven.plugins.communal.io.ArchiveBackend;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -34,6 +37,12 @@ public class ApplicationModuleProvider {
     private Provider<RarModule> rarModuleProvider;
     @Inject
     private Provider<EjbModule> ejbModuleProvider;
+    @Inject
+    private ArchiveBackend archiveBackend;
+    @Inject
+    private LayoutWorkerPool workerPool;
+    @Inject
+    private ArchiveInspector archiveInspector;
     private Xpp3Dom earPluginConfig;
 
     @PostConstruct
@@ -54,7 +63,7 @@ public class ApplicationModuleProvider {
         // Basic sanity check
         Validate.notNull(path);
         String name = path.getName();
-        Validate.isTrue(path.exists(), "File path does not exist: " + name);
+        Validate.isTrue(exists(path), "File path does not exist: " + name);
 
         // determine module type
         GenericApplicationModule module = findByEarConfiguration(path);
@@ -112,7 +121,7 @@ public class ApplicationModuleProvider {
     private GenericApplicationModule findByDefaultPathInspection(@Nonnull TFile path) {
         // check if its a WAR by looking for WEB-INF
         TFile webmd = new TFile(path, WebModule.DEFAULT_WEBMODULE_METADATAPATH);
-        if (webmd.exists()) {
+        if (exists(webmd)) {
             WebModule wm = webModuleProvider.get();
             wm.init(path);
             log.debug("Web module detected: {}", path.getName());
@@ -121,10 +130,18 @@ public class ApplicationModuleProvider {
         return null;
     }
 
+    private boolean exists(@Nonnull TFile path) {
+        Boolean exists = archiveInspector.exists(path);
+        return exists != null ? exists : path.exists();
+    }
+
     public EarModule getEar() {
         String expectedEarPath = build.getDirectory() + File.separator + build.getFinalName() + MODULE_EXTENSION_EAR;
         log.debug("EAR file expected at: {}", expectedEarPath);
         EarModule module = new EarModule(this, expectedEarPath);
+        module.setArchiveBackend(archiveBackend);
+        module.setWorkerPool(workerPool);
+        module.setArchiveInspector(archiveInspector);
 
         // find shared library path, otherwise default is used
         Xpp3Dom child = earPluginConfig.getChild("defaultLibBundleDir");
@@ -2,6 +2,7 @@ package net.segner.maven.plugins.communal.module;
 
 import lombok.extern.slf4j.Slf4j;
 import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -9,12 +10,14 @@ import org.apache.commons.lang3.Validate;
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 @Slf4j
 public class EarModule extends GenericApplicationModule {
@@ -36,6 +39,11 @@ public class EarModule extends GenericApplicationModule {
     }
 
     protected ApplicationModuleProvider applicationModuleProvider;
+    protected LayoutWorkerPool workerPool;
+
+    public void setWorkerPool(LayoutWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
 
     @Override
     public String getDefaultLibraryPath() {
@@ -63,17 +71,30 @@ public class EarModule extends GenericApplicationModule {
     }
 
     private void createModuleMap() throws IOException {
-        moduleNameToModuleMap = new HashMap<>();
-
-        // build module list
-        List<TFile> earFiles = Arrays.asList(listFiles(file -> {
-            TFile tf = (TFile) file;
-            return !tf.toNonArchiveFile().isDirectory() && !isEarMetadata(tf);
-        }));
-        List<TFile> earFolders = Arrays.asList(listFiles(file -> {
-            TFile tf = (TFile) file;
-            return tf.toNonArchiveFile().isDirectory() && !isEarMetadata(tf);
-        }));
+        // modules are created concurrently, sorted by name so iteration does not depend on completion order
+        moduleNameToModuleMap = new ConcurrentSkipListMap<>();
+
+        // build module list, from the central directory of a packed ear if possible
+        List<TFile> earFiles = new ArrayList<>();
+        List<TFile> earFolders = new ArrayList<>();
+        Map<String, Boolean> children = archiveInspector != null ? archiveInspector.list(getModuleRoot()) : null;
+        if (children != null) {
+            children.forEach((name, folder) -> {
+                TFile tf = new TFile(getModuleRoot(), name);
+                if (!isEarMetadata(tf)) {
+                    (folder ? earFolders : earFiles).add(tf);
+                }
+            });
+        } else {
+            earFiles.addAll(Arrays.asList(listFiles(file -> {
+                TFile tf = (TFile) file;
+                return !tf.toNonArchiveFile().isDirectory() && !isEarMetadata(tf);
+            })));
+            earFolders.addAll(Arrays.asList(listFiles(file -> {
+                TFile tf = (TFile) file;
+                return tf.toNonArchiveFile().isDirectory() && !isEarMetadata(tf);
+            })));
+        }
         Validate.isTrue((earFiles.size() + earFolders.size()) > 0, "Ear module should contain at least one application module");
 
         // create modules referenced in list
@@ -84,19 +105,30 @@ public class EarModule extends GenericApplicationModule {
     }
 
     private void createModule(Collection<TFile> tfiles, boolean unpacked) throws IOException {
-        for (TFile moduleReference : tfiles) {
+        LayoutWorkerPool.Task<TFile, GenericApplicationModule> createTask = moduleReference -> {
             try {
                 // add ear module
                 GenericApplicationModule gam = applicationModuleProvider.get(moduleReference, this);
                 moduleNameToModuleMap.put(gam.getName(), gam);
-
-                if (log.isInfoEnabled()) {
-                    log.info(MSGINFO_FOUND_MODULE + gam.getName() + (unpacked ? MSGINFO_UNPACKED : StringUtils.EMPTY));
-                }
+                return gam;
             } catch (IllegalArgumentException | IllegalModuleException ex) {
                 log.warn(MSGINFO_SKIPPING_EAR_FOLDER_ENTRY + moduleReference.getName());
+                return null;
+            }
+        };
+        List<GenericApplicationModule> modules = new ArrayList<>();
+        if (workerPool != null) {
+            modules.addAll(workerPool.map(tfiles, createTask));
+        } else {
+            for (TFile moduleReference : tfiles) {
+                modules.add(createTask.apply(moduleReference));
             }
         }
+
+        if (log.isInfoEnabled()) {
+            modules.stream()
+                    .filter(Objects::nonNull)
+                    .forEach(gam -> log.info(MSGINFO_FOUND_MODULE + gam.getName() + (unpacked ? MSGINFO_UNPACKED : StringUtils.EMPTY)));
+        }
     }
 }
-
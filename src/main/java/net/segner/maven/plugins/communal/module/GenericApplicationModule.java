@@ -1,8 +1,9 @@
 package net.segner.maven.plugins.communal.module;
 
+import com.google.inject.Inject;
 import net.java.truevfs.access.TFile;
 import net.java.truevfs.access.TFileInputStream;
-import net.java.truevfs.access.TFileOutputStream;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
 import net.segner.maven.plugins.communal.io.GenericMirroringFilesystem;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
@@ -10,6 +11,8 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 
 import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
@@ -24,11 +27,13 @@ import java.util.jar.Manifest;
 public abstract class GenericApplicationModule extends GenericMirroringFilesystem implements ApplicationModule {
 
     private static final String LIBRARY_EXTENSION = "jar";
+    private static final String MANIFEST_PATH = "META-INF/MANIFEST.MF";
 
     private String moduleName;
     private String libLocation = getDefaultLibraryPath();
 
     protected Map<String, ApplicationModule> moduleNameToModuleMap;
+    protected ArchiveInspector archiveInspector;
 
     GenericApplicationModule() {
     }
@@ -54,6 +59,14 @@ public abstract class GenericApplicationModule extends GenericMirroringFilesyste
         init(archive);
     }
 
+    /**
+     * Inspector used to read packed modules without mounting them, as long as they are unchanged
+     */
+    @Inject(optional = true)
+    public void setArchiveInspector(ArchiveInspector archiveInspector) {
+        this.archiveInspector = archiveInspector;
+    }
+
     protected String stripExtensionFromName(String name) {
         return FilenameUtils.getFullPath(name) + FilenameUtils.getBaseName(name);
     }
@@ -90,8 +103,43 @@ public abstract class GenericApplicationModule extends GenericMirroringFilesyste
         libLocation = relativeLibLocation;
     }
 
+    @Override
+    public String getLibraryPath() {
+        return libLocation;
+    }
+
+    @Override
+    public boolean canRead() {
+        Boolean exists = archiveInspector != null ? archiveInspector.exists(getModuleRoot()) : null;
+        if (exists == null) {
+            return super.canRead();
+        }
+        TFile unpackFolder = getUnpackFolder();
+        return exists && (unpackFolder == null || !unpackFolder.exists() || unpackFolder.canRead());
+    }
+
+    @Override
+    public boolean canWrite() {
+        Boolean writable = archiveInspector != null ? archiveInspector.canWrite(getModuleRoot()) : null;
+        if (writable == null) {
+            return super.canWrite();
+        }
+        TFile unpackFolder = getUnpackFolder();
+        return writable && (unpackFolder == null || !unpackFolder.exists() || unpackFolder.canWrite());
+    }
+
     @Override
     public List<TFile> getLibraryFiles() {
+        Map<String, Boolean> children = archiveInspector != null ? archiveInspector.list(getLibrary()) : null;
+        if (children != null) {
+            List<TFile> libraries = new ArrayList<>();
+            children.forEach((name, folder) -> {
+                if (!folder && FilenameUtils.wildcardMatch(name, "*." + LIBRARY_EXTENSION)) {
+                    libraries.add(new TFile(getLibrary(), name));
+                }
+            });
+            return libraries;
+        }
         TFile[] files = getLibrary().listFiles((FileFilter) new WildcardFileFilter("*." + LIBRARY_EXTENSION));
         if (files != null) {
             return Arrays.asList(files);
@@ -124,7 +172,7 @@ public abstract class GenericApplicationModule extends GenericMirroringFilesyste
 
     @Nonnull
     private TFile getManifestTfile(boolean unpacked) {
-        return new TFile(unpacked ? getUnpackFolder() : getModuleRoot(), "META-INF/MANIFEST.MF");
+        return new TFile(unpacked ? getUnpackFolder() : getModuleRoot(), MANIFEST_PATH);
     }
 
 
@@ -132,6 +180,10 @@ public abstract class GenericApplicationModule extends GenericMirroringFilesyste
     @Nonnull
     public Manifest getManifest() throws IOException {
         TFile manifestTfile = getManifestTfile(false);
+        byte[] manifest = archiveInspector != null ? archiveInspector.read(manifestTfile) : null;
+        if (manifest != null) {
+            return new Manifest(new ByteArrayInputStream(manifest));
+        }
         if (manifestTfile.exists() || manifestTfile.createNewFile()) {
             try (TFileInputStream in = new TFileInputStream(manifestTfile)) {
                 return new Manifest(in);
@@ -142,15 +194,8 @@ public abstract class GenericApplicationModule extends GenericMirroringFilesyste
 
     @Override
     public void saveManifest(@Nonnull Manifest manifest) throws IOException {
-        TFile manifestTfile = getManifestTfile(false);
-        try (TFileOutputStream outputStream = new TFileOutputStream(manifestTfile)) {
-            manifest.write(outputStream);
-        }
-        if( isUnpacked() ){
-            manifestTfile = getManifestTfile(true);
-            try (TFileOutputStream outputStream = new TFileOutputStream(manifestTfile)) {
-                manifest.write(outputStream);
-            }
-        }
+        ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+        manifest.write(manifestBytes);
+        write(MANIFEST_PATH, manifestBytes.toByteArray());
     }
 }
@@ -24,6 +24,7 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -34,6 +35,7 @@ public class WeblogicApplicationXml {
 
     public static final String TAG_WEBLOGIC_APPLICATION = "weblogic-application";
     public static final String PATH_RELATIVE_WL_APP_FOLDER = "META-INF";
+    public static final String PATH_RELATIVE_WL_APP_XML = PATH_RELATIVE_WL_APP_FOLDER + "/weblogic-application.xml";
 
     private final EarModule earModule;
     private TFile weblogicappXml;
@@ -48,20 +50,29 @@ public class WeblogicApplicationXml {
 
     public void persistToEarModule() throws TransformerException, IOException {
         try (TFileOutputStream outputStream = new TFileOutputStream(weblogicappXml)) {
-
-            final DOMImplementationLS ls = (DOMImplementationLS) document.getImplementation().getFeature("LS", "3.0");
-            final LSOutput out = ls.createLSOutput();
-            out.setByteStream(outputStream);
-
-            final LSSerializer serializer = ls.createLSSerializer();
-            serializer.getDomConfig().setParameter("format-pretty-print", true);
-            serializer.write(document, out);
+            outputStream.write(toByteArray());
         }
 
         // copy to unpacked location
         earModule.copy(weblogicappXml, PATH_RELATIVE_WL_APP_FOLDER);
     }
 
+    /**
+     * @return the document as written to the EAR
+     */
+    @Nonnull
+    public byte[] toByteArray() throws TransformerException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final DOMImplementationLS ls = (DOMImplementationLS) document.getImplementation().getFeature("LS", "3.0");
+        final LSOutput out = ls.createLSOutput();
+        out.setByteStream(outputStream);
+
+        final LSSerializer serializer = ls.createLSSerializer();
+        serializer.getDomConfig().setParameter("format-pretty-print", true);
+        serializer.write(document, out);
+        return outputStream.toByteArray();
+    }
+
     @Nullable
     public WeblogicClassloaderStructure findClassloaderStructure() throws ParserConfigurationException, SAXException, IOException {
         WeblogicClassloaderStructure weblogicClassloaderStructure = wcs;
@@ -0,0 +1,60 @@
+package net.segner.maven.plugins.communal;
+
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class EarLayoutEnhancerTest {
+
+    private static final String WEB_LIBRARY_FOLDER = "WEB-INF/lib/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testExplodedMirrorWithPackedWar() throws Exception {
+        // setup, an exploded EAR holding its web modules packed
+        EarFixture fixture = new EarFixture(temporaryFolder.getRoot().toPath())
+                .webModules(2)
+                .exploded(true);
+        fixture.write();
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            for (int module = 0; module < 2; module++) {
+                Path explodedWar = fixture.getExplodedEar().resolve(EarFixture.webModuleName(module));
+                FileUtils.deleteDirectory(explodedWar.toFile());
+                try (InputStream in = ear.getInputStream(ear.getEntry(EarFixture.webModuleName(module)))) {
+                    Files.write(explodedWar, IOUtils.toByteArray(in));
+                }
+            }
+        }
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .skipUnchangedEar(true)
+                .verifyEar(true)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate, before the JVM shuts down
+        String sharedLibrary = WEB_LIBRARY_FOLDER + EarFixture.sharedLibraryName(0);
+        try (ZipFile explodedWar = new ZipFile(fixture.getExplodedEar().resolve(EarFixture.webModuleName(1)).toFile())) {
+            assertThat("Packed war of the exploded EAR is written", explodedWar.getEntry(sharedLibrary), is(nullValue()));
+            assertThat("Packed war of the exploded EAR keeps its own libraries", explodedWar.getEntry(WEB_LIBRARY_FOLDER + "web-1-lib-3-1.0.jar"), is(notNullValue()));
+        }
+        assertThat("Recorded state is the written exploded EAR",
+                EarFixture.injector(settings).getInstance(LayoutUpToDateCheck.class).isUpToDate(), is(true));
+    }
+}
@@ -0,0 +1,48 @@
+package net.segner.maven.plugins.communal;
+
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LayoutReportTest {
+
+    @Mock
+    private ApplicationModule war1;
+    @Mock
+    private ApplicationModule war2;
+
+    private LayoutReport underTest = new LayoutReport();
+
+    @Test
+    public void testSummaryProperties() throws Exception {
+        // setup
+        when(war1.getName()).thenReturn("war1.war");
+        when(war2.getName()).thenReturn("war2.war");
+        Map<String, String> emptyRun = underTest.getProperties();
+
+        // test
+        underTest.recordLibrary("shared-1.0.jar", LayoutReport.Decision.SHARED, Arrays.asList(war1, war2), 100);
+        underTest.recordLibrary("other-1.0.jar", LayoutReport.Decision.SHARED, Arrays.asList(war1, war2), 100);
+        underTest.recordLibrary("single-1.0.jar", LayoutReport.Decision.KEPT, Collections.singletonList(war1), 100);
+        underTest.recordPhase(LayoutReport.Phase.SCAN, System.nanoTime());
+        Map<String, String> properties = underTest.getProperties();
+
+        // validate
+        assertThat("Shared libraries are counted", properties.get("skinnywar.librariesShared"), is("2"));
+        assertThat("Kept libraries are counted", properties.get("skinnywar.librariesKept"), is("1"));
+        assertThat("Unused decisions are reported as zero", properties.get("skinnywar.librariesPinned"), is("0"));
+        assertThat("Phase time is reported", properties.containsKey("skinnywar.timeScan"), is(true));
+        assertThat("Summary columns do not depend on the run", properties.keySet(), is(emptyRun.keySet()));
+    }
+}
@@ -0,0 +1,194 @@
+package net.segner.maven.plugins.communal;
+
+import com.google.inject.Injector;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LayoutUpToDateCheckTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EarFixture fixture;
+    private EarLayoutSettings settings;
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = new EarFixture(temporaryFolder.getRoot().toPath())
+                .webModules(2)
+                .exploded(true);
+        fixture.write();
+        settings = fixture.settings(null, 1)
+                .skipUnchangedEar(true)
+                .build();
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+    }
+
+    @Test
+    public void testUnchangedEarIsUpToDate() {
+        // test
+        boolean upToDate = newUpToDateCheck().isUpToDate();
+
+        // validate
+        assertThat("Unchanged EAR is skipped", upToDate, is(true));
+    }
+
+    @Test
+    public void testUnchangedEarSkipsTheLayout() throws Exception {
+        // setup
+        byte[] laidOut = Files.readAllBytes(fixture.getEar());
+        Injector injector = EarFixture.injector(settings);
+
+        // test
+        injector.getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        assertThat("Layout is reported as skipped", injector.getInstance(LayoutReport.class).getProperties().get(LayoutReport.PROPERTY_PREFIX + "skipped"), is("true"));
+        assertThat("EAR is left as it is", Files.readAllBytes(fixture.getEar()), is(laidOut));
+    }
+
+    @Test
+    public void testChangedConfigurationIsLaidOutAgain() {
+        // setup
+        settings = fixture.settings(null, 1)
+                .skipUnchangedEar(true)
+                .addToManifestClasspath(true)
+                .build();
+
+        // test
+        boolean upToDate = newUpToDateCheck().isUpToDate();
+
+        // validate
+        assertThat("Changed configuration lays out again", upToDate, is(false));
+    }
+
+    @Test
+    public void testSameSizeEditOfExplodedEar() throws Exception {
+        // setup, an edit keeping the size and the modification time of the file
+        Path applicationXml = fixture.getExplodedEar().resolve("META-INF/application.xml");
+        FileTime modified = Files.getLastModifiedTime(applicationXml);
+        byte[] contents = Files.readAllBytes(applicationXml);
+        byte[] edited = new String(contents, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8);
+        assertThat("Edit keeps the size", edited.length, is(contents.length));
+        Files.write(applicationXml, edited);
+        Files.setLastModifiedTime(applicationXml, modified);
+
+        // test
+        boolean upToDate = newUpToDateCheck().isUpToDate();
+
+        // validate
+        assertThat("Edited exploded EAR is laid out again", upToDate, is(false));
+    }
+
+    @Test
+    public void testUnpackedAgainIsUpToDate() throws Exception {
+        // setup, the same contents written again, as an ear plugin unpacking its modules again does
+        Path applicationXml = fixture.getExplodedEar().resolve("META-INF/application.xml");
+        Files.write(applicationXml, Files.readAllBytes(applicationXml));
+        Files.setLastModifiedTime(applicationXml, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        // test
+        boolean upToDate = newUpToDateCheck().isUpToDate();
+
+        // validate
+        assertThat("Exploded EAR with the same contents is skipped", upToDate, is(true));
+    }
+
+    @Test
+    public void testSameSizeEditOfPackedEar() throws Exception {
+        // setup, the EAR recorded with its entries stored, then edited keeping its size and modification time
+        storeEar(false);
+        newUpToDateCheck().record();
+        FileTime modified = Files.getLastModifiedTime(fixture.getEar());
+        long size = Files.size(fixture.getEar());
+        storeEar(true);
+        Files.setLastModifiedTime(fixture.getEar(), modified);
+        assertThat("Edit keeps the size", Files.size(fixture.getEar()), is(size));
+
+        // test
+        boolean upToDate = newUpToDateCheck().isUpToDate();
+
+        // validate
+        assertThat("Edited EAR is laid out again", upToDate, is(false));
+    }
+
+    @Test
+    public void testClassLoadingLogReplacedWithSameModificationTime() throws Exception {
+        // setup
+        Path classLoadingLog = temporaryFolder.newFile("class-loading.log").toPath();
+        Files.write(classLoadingLog, "[Loaded a.A from file:/lib/a-1.0.jar]\n".getBytes(StandardCharsets.UTF_8));
+        FileTime modified = Files.getLastModifiedTime(classLoadingLog);
+        settings = fixture.settings(null, 1)
+                .skipUnchangedEar(true)
+                .classLoadingLog(classLoadingLog.toString())
+                .build();
+        newUpToDateCheck().record();
+        Files.write(classLoadingLog, "[Loaded b.B from file:/lib/b-1.0.jar]\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(classLoadingLog, modified);
+
+        // test
+        boolean upToDate = newUpToDateCheck().isUpToDate();
+
+        // validate
+        assertThat("Replaced class-loading log lays out again", upToDate, is(false));
+    }
+
+    private LayoutUpToDateCheck newUpToDateCheck() {
+        Injector injector = EarFixture.injector(settings);
+        return injector.getInstance(LayoutUpToDateCheck.class);
+    }
+
+    /**
+     * Writes the EAR again with its entries stored
+     *
+     * @param edit upper case the application.xml, keeping its size
+     */
+    private void storeEar(boolean edit) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            for (ZipEntry entry : Collections.list(ear.entries())) {
+                try (InputStream in = ear.getInputStream(entry)) {
+                    entries.put(entry.getName(), IOUtils.toByteArray(in));
+                }
+            }
+        }
+        if (edit) {
+            entries.computeIfPresent("META-INF/application.xml", (name, contents) ->
+                    new String(contents, StandardCharsets.UTF_8).toUpperCase().getBytes(StandardCharsets.UTF_8));
+        }
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(fixture.getEar()))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry stored = new ZipEntry(entry.getKey());
+                stored.setMethod(ZipEntry.STORED);
+                stored.setTime(0);
+                stored.setSize(entry.getValue().length);
+                CRC32 crc = new CRC32();
+                crc.update(entry.getValue());
+                stored.setCrc(crc.getValue());
+                zip.putNextEntry(stored);
+                zip.write(entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.segner.maven.plugins.communal;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LibraryMatcherTest {
+
+    private LibraryMatcher underTest;
+
+    @Test
+    public void testPrefixMatchIgnoresCase() throws Exception {
+        // test
+        underTest = new LibraryMatcher(Arrays.asList(new LibraryPrefixFilter("Spring-"), new LibraryPrefixFilter("spring-web")));
+
+        // validate
+        assertThat("Prefix matches regardless of case", underTest.isMatch("spring-core-4.3.0.jar"), is(true));
+        assertThat("Longer prefix matches", underTest.isMatch("SPRING-WEBMVC-4.3.0.jar"), is(true));
+        assertThat("Name shorter than prefix does not match", underTest.isMatch("spring"), is(false));
+        assertThat("Other library does not match", underTest.isMatch("hibernate-core-5.0.jar"), is(false));
+    }
+
+    @Test
+    public void testGlobMatch() throws Exception {
+        // test
+        underTest = new LibraryMatcher(Collections.singletonList(new LibraryGlobFilter("spring-*-4.?.*.jar")));
+
+        // validate
+        assertThat("Glob matches", underTest.isMatch("Spring-Context-4.3.0.jar"), is(true));
+        assertThat("Glob matches the complete name", underTest.isMatch("spring-context-5.0.0.jar"), is(false));
+        assertThat("Glob characters are literals", underTest.isMatch("spring-context-4x3.0.jar"), is(false));
+    }
+
+    @Test
+    public void testRegexMatch() throws Exception {
+        // test
+        underTest = new LibraryMatcher(Collections.singletonList(new LibraryRegexFilter("(aspectjrt|aspectjweaver)-.*\\.jar")));
+
+        // validate
+        assertThat("Regex matches", underTest.isMatch("aspectjweaver-1.8.9.jar"), is(true));
+        assertThat("Regex matches the complete name", underTest.isMatch("my-aspectjweaver-1.8.9.jar"), is(false));
+    }
+
+    @Test
+    public void testCoordinateMatch() throws Exception {
+        // test
+        underTest = new LibraryMatcher(Collections.singletonList(new LibraryCoordinateFilter("org.springframework:spring-*")));
+
+        // validate
+        assertThat("Coordinates match", underTest.isMatch("renamed.jar", "org.springframework:spring-core:4.3.0"), is(true));
+        assertThat("GroupId must match", underTest.isMatch("spring-core-4.3.0.jar", "com.example:spring-core:1.0"), is(false));
+        assertThat("ArtifactId is taken from the file name without coordinates", underTest.isMatch("spring-core-4.3.0.jar"), is(true));
+        assertThat("Other artifact does not match", underTest.isMatch("guava-19.0.jar"), is(false));
+    }
+
+    @Test
+    public void testNoFilters() throws Exception {
+        // test
+        underTest = new LibraryMatcher(null);
+
+        // validate
+        assertThat("Nothing matches without filters", underTest.isMatch("spring-core-4.3.0.jar"), is(false));
+    }
+}
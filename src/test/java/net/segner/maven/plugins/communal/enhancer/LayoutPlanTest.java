@@ -0,0 +1,94 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LayoutPlanTest {
+
+    @Mock
+    private ApplicationModule ear;
+    @Mock
+    private ApplicationModule war1;
+    @Mock
+    private ApplicationModule war2;
+
+    @Test
+    public void testBuildAndWritePlan() throws Exception {
+        // setup
+        when(ear.getName()).thenReturn("app.ear");
+        when(war1.getName()).thenReturn("war1.war");
+        when(war2.getName()).thenReturn("war2.war");
+        LayoutPlan.Builder builder = LayoutPlan.builder()
+                .addLibrary(war1, war2, new TFile("war2.war/WEB-INF/lib/shared-1.0.jar"))
+                .removeLibrary(war2, "shared-1.0.jar")
+                .prependClassPath(war2, Arrays.asList("war1.war/WEB-INF/lib/shared-1.0.jar"))
+                .writeFile(ear, "META-INF/weblogic-application.xml", "<xml/>".getBytes(StandardCharsets.UTF_8));
+
+        // test
+        LayoutPlan plan = builder.build();
+        builder.removeLibrary(war1, "later-1.0.jar");
+        StringWriter text = new StringWriter();
+        plan.write(new PrintWriter(text));
+
+        // validate
+        assertThat("Changes after build are not part of the plan", plan.getRemovals().containsKey(war1), is(false));
+        assertThat("Library move is planned", plan.hasLibraryChanges(), is(true));
+        assertThat("Addition is written", text.toString(), containsString("ADD\twar1.war\tshared-1.0.jar\twar2.war"));
+        assertThat("Removal is written", text.toString(), containsString("REMOVE\twar2.war\tshared-1.0.jar"));
+        assertThat("Class-Path is written", text.toString(), containsString("CLASSPATH\twar2.war\twar1.war/WEB-INF/lib/shared-1.0.jar"));
+        assertThat("Descriptor is written", text.toString(), containsString("WRITE\tapp.ear\tMETA-INF/weblogic-application.xml\t6"));
+    }
+
+    @Test
+    public void testEditedManifestsAreWrittenWithTheFiles() throws Exception {
+        // setup
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(LayoutPlan.ATTR_CLASSPATH, "own-1.0.jar");
+        when(war2.getManifest()).thenReturn(manifest);
+        LayoutPlan plan = LayoutPlan.builder()
+                .prependClassPath(war2, Arrays.asList("war1.war/WEB-INF/lib/shared-1.0.jar"))
+                .writeFile(war2, "META-INF/context.xml", "<xml/>".getBytes(StandardCharsets.UTF_8))
+                .build();
+
+        // test
+        LayoutPlan edits = plan.withEditedManifests();
+
+        // validate
+        Map<String, byte[]> files = edits.getFileWrites().get(war2);
+        Manifest written = new Manifest(new ByteArrayInputStream(files.get(JarFile.MANIFEST_NAME)));
+        assertThat("Class-Path is prepended", written.getMainAttributes().getValue(LayoutPlan.ATTR_CLASSPATH), is("war1.war/WEB-INF/lib/shared-1.0.jar own-1.0.jar"));
+        assertThat("Other file is still written", files.containsKey("META-INF/context.xml"), is(true));
+        assertThat("Class-Path is not changed again", edits.getClassPathPrefixes().isEmpty(), is(true));
+        assertThat("Original plan is unchanged", plan.getFileWrites().get(war2).size(), is(1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPlanIsImmutable() {
+        // setup
+        LayoutPlan plan = LayoutPlan.builder().removeLibrary(war1, "shared-1.0.jar").build();
+
+        // test
+        plan.getRemovals().get(war1).add("other-1.0.jar");
+    }
+}
@@ -0,0 +1,101 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.LibraryMatcher;
+import net.segner.maven.plugins.communal.LibraryPrefixFilter;
+import net.segner.maven.plugins.communal.VersionConvergence;
+import net.segner.maven.plugins.communal.module.ApplicationModule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LibraryVersionConvergerTest {
+
+    @Mock
+    private ApplicationModule war1;
+    @Mock
+    private ApplicationModule war2;
+
+    @Test
+    public void testHighestVersionIsKept() throws Exception {
+        // setup
+        Map<String, Map<ApplicationModule, TFile>> libraryMap = libraryMap();
+        LibraryVersionConverger underTest = converger(VersionConvergence.HIGHEST);
+
+        // test
+        Map<String, Map<ApplicationModule, List<TFile>>> dropped = underTest.converge(libraryMap, Collections.emptyMap(), new LibraryMatcher(null));
+
+        // validate
+        assertThat("Lower version is taken out of the library map", libraryMap.containsKey("foo-1.2.jar"), is(false));
+        assertThat("Higher version is kept", libraryMap.containsKey("foo-1.10.jar"), is(true));
+        assertThat("Lower version is dropped from its module", dropped.get("foo-1.10.jar").get(war1).get(0).getName(), is("foo-1.2.jar"));
+        assertThat("Other artifacts are left alone", libraryMap.containsKey("bar-1.0.jar"), is(true));
+    }
+
+    @Test
+    public void testPinnedLibraryIsNotConverged() throws Exception {
+        // setup
+        Map<String, Map<ApplicationModule, TFile>> libraryMap = libraryMap();
+        LibraryVersionConverger underTest = converger(VersionConvergence.HIGHEST);
+
+        // test
+        Map<String, Map<ApplicationModule, List<TFile>>> dropped = underTest.converge(libraryMap, Collections.emptyMap(),
+                new LibraryMatcher(Collections.singletonList(new LibraryPrefixFilter("foo"))));
+
+        // validate
+        assertThat("Nothing is dropped", dropped.isEmpty(), is(true));
+        assertThat("Both versions stay", libraryMap.size(), is(3));
+    }
+
+    @Test
+    public void testNoConvergence() throws Exception {
+        // setup
+        Map<String, Map<ApplicationModule, TFile>> libraryMap = libraryMap();
+        LibraryVersionConverger underTest = converger(VersionConvergence.NONE);
+
+        // test
+        Map<String, Map<ApplicationModule, List<TFile>>> dropped = underTest.converge(libraryMap, Collections.emptyMap(), new LibraryMatcher(null));
+
+        // validate
+        assertThat("Not converging", underTest.isConverging(), is(false));
+        assertThat("Nothing is dropped", dropped.isEmpty(), is(true));
+        assertThat("Library map is unchanged", libraryMap.size(), is(3));
+    }
+
+    private Map<String, Map<ApplicationModule, TFile>> libraryMap() {
+        Map<String, Map<ApplicationModule, TFile>> libraryMap = new LinkedHashMap<>();
+        libraryMap.computeIfAbsent("foo-1.2.jar", key -> new LinkedHashMap<>()).put(war1, new TFile("war1/WEB-INF/lib/foo-1.2.jar"));
+        libraryMap.computeIfAbsent("foo-1.10.jar", key -> new LinkedHashMap<>()).put(war2, new TFile("war2/WEB-INF/lib/foo-1.10.jar"));
+        libraryMap.computeIfAbsent("bar-1.0.jar", key -> new LinkedHashMap<>()).put(war1, new TFile("war1/WEB-INF/lib/bar-1.0.jar"));
+        return libraryMap;
+    }
+
+    private static LibraryVersionConverger converger(VersionConvergence versionConvergence) {
+        return Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(VersionConvergence.class)
+                        .annotatedWith(Names.named("versionConvergence"))
+                        .toInstance(versionConvergence);
+                bind(new TypeLiteral<List<String>>() {
+                })
+                        .annotatedWith(Names.named("pinnedVersionList"))
+                        .toInstance(Collections.emptyList());
+            }
+        }).getInstance(LibraryVersionConverger.class);
+    }
+}
@@ -0,0 +1,65 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import net.segner.maven.plugins.communal.EarLayoutEnhancer;
+import net.segner.maven.plugins.communal.EarLayoutSettings;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.StringContains.containsString;
+
+public class PackageIndexEnhancerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPackageIndex() {
+        // setup
+        Map<String, Set<String>> packages = new LinkedHashMap<>();
+        packages.put("WEB-INF/lib/b.jar", new TreeSet<>(Arrays.asList("org/split", "org/b")));
+        packages.put("WEB-INF/lib/a.jar", new TreeSet<>(Arrays.asList("org/a", "org/split", "a.properties")));
+
+        // test
+        String packageIndex = PackageIndexEnhancer.toPackageIndex(packages);
+
+        // validate
+        assertThat("Package in several libraries lists all of them", packageIndex, containsString("org/split\tWEB-INF/lib/b.jar WEB-INF/lib/a.jar\n"));
+        assertThat("Package in one library", packageIndex, containsString("org/a\tWEB-INF/lib/a.jar\n"));
+    }
+
+    @Test
+    public void testReportLeavesModulesUnchanged() throws Exception {
+        // setup
+        EarFixture fixture = new EarFixture(temporaryFolder.getRoot().toPath()).webModules(2);
+        fixture.write();
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .packageIndexReport(true)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        Path report = fixture.getDirectory().resolve("skinnywar/" + EarFixture.FINAL_NAME + PackageIndexEnhancer.PACKAGE_INDEX_SUFFIX);
+        assertThat("Report lists the shared libraries", new String(Files.readAllBytes(report), StandardCharsets.UTF_8),
+                containsString("lib/" + EarFixture.sharedLibraryName(0)));
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            assertThat("No index is written into the EAR", ear.getEntry("META-INF/INDEX.LIST"), is(nullValue()));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import com.google.inject.Injector;
+import net.segner.maven.plugins.communal.EarLayoutEnhancer;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Applies the standard and communal layouts to EARs of up to 500 modules and 20k libraries, asserting limits on wall
+ * time and peak heap. Excluded from the default build, run with the {@code scale-test} profile.
+ */
+@RunWith(Parameterized.class)
+public class SkinnyWarEarEnhancerScaleTest {
+
+    private static final long MAX_SECONDS = Long.getLong("scale.maxSeconds", 600);
+    private static final long MAX_HEAP_MEGABYTES = Long.getLong("scale.maxHeapMegabytes", 1024);
+    private static final int LIBRARIES_PER_MODULE = 42;
+    private static final String WEB_LIBRARY_FOLDER = "WEB-INF/lib/";
+
+    @Parameterized.Parameters(name = "{0} layout, {1} modules")
+    public static Collection<Object[]> layouts() {
+        return Arrays.asList(new Object[][]{
+                {"standard", 50},
+                {"communal", 50},
+                {"standard", 500},
+                {"communal", 500}
+        });
+    }
+
+    @Parameterized.Parameter(0)
+    public String layout;
+    @Parameterized.Parameter(1)
+    public int modules;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void layout() throws Exception {
+        boolean communal = "communal".equals(layout);
+        int supportModules = modules / 20;
+        EarFixture fixture = new EarFixture(temporaryFolder.getRoot().toPath())
+                .webModules(modules - 2 * supportModules)
+                .ejbModules(supportModules)
+                .rarModules(supportModules)
+                .librariesPerModule(LIBRARIES_PER_MODULE)
+                .exploded(communal)
+                .weblogicApplicationXml(communal);
+        fixture.write();
+        Injector injector = fixture.injector(communal ? EarFixture.webModuleName(0) : null, 0);
+
+        // test
+        resetPeakHeap();
+        long start = System.nanoTime();
+        injector.getInstance(EarLayoutEnhancer.class).start();
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        long peakHeapMegabytes = peakHeap() / (1024 * 1024);
+        String measured = layout + " layout of " + modules + " modules and " + fixture.getLibraries() + " libraries: "
+                + seconds + "s, peak heap " + peakHeapMegabytes + "MB";
+
+        // validate
+        assertThat("Wall time in seconds, " + measured, seconds, lessThan(MAX_SECONDS));
+        assertThat("Peak heap in megabytes, " + measured, peakHeapMegabytes, lessThan(MAX_HEAP_MEGABYTES));
+
+        String sharedLibrary = EarFixture.sharedLibraryName(0);
+        String uniqueLibrary = "web-1-lib-" + (LIBRARIES_PER_MODULE - 1) + "-1.0.jar";
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            Set<String> moduleEntries = entries(ear, EarFixture.webModuleName(1));
+            assertThat("Shared library was removed from the module", moduleEntries, not(hasItem(WEB_LIBRARY_FOLDER + sharedLibrary)));
+            assertThat("Unique library remains in the module", moduleEntries, hasItem(WEB_LIBRARY_FOLDER + uniqueLibrary));
+            if (communal) {
+                assertThat("Shared library is in the communal module",
+                        entries(ear, EarFixture.webModuleName(0)), hasItem(WEB_LIBRARY_FOLDER + sharedLibrary));
+            } else {
+                assertThat("Shared library is in the ear", ear.getEntry("lib/" + sharedLibrary) != null, is(true));
+            }
+        }
+    }
+
+    private static Set<String> entries(ZipFile ear, String moduleName) throws IOException {
+        Set<String> entries = new HashSet<>();
+        try (InputStream in = ear.getInputStream(ear.getEntry(moduleName)); ZipInputStream module = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = module.getNextEntry()) != null) {
+                entries.add(entry.getName());
+            }
+        }
+        return entries;
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,305 @@
+package net.segner.maven.plugins.communal.enhancer;
+
+import net.segner.maven.plugins.communal.EarLayoutEnhancer;
+import net.segner.maven.plugins.communal.EarLayoutSettings;
+import net.segner.maven.plugins.communal.LibraryIdentity;
+import net.segner.maven.plugins.communal.fixture.EarFixture;
+import net.segner.maven.plugins.communal.io.ArchiveBackendType;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.fail;
+
+/**
+ * Applies the standard layout to small EARs written for each case
+ */
+public class SkinnyWarEarEnhancerTest {
+
+    private static final String WEB_LIBRARY_FOLDER = "WEB-INF/lib/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private EarFixture fixture;
+
+    @Before
+    public void setUp() {
+        fixture = new EarFixture(temporaryFolder.getRoot().toPath());
+    }
+
+    @Test
+    public void testContentIdentity() throws Exception {
+        // setup, a library renamed in one war, and a library sharing its name but not its content
+        writeEar(war("common-1.0.jar", jar("common"), "conflict.jar", jar("first"), "unique-1.0.jar", jar("unique")),
+                war("common-renamed.jar", jar("common"), "conflict.jar", jar("second")));
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .libraryIdentity(LibraryIdentity.CONTENT)
+                .warningBreaksBuild(false)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        Set<String> earEntries = entries(null);
+        Set<String> firstWar = entries(EarFixture.webModuleName(0));
+        Set<String> secondWar = entries(EarFixture.webModuleName(1));
+        assertThat("Identical libraries are moved to the ear, under the name of the first module", earEntries, hasItem("lib/common-1.0.jar"));
+        assertThat("Renamed copy is not added", earEntries, not(hasItem("lib/common-renamed.jar")));
+        assertThat("Identical libraries are removed from the modules", firstWar, not(hasItem(WEB_LIBRARY_FOLDER + "common-1.0.jar")));
+        assertThat("Renamed copy is removed from its module", secondWar, not(hasItem(WEB_LIBRARY_FOLDER + "common-renamed.jar")));
+        assertThat("Conflicting libraries stay in their modules", firstWar, hasItems(WEB_LIBRARY_FOLDER + "conflict.jar", WEB_LIBRARY_FOLDER + "unique-1.0.jar"));
+        assertThat("Conflicting libraries stay in their modules", secondWar, hasItem(WEB_LIBRARY_FOLDER + "conflict.jar"));
+        assertThat("Conflicting libraries are not moved", earEntries, not(hasItem("lib/conflict.jar")));
+    }
+
+    @Test
+    public void testContentConflictBreaksBuild() throws Exception {
+        // setup
+        writeEar(war("conflict.jar", jar("first")), war("conflict.jar", jar("second")));
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .libraryIdentity(LibraryIdentity.CONTENT)
+                .build();
+
+        // test
+        try {
+            EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+            fail("Conflict fails the build");
+        } catch (MojoFailureException e) {
+
+            // validate
+            assertThat("Conflicting library is named", e.getMessage(), containsString("conflict.jar"));
+        }
+    }
+
+    @Test
+    public void testCoordinateIdentityKeepsClassifiersApart() throws Exception {
+        // setup, a classifier variant and the main artifact sharing their coordinates, and a renamed copy of a library
+        writeEar(war("foo-1.0-jdk8.jar", jar("org.example", "foo", "1.0", "jdk8"), "bar-1.0.jar", jar("org.example", "bar", "1.0", "bar")),
+                war("foo-1.0.jar", jar("org.example", "foo", "1.0", "main"), "bar-renamed.jar", jar("org.example", "bar", "1.0", "bar")));
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .libraryIdentity(LibraryIdentity.COORDINATES)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        Set<String> earEntries = entries(null);
+        assertThat("Classifier variant stays in its module", entries(EarFixture.webModuleName(0)), hasItem(WEB_LIBRARY_FOLDER + "foo-1.0-jdk8.jar"));
+        assertThat("Main artifact stays in its module", entries(EarFixture.webModuleName(1)), hasItem(WEB_LIBRARY_FOLDER + "foo-1.0.jar"));
+        assertThat("Neither variant is moved", earEntries, not(hasItem("lib/foo-1.0.jar")));
+        assertThat("Neither variant is moved", earEntries, not(hasItem("lib/foo-1.0-jdk8.jar")));
+        assertThat("Renamed copy with the same coordinates is moved", earEntries, hasItem("lib/bar-1.0.jar"));
+        assertThat("Renamed copy is removed from its module", entries(EarFixture.webModuleName(1)), not(hasItem(WEB_LIBRARY_FOLDER + "bar-renamed.jar")));
+    }
+
+    @Test
+    public void testStoreNestedArchivesUsesStreamingRewrite() throws Exception {
+        // setup, the streaming rewrite is not enabled
+        writeEar(war("common-1.0.jar", jar("common")), war("common-1.0.jar", jar("common")));
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .storeNestedArchives(true)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        assertThat("Library is moved", entries(null), hasItem("lib/common-1.0.jar"));
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            assertThat("Rewritten module is stored", ear.getEntry(EarFixture.webModuleName(0)).getMethod(), is(ZipEntry.STORED));
+            assertThat("Moved library is stored", ear.getEntry("lib/common-1.0.jar").getMethod(), is(ZipEntry.STORED));
+        }
+    }
+
+    @Test
+    public void testZipFsBackendMatchesTrueVfs() throws Exception {
+        // setup
+        fixture.webModules(3).write();
+        EarFixture.injector(fixture.settings(null, 1)
+                .addToManifestClasspath(true)
+                .build()).getInstance(EarLayoutEnhancer.class).start();
+        Map<String, String> trueVfsLayout = layout();
+        fixture.restore();
+        EarLayoutSettings settings = fixture.settings(null, 1)
+                .addToManifestClasspath(true)
+                .archiveBackendType(ArchiveBackendType.ZIPFS)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        assertThat("Libraries are moved", trueVfsLayout, hasKey("lib/" + EarFixture.sharedLibraryName(0)));
+        assertThat("Same layout with either backend", layout(), is(trueVfsLayout));
+    }
+
+    @Test
+    public void testLayoutIndependentOfThreads() throws Exception {
+        // setup
+        fixture.webModules(4).write();
+        EarFixture.injector(fixture.settings(null, 1)
+                .addToManifestClasspath(true)
+                .build()).getInstance(EarLayoutEnhancer.class).start();
+        Map<String, String> singleThreadLayout = layout();
+        fixture.restore();
+        EarLayoutSettings settings = fixture.settings(null, 4)
+                .addToManifestClasspath(true)
+                .build();
+
+        // test
+        EarFixture.injector(settings).getInstance(EarLayoutEnhancer.class).start();
+
+        // validate
+        assertThat("Class-Path refers to the moved libraries", singleThreadLayout.get(EarFixture.webModuleName(0) + "!" + JarFile.MANIFEST_NAME),
+                containsString("lib/" + EarFixture.sharedLibraryName(0)));
+        assertThat("Same layout with any number of threads", layout(), is(singleThreadLayout));
+    }
+
+    /**
+     * Writes the EAR of the fixture with the wars as its web modules
+     */
+    void writeEar(byte[]... wars) throws IOException {
+        Files.createDirectories(fixture.getDirectory());
+        Object[] entries = new Object[wars.length * 2 + 2];
+        entries[0] = "META-INF/application.xml";
+        entries[1] = "<application/>";
+        for (int i = 0; i < wars.length; i++) {
+            entries[i * 2 + 2] = EarFixture.webModuleName(i);
+            entries[i * 2 + 3] = wars[i];
+        }
+        Files.write(fixture.getEar(), zip(entries));
+    }
+
+    /**
+     * @param namesAndLibraries alternating library names and contents
+     */
+    static byte[] war(Object... namesAndLibraries) throws IOException {
+        Object[] entries = new Object[namesAndLibraries.length + 2];
+        entries[0] = "WEB-INF/web.xml";
+        entries[1] = "<web-app/>";
+        for (int i = 0; i < namesAndLibraries.length; i += 2) {
+            entries[i + 2] = WEB_LIBRARY_FOLDER + namesAndLibraries[i];
+            entries[i + 3] = namesAndLibraries[i + 1];
+        }
+        return zip(entries);
+    }
+
+    static byte[] jar(String content) throws IOException {
+        return zip("fixture/Library.class", content);
+    }
+
+    static byte[] jar(String groupId, String artifactId, String version, String content) throws IOException {
+        return zip("META-INF/maven/" + groupId + "/" + artifactId + "/pom.properties",
+                "groupId=" + groupId + "\nartifactId=" + artifactId + "\nversion=" + version + "\n",
+                "fixture/Library.class", content);
+    }
+
+    /**
+     * @return entry names of the EAR, or of the module of the EAR
+     */
+    Set<String> entries(String moduleName) throws IOException {
+        Set<String> entries = new TreeSet<>();
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            if (moduleName == null) {
+                ear.stream().forEach(entry -> entries.add(entry.getName()));
+                return entries;
+            }
+            try (InputStream in = ear.getInputStream(ear.getEntry(moduleName)); ZipInputStream module = new ZipInputStream(in)) {
+                ZipEntry entry;
+                while ((entry = module.getNextEntry()) != null) {
+                    entries.add(entry.getName());
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return file entries of the EAR and of its web modules, the latter prefixed with the module name and '!', mapped to
+     * the Class-Path of manifests and the CRC of the other entries. Web modules are described by their entries only.
+     */
+    Map<String, String> layout() throws IOException {
+        Map<String, String> layout = new TreeMap<>();
+        try (ZipFile ear = new ZipFile(fixture.getEar().toFile())) {
+            for (ZipEntry entry : Collections.list(ear.entries())) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (!entry.getName().endsWith(".war")) {
+                    try (InputStream in = ear.getInputStream(entry)) {
+                        layout.put(entry.getName(), describe(entry, in));
+                    }
+                    continue;
+                }
+                try (InputStream in = ear.getInputStream(entry); ZipInputStream module = new ZipInputStream(in)) {
+                    ZipEntry moduleEntry;
+                    while ((moduleEntry = module.getNextEntry()) != null) {
+                        if (!moduleEntry.isDirectory()) {
+                            layout.put(entry.getName() + "!" + moduleEntry.getName(), describe(moduleEntry, module));
+                        }
+                    }
+                }
+            }
+        }
+        return layout;
+    }
+
+    private static String describe(ZipEntry entry, InputStream in) throws IOException {
+        if (JarFile.MANIFEST_NAME.equals(entry.getName())) {
+            return String.valueOf(new Manifest(in).getMainAttributes().getValue(Attributes.Name.CLASS_PATH));
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            crc.update(buffer, 0, read);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                Object content = namesAndContents[i + 1];
+                zip.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+                zip.write(content instanceof String ? ((String) content).getBytes(StandardCharsets.UTF_8) : (byte[]) content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
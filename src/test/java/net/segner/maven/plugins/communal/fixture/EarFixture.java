@@ -0,0 +1,379 @@
+package net.segner.maven.plugins.communal.fixture;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mycila.guice.ext.closeable.CloseableModule;
+import com.mycila.guice.ext.jsr250.Jsr250Module;
+import net.segner.maven.plugins.communal.EarLayoutEnhancerModule;
+import net.segner.maven.plugins.communal.EarLayoutSettings;
+import net.segner.maven.plugins.communal.module.ApplicationModuleProvider;
+import net.segner.maven.plugins.communal.module.EjbModule;
+import net.segner.maven.plugins.communal.module.RarModule;
+import net.segner.maven.plugins.communal.module.WebModule;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Plugin;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates synthetic EARs as they are left in the build directory by the maven-ear-plugin.
+ * <p>
+ * The EAR holds web modules ({@code web-<n>.war}), ejb modules ({@code ejb-<n>.jar}) and resource adapters
+ * ({@code connector-<n>.rar}). Web modules and resource adapters carry libraries: a share of them is identical in every
+ * module, the rest is unique to the module. Library content is determined by the library name, so equal names always
+ * have equal content.
+ */
+public class EarFixture {
+
+    public static final String FINAL_NAME = "fixture";
+    public static final String EAR_NAME = FINAL_NAME + ApplicationModuleProvider.MODULE_EXTENSION_EAR;
+    public static final String WEBLOGIC_APPLICATION_XML = "META-INF/weblogic-application.xml";
+
+    private static final String PRISTINE_EAR_NAME = FINAL_NAME + "-pristine" + ApplicationModuleProvider.MODULE_EXTENSION_EAR;
+    private static final String MANIFEST = "Manifest-Version: 1.0\r\n";
+    private static final int CLASS_SIZE = 4 * 1024;
+
+    private final Path directory;
+    private int webModules = 2;
+    private int ejbModules;
+    private int rarModules;
+    private int librariesPerModule = 4;
+    private double sharedLibraryRatio = 0.5;
+    private int jarKilobytes = 1;
+    private boolean exploded;
+    private boolean weblogicApplicationXml;
+
+    /**
+     * @param directory build directory the EAR is written to
+     */
+    public EarFixture(@Nonnull Path directory) {
+        this.directory = directory;
+    }
+
+    public EarFixture webModules(int webModules) {
+        this.webModules = webModules;
+        return this;
+    }
+
+    public EarFixture ejbModules(int ejbModules) {
+        this.ejbModules = ejbModules;
+        return this;
+    }
+
+    public EarFixture rarModules(int rarModules) {
+        this.rarModules = rarModules;
+        return this;
+    }
+
+    public EarFixture librariesPerModule(int librariesPerModule) {
+        this.librariesPerModule = librariesPerModule;
+        return this;
+    }
+
+    /**
+     * @param sharedLibraryRatio share of each module's libraries that is found in every module, between 0 and 1
+     */
+    public EarFixture sharedLibraryRatio(double sharedLibraryRatio) {
+        this.sharedLibraryRatio = sharedLibraryRatio;
+        return this;
+    }
+
+    /**
+     * @param jarKilobytes approximate uncompressed size of every library
+     */
+    public EarFixture jarKilobytes(int jarKilobytes) {
+        this.jarKilobytes = jarKilobytes;
+        return this;
+    }
+
+    /**
+     * @param exploded also write the exploded copy of the EAR, with web modules and resource adapters unpacked
+     */
+    public EarFixture exploded(boolean exploded) {
+        this.exploded = exploded;
+        return this;
+    }
+
+    /**
+     * @param weblogicApplicationXml include an existing weblogic-application.xml
+     */
+    public EarFixture weblogicApplicationXml(boolean weblogicApplicationXml) {
+        this.weblogicApplicationXml = weblogicApplicationXml;
+        return this;
+    }
+
+    @Nonnull
+    public static String webModuleName(int module) {
+        return "web-" + module + ".war";
+    }
+
+    @Nonnull
+    public static String ejbModuleName(int module) {
+        return "ejb-" + module + "." + EjbModule.EXTENSION;
+    }
+
+    @Nonnull
+    public static String rarModuleName(int module) {
+        return "connector-" + module + "." + RarModule.EXTENSION;
+    }
+
+    @Nonnull
+    public static String sharedLibraryName(int library) {
+        return "shared-" + library + "-1.0.jar";
+    }
+
+    public int getSharedLibraries() {
+        return (int) Math.round(librariesPerModule * sharedLibraryRatio);
+    }
+
+    /**
+     * @return total number of libraries in all modules
+     */
+    public int getLibraries() {
+        return (webModules + rarModules) * librariesPerModule;
+    }
+
+    @Nonnull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Nonnull
+    public Path getEar() {
+        return directory.resolve(EAR_NAME);
+    }
+
+    @Nonnull
+    public Path getExplodedEar() {
+        return directory.resolve(FINAL_NAME);
+    }
+
+    /**
+     * Writes the EAR, its exploded copy if requested, and a pristine copy of the EAR to {@link #restore} from
+     *
+     * @return the build describing the directory
+     */
+    @Nonnull
+    public Build write() throws IOException {
+        Files.createDirectories(directory);
+        Map<String, byte[]> modules = new LinkedHashMap<>();
+        for (int module = 0; module < webModules; module++) {
+            modules.put(webModuleName(module), webModule(module));
+        }
+        for (int module = 0; module < ejbModules; module++) {
+            modules.put(ejbModuleName(module), ejbModule(module));
+        }
+        for (int module = 0; module < rarModules; module++) {
+            modules.put(rarModuleName(module), rarModule(module));
+        }
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(getEar()))) {
+            putEntry(zip, "META-INF/MANIFEST.MF", bytes(MANIFEST));
+            putEntry(zip, "META-INF/application.xml", bytes("<application/>"));
+            if (weblogicApplicationXml) {
+                putEntry(zip, WEBLOGIC_APPLICATION_XML, weblogicApplicationXmlContent());
+            }
+            for (Map.Entry<String, byte[]> module : modules.entrySet()) {
+                putEntry(zip, module.getKey(), module.getValue());
+            }
+        }
+        Files.copy(getEar(), directory.resolve(PRISTINE_EAR_NAME), StandardCopyOption.REPLACE_EXISTING);
+
+        if (exploded) {
+            Path explodedEar = getExplodedEar();
+            FileUtils.deleteDirectory(explodedEar.toFile());
+            writeFile(explodedEar.resolve("META-INF/application.xml"), bytes("<application/>"));
+            if (weblogicApplicationXml) {
+                writeFile(explodedEar.resolve(WEBLOGIC_APPLICATION_XML), weblogicApplicationXmlContent());
+            }
+            for (Map.Entry<String, byte[]> module : modules.entrySet()) {
+                if (module.getKey().endsWith("." + EjbModule.EXTENSION)) {
+                    writeFile(explodedEar.resolve(module.getKey()), module.getValue());
+                } else {
+                    unzip(module.getValue(), explodedEar.resolve(module.getKey()));
+                }
+            }
+        }
+        return build();
+    }
+
+    /**
+     * Replaces the EAR with its pristine copy. The exploded copy is not restored.
+     */
+    public void restore() throws IOException {
+        Files.copy(directory.resolve(PRISTINE_EAR_NAME), getEar(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void delete() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    /**
+     * @return build of a project packaging the EAR with the maven-ear-plugin
+     */
+    @Nonnull
+    public Build build() {
+        Build build = new Build();
+        build.setDirectory(directory.toString());
+        build.setFinalName(FINAL_NAME);
+
+        Plugin earPlugin = new Plugin();
+        earPlugin.setGroupId("org.apache.maven.plugins");
+        earPlugin.setArtifactId("maven-ear-plugin");
+        earPlugin.setConfiguration(new Xpp3Dom("configuration"));
+        build.addPlugin(earPlugin);
+        return build;
+    }
+
+    /**
+     * @param communalModuleName shared module of the communal layout, null for the standard layout
+     * @return settings of the mojo with its default settings, laying out the EAR even if unchanged
+     */
+    @Nonnull
+    public EarLayoutSettings.Builder settings(@Nullable String communalModuleName, int threads) {
+        return EarLayoutSettings.builder(build())
+                .communalModuleName(communalModuleName)
+                .skipUnchangedEar(false)
+                .threads(threads);
+    }
+
+    /**
+     * @param communalModuleName shared module of the communal layout, null for the standard layout
+     * @return injector configured like the mojo with its default settings
+     */
+    @Nonnull
+    public Injector injector(@Nullable String communalModuleName, int threads) {
+        return injector(settings(communalModuleName, threads).build());
+    }
+
+    @Nonnull
+    public static Injector injector(@Nonnull EarLayoutSettings settings) {
+        return Guice.createInjector(new CloseableModule(), new Jsr250Module(), new EarLayoutEnhancerModule(settings));
+    }
+
+    /**
+     * Writes a library of about jarKilobytes, with content determined by its file name
+     */
+    public static void writeJar(@Nonnull Path jar, int jarKilobytes) throws IOException {
+        writeFile(jar, jar(jar.getFileName().toString(), jarKilobytes));
+    }
+
+    private byte[] webModule(int module) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            putEntry(zip, "META-INF/MANIFEST.MF", bytes(MANIFEST));
+            putEntry(zip, WebModule.DEFAULT_WEBMODULE_METADATAPATH + "/web.xml", bytes("<web-app/>"));
+            putLibraries(zip, WebModule.DEFAULT_WEBMODULE_LIBPATH.replace('\\', '/') + "/", "web-" + module);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] ejbModule(int module) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            putEntry(zip, "META-INF/MANIFEST.MF", bytes(MANIFEST));
+            putEntry(zip, "META-INF/ejb-jar.xml", bytes("<ejb-jar/>"));
+            putEntry(zip, "fixture/ejb" + module + "/Bean.class", new byte[CLASS_SIZE]);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] rarModule(int module) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            putEntry(zip, "META-INF/MANIFEST.MF", bytes(MANIFEST));
+            putEntry(zip, "META-INF/ra.xml", bytes("<connector/>"));
+            putLibraries(zip, "", "connector-" + module);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void putLibraries(ZipOutputStream zip, String libraryFolder, String modulePrefix) throws IOException {
+        int sharedLibraries = getSharedLibraries();
+        for (int library = 0; library < librariesPerModule; library++) {
+            String libraryName = library < sharedLibraries ?
+                    sharedLibraryName(library) :
+                    modulePrefix + "-lib-" + library + "-1.0.jar";
+            putEntry(zip, libraryFolder + libraryName, jar(libraryName, jarKilobytes));
+        }
+    }
+
+    private static byte[] weblogicApplicationXmlContent() {
+        return bytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<weblogic-application xmlns=\"http://xmlns.oracle.com/weblogic/weblogic-application\">\n" +
+                "    <application-param>\n" +
+                "        <param-name>webapp.encoding.default</param-name>\n" +
+                "        <param-value>UTF-8</param-value>\n" +
+                "    </application-param>\n" +
+                "</weblogic-application>\n");
+    }
+
+    /**
+     * @return a jar of class sized entries that compress to about half their size
+     */
+    private static byte[] jar(String libraryName, int jarKilobytes) throws IOException {
+        Random random = new Random(libraryName.hashCode());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            putEntry(zip, "META-INF/MANIFEST.MF", bytes(MANIFEST));
+            int classes = Math.max(1, jarKilobytes * 1024 / CLASS_SIZE);
+            for (int i = 0; i < classes; i++) {
+                byte[] content = new byte[CLASS_SIZE];
+                byte[] noise = new byte[CLASS_SIZE / 2];
+                random.nextBytes(noise);
+                System.arraycopy(noise, 0, content, 0, noise.length);
+                putEntry(zip, "fixture/Class" + i + ".class", content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void unzip(byte[] archive, Path folder) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                Path file = folder.resolve(entry.getName());
+                if (entry.isDirectory()) {
+                    Files.createDirectories(file);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    Files.copy(zip, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static void writeFile(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(content);
+        }
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
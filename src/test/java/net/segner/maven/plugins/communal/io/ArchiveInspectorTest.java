@@ -0,0 +1,196 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class ArchiveInspectorTest {
+
+    private static final String MANIFEST = "Manifest-Version: 1.0\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ArchiveInspector underTest = new ArchiveInspector();
+
+    @After
+    public void tearDown() {
+        underTest.close();
+    }
+
+    @Test
+    public void testInspectNestedArchives() throws Exception {
+        // setup, a stored war and a deflated war each holding a deflated library
+        byte[] library = zip(false, "META-INF/MANIFEST.MF", MANIFEST, "META-INF/maven/g/a/pom.properties", "version=1.0\n");
+        byte[] storedWar = zip(false, "WEB-INF/lib/a-1.0.jar", library);
+        byte[] deflatedWar = zip(false, "WEB-INF/lib/a-1.0.jar", library, "META-INF/MANIFEST.MF", MANIFEST);
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip(true, "stored.war", storedWar, "deflated.war", deflatedWar));
+        TFile earFile = new TFile(ear);
+
+        for (String war : new String[]{"stored.war", "deflated.war"}) {
+            TFile warFile = new TFile(earFile, war);
+            TFile libraryFile = new TFile(warFile, "WEB-INF/lib/a-1.0.jar");
+
+            // test
+            Map<String, Boolean> earChildren = underTest.list(earFile);
+            Map<String, Boolean> warChildren = underTest.list(warFile);
+            Map<String, Boolean> libraries = underTest.list(new TFile(warFile, "WEB-INF/lib"));
+            Map<String, byte[]> descriptors = underTest.readEntries(libraryFile, Pattern.compile(".*/pom\\.properties"));
+
+            // validate
+            assertThat("Nested archives are not folders", earChildren.get(war), is(false));
+            assertThat("Implied folder is listed", warChildren.get("WEB-INF"), is(true));
+            assertThat("Implied folder exists", underTest.exists(new TFile(warFile, "WEB-INF")), is(true));
+            assertThat("Missing entry does not exist", underTest.exists(new TFile(warFile, "WEB-INF/classes")), is(false));
+            assertThat("Library is listed", libraries.get("a-1.0.jar"), is(false));
+            assertThat("Library is read as a plain file", underTest.read(libraryFile), is(library));
+            assertThat("Entry of a nested library is read", new String(descriptors.get("META-INF/maven/g/a/pom.properties"), StandardCharsets.UTF_8), is("version=1.0\n"));
+            assertThat("Archive on disk is writable", underTest.canWrite(warFile), is(true));
+        }
+
+        // test
+        underTest.close();
+
+        // validate
+        assertThat("Closed inspector no longer answers", underTest.list(earFile), is(nullValue()));
+    }
+
+    @Test
+    public void testReadZip64CentralDirectory() throws Exception {
+        // setup, more entries than the end of central directory record can count
+        int entryCount = 0x10000 + 10;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entryCount; i++) {
+                zip.putNextEntry(new ZipEntry("entries/" + i));
+            }
+        }
+
+        // test
+        ZipDirectory directory = ZipDirectory.read(ByteBuffer.wrap(bytes.toByteArray()));
+
+        // validate
+        assertThat("Every entry is read from the zip64 record", directory.getEntries().size(), is(entryCount));
+        assertThat("Last entry is found", directory.exists("entries/" + (entryCount - 1)), is(true));
+        assertThat("Folder lists every entry", directory.list("entries").size(), is(entryCount));
+    }
+
+    @Test
+    public void testInflateLargeNestedArchiveToFile() throws Exception {
+        // setup, a deflated war larger than the memory threshold
+        File buffers = temporaryFolder.newFolder("buffers");
+        byte[] library = zip(false, "META-INF/MANIFEST.MF", MANIFEST);
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip(false, "deflated.war", zip(false, "WEB-INF/lib/a-1.0.jar", library)));
+        ArchiveInspector inspector = new ArchiveInspector(new BufferPool(buffers.toPath(), 16, BufferPool.DEFAULT_MEMORY_BUDGET));
+        TFile libraryFile = new TFile(ear, "deflated.war/WEB-INF/lib/a-1.0.jar");
+
+        // test
+        byte[] read = inspector.read(libraryFile);
+        int buffered = buffers.list().length;
+        inspector.close();
+
+        // validate
+        assertThat("Library is read from the inflated war", read, is(library));
+        assertThat("War is inflated to a temporary file", buffered, is(1));
+        assertThat("Temporary file is deleted once closed", buffers.list().length, is(0));
+    }
+
+    @Test
+    public void testNestedArchivesWithinMemoryBudget() throws Exception {
+        // setup, two deflated wars of which only one fits the memory budget
+        File buffers = temporaryFolder.newFolder("buffers");
+        byte[] library = zip(false, "META-INF/MANIFEST.MF", MANIFEST);
+        byte[] war = zip(false, "WEB-INF/lib/a-1.0.jar", library);
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip(false, "first.war", war, "second.war", war));
+        BufferPool bufferPool = new BufferPool(buffers.toPath(), BufferPool.DEFAULT_MEMORY_THRESHOLD, war.length);
+        ArchiveInspector inspector = new ArchiveInspector(bufferPool);
+
+        // test
+        String first = inspector.read(new TFile(ear, "first.war/WEB-INF/lib/a-1.0.jar"), in -> IOUtils.toString(in, "UTF-8"));
+        long memoryInUse = bufferPool.getMemoryInUse();
+        byte[] second = inspector.read(new TFile(ear, "second.war/WEB-INF/lib/a-1.0.jar"));
+        long memoryAfterSecond = bufferPool.getMemoryInUse();
+        inspector.close();
+
+        // validate
+        assertThat("Library is streamed", first, is(new String(library, "UTF-8")));
+        assertThat("Library is read", second, is(library));
+        assertThat("First war is held in memory", memoryInUse, is((long) war.length));
+        assertThat("Memory stays within the budget", memoryAfterSecond, is((long) war.length));
+        assertThat("Memory is released once closed", bufferPool.getMemoryInUse(), is(0L));
+    }
+
+    @Test
+    public void testInspectArchiveLargerThan2GB() throws Exception {
+        // setup, an ear preceded by 3GB of data, written as a sparse file
+        byte[] library = zip(false, "META-INF/MANIFEST.MF", MANIFEST);
+        byte[] earBytes = zip(false, "stored.war", zip(true, "WEB-INF/lib/a-1.0.jar", library), "deflated.war", zip(false, "WEB-INF/lib/a-1.0.jar", library));
+        File ear = temporaryFolder.newFile("large.ear");
+        try (RandomAccessFile file = new RandomAccessFile(ear, "rw")) {
+            file.seek(3L * 1024 * 1024 * 1024);
+            file.write(earBytes);
+        }
+
+        for (String war : new String[]{"stored.war", "deflated.war"}) {
+            TFile libraryFile = new TFile(ear, war + "/WEB-INF/lib/a-1.0.jar");
+
+            // test
+            Map<String, Boolean> earChildren = underTest.list(new TFile(ear));
+            byte[] read = underTest.read(libraryFile);
+
+            // validate
+            assertThat("Ear is listed", earChildren.get(war), is(false));
+            assertThat("Library is read", read, is(library));
+            assertThat("Size is read", underTest.size(libraryFile), is((long) library.length));
+        }
+    }
+
+    /**
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    private static byte[] zip(boolean stored, Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                Object content = namesAndContents[i + 1];
+                byte[] data = content instanceof String ? ((String) content).getBytes(StandardCharsets.UTF_8) : (byte[]) content;
+                ZipEntry entry = new ZipEntry((String) namesAndContents[i]);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(entry);
+                zip.write(data);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,260 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ArchiveRewriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStoreNestedArchives() throws Exception {
+        // setup, an ear holding a deflated war, which holds a deflated jar
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("war1.war", zip("WEB-INF/lib/a.jar", zip("a/A.class", "a"))));
+        ArchiveRewriter underTest = new ArchiveRewriter(new LayoutWorkerPool(2), new CompressionPolicy(true, 9), ReproducibleOutput.DISABLED, BufferPool.DEFAULT);
+        ArchiveEdit edit = new ArchiveEdit();
+        edit.nested("war1.war").put("META-INF/context.xml", "<context/>".getBytes(StandardCharsets.UTF_8));
+
+        // test
+        underTest.rewrite(ear.toPath(), edit);
+
+        // validate
+        try (ZipFile earZip = new ZipFile(ear)) {
+            ZipEntry war = earZip.getEntry("war1.war");
+            assertThat("Rewritten war is stored", war.getMethod(), is(ZipEntry.STORED));
+            Path warFile = temporaryFolder.newFile("war1.war").toPath();
+            try (InputStream in = earZip.getInputStream(war)) {
+                Files.copy(in, warFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (ZipFile warZip = new ZipFile(warFile.toFile())) {
+                ZipEntry jar = warZip.getEntry("WEB-INF/lib/a.jar");
+                assertThat("Copied jar is stored", jar.getMethod(), is(ZipEntry.STORED));
+                assertThat("Stored jar is intact", entryNames(warZip.getInputStream(jar)), is("a/A.class"));
+                ZipEntry context = warZip.getEntry("META-INF/context.xml");
+                assertThat("Other entry is deflated", context.getMethod(), is(ZipEntry.DEFLATED));
+                assertThat("Other entry is intact", new String(IOUtils.toByteArray(warZip.getInputStream(context)), StandardCharsets.UTF_8), is("<context/>"));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyUntouchedEntriesRaw() throws Exception {
+        // setup, entries deflated faster than the rewriter would, so only a raw copy keeps their compressed bytes
+        StringBuilder text = new StringBuilder();
+        for (int line = 0; line < 500; line++) {
+            text.append("line ").append(line % 37).append(" of the readme\n");
+        }
+        byte[] war1 = zipWithLevel(Deflater.BEST_SPEED, "WEB-INF/lib/a.jar", zip("a/A.class", "a"), "WEB-INF/lib/b.jar", zipWithLevel(Deflater.BEST_SPEED, "b/B.class", text.toString()), "readme.txt", text.toString());
+        byte[] earBytes = zipWithLevel(Deflater.BEST_SPEED, "readme.txt", text.toString(), "war1.war", war1, "war2.war", zip("WEB-INF/lib/c.jar", zip("c/C.class", "c")));
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), earBytes);
+        ArchiveRewriter underTest = new ArchiveRewriter(new LayoutWorkerPool(2));
+        ArchiveEdit edit = new ArchiveEdit();
+        edit.nested("war1.war").remove("WEB-INF/lib/a.jar");
+
+        // test
+        underTest.rewrite(ear.toPath(), edit);
+
+        // validate
+        byte[] rewritten = Files.readAllBytes(ear.toPath());
+        byte[] rewrittenWar1;
+        try (ZipFile earZip = new ZipFile(ear)) {
+            rewrittenWar1 = IOUtils.toByteArray(earZip.getInputStream(earZip.getEntry("war1.war")));
+        }
+        assertThat("Library is removed", ZipDirectory.read(ByteBuffer.wrap(rewrittenWar1)).getEntry("WEB-INF/lib/a.jar") == null, is(true));
+        assertThat("Untouched entry is copied raw", rawData(rewritten, "readme.txt"), is(rawData(earBytes, "readme.txt")));
+        assertThat("Untouched nested archive is copied raw", rawData(rewritten, "war2.war"), is(rawData(earBytes, "war2.war")));
+        assertThat("Untouched nested archive keeps its CRC", ZipDirectory.read(ByteBuffer.wrap(rewritten)).getEntry("war2.war").getCrc(),
+                is(ZipDirectory.read(ByteBuffer.wrap(earBytes)).getEntry("war2.war").getCrc()));
+        assertThat("Untouched library of an edited archive is copied raw", rawData(rewrittenWar1, "WEB-INF/lib/b.jar"), is(rawData(war1, "WEB-INF/lib/b.jar")));
+        assertThat("Untouched entry of an edited archive is copied raw", rawData(rewrittenWar1, "readme.txt"), is(rawData(war1, "readme.txt")));
+    }
+
+    @Test
+    public void testReproducibleOutput() throws Exception {
+        // setup
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("b.txt", "b", "META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n", "war1.war", zip("b.txt", "b", "a.txt", "a")));
+        ReproducibleOutput reproducibleOutput = ReproducibleOutput.of("2020-01-01T00:00:00Z");
+        ArchiveRewriter underTest = new ArchiveRewriter(new LayoutWorkerPool(2), CompressionPolicy.DEFAULT, reproducibleOutput, BufferPool.DEFAULT);
+        ArchiveEdit edit = new ArchiveEdit();
+        edit.put("META-INF/application.xml", "<application/>".getBytes(StandardCharsets.UTF_8));
+        edit.nested("war1.war").put("META-INF/context.xml", "<context/>".getBytes(StandardCharsets.UTF_8));
+
+        // test
+        underTest.rewrite(ear.toPath(), edit);
+
+        // validate
+        assertThat("Timestamp is parsed", reproducibleOutput.getTimestamp(), is(1577836800000L));
+        try (ZipInputStream earZip = new ZipInputStream(Files.newInputStream(ear.toPath()))) {
+            StringBuilder names = new StringBuilder();
+            ZipEntry entry;
+            while ((entry = earZip.getNextEntry()) != null) {
+                names.append(entry.getName()).append(' ');
+                assertThat("Entry has the fixed timestamp", entry.getTime(), is(reproducibleOutput.getEntryTime()));
+                if (entry.getName().equals("war1.war")) {
+                    assertThat("Rewritten war is ordered", entryNames(new ByteArrayInputStream(IOUtils.toByteArray(earZip))), is("META-INF/context.xmla.txtb.txt"));
+                }
+            }
+            assertThat("Entries are in canonical order", names.toString(), is("META-INF/MANIFEST.MF META-INF/application.xml b.txt war1.war "));
+        }
+    }
+
+    @Test
+    public void testRewriteNestedArchivesConcurrently() throws Exception {
+        // setup, two wars each holding a jar to edit, whose extractions only complete once both are under way
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("war1.war", zip("WEB-INF/lib/a.jar", zip("a/A.class", "a")),
+                "war2.war", zip("WEB-INF/lib/b.jar", zip("b/B.class", "b"))));
+        CyclicBarrier jarsExtracting = new CyclicBarrier(2);
+        AtomicInteger jarTempFiles = new AtomicInteger();
+        BufferPool bufferPool = new BufferPool(null, BufferPool.DEFAULT_MEMORY_THRESHOLD, BufferPool.DEFAULT_MEMORY_BUDGET) {
+            @Override
+            public Path createTempFile(String prefix, String suffix) throws IOException {
+                if (suffix.endsWith(".jar") && jarTempFiles.incrementAndGet() <= 2) {
+                    try {
+                        jarsExtracting.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                        throw new IOException("Nested archives are not extracted concurrently", e);
+                    }
+                }
+                return super.createTempFile(prefix, suffix);
+            }
+        };
+        ArchiveRewriter underTest = new ArchiveRewriter(new LayoutWorkerPool(2), CompressionPolicy.DEFAULT, ReproducibleOutput.DISABLED, bufferPool);
+        ArchiveEdit edit = new ArchiveEdit();
+        edit.nested("war1.war").nested("WEB-INF/lib/a.jar").put("a/a.txt", "a".getBytes(StandardCharsets.UTF_8));
+        edit.nested("war2.war").nested("WEB-INF/lib/b.jar").put("b/b.txt", "b".getBytes(StandardCharsets.UTF_8));
+
+        // test
+        underTest.rewrite(ear.toPath(), edit);
+
+        // validate
+        try (ZipFile earZip = new ZipFile(ear)) {
+            for (String war : new String[]{"war1.war", "war2.war"}) {
+                try (ZipInputStream warZip = new ZipInputStream(earZip.getInputStream(earZip.getEntry(war)))) {
+                    warZip.getNextEntry();
+                    String expected = war.equals("war1.war") ? "a/A.classa/a.txt" : "b/B.classb/b.txt";
+                    assertThat("Nested archive of " + war + " is rewritten", entryNames(new ByteArrayInputStream(IOUtils.toByteArray(warZip))), is(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamSources() throws Exception {
+        // setup, a source within the memory threshold and a larger source, read only once the archive is written
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("a.txt", "a"));
+        File buffers = temporaryFolder.newFolder("buffers");
+        byte[] large = new byte[4096];
+        Arrays.fill(large, (byte) 'l');
+        AtomicInteger opened = new AtomicInteger();
+        ArchiveRewriter underTest = new ArchiveRewriter(new LayoutWorkerPool(2), new CompressionPolicy(true, -1), ReproducibleOutput.DISABLED,
+                new BufferPool(buffers.toPath(), 1024, BufferPool.DEFAULT_MEMORY_BUDGET));
+        ArchiveEdit edit = new ArchiveEdit();
+        edit.put("small.txt", () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream("small".getBytes(StandardCharsets.UTF_8));
+        });
+        edit.put("large.txt", () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(large);
+        });
+        edit.put("lib/large.jar", () -> new ByteArrayInputStream(large));
+        int openedBeforeRewrite = opened.get();
+
+        // test
+        underTest.rewrite(ear.toPath(), edit);
+
+        // validate
+        assertThat("Sources are not read while queued", openedBeforeRewrite, is(0));
+        try (ZipFile earZip = new ZipFile(ear)) {
+            assertThat("Kept entry is intact", new String(IOUtils.toByteArray(earZip.getInputStream(earZip.getEntry("a.txt"))), StandardCharsets.UTF_8), is("a"));
+            assertThat("Small source is written", new String(IOUtils.toByteArray(earZip.getInputStream(earZip.getEntry("small.txt"))), StandardCharsets.UTF_8), is("small"));
+            ZipEntry largeEntry = earZip.getEntry("large.txt");
+            assertThat("Large source is written", IOUtils.toByteArray(earZip.getInputStream(largeEntry)), is(large));
+            assertThat("Large source is deflated", largeEntry.getMethod(), is(ZipEntry.DEFLATED));
+            ZipEntry jar = earZip.getEntry("lib/large.jar");
+            assertThat("Large archive is written", IOUtils.toByteArray(earZip.getInputStream(jar)), is(large));
+            assertThat("Large archive is stored", jar.getMethod(), is(ZipEntry.STORED));
+        }
+        assertThat("Spooled sources are deleted", buffers.list().length, is(0));
+    }
+
+    /**
+     * @return the compressed data of the entry of the archive
+     */
+    private static byte[] rawData(byte[] archive, String entryName) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(archive);
+        ByteBuffer rawData = ZipDirectory.getRawData(buffer, ZipDirectory.read(buffer).getEntry(entryName));
+        byte[] bytes = new byte[rawData.remaining()];
+        rawData.get(bytes);
+        return bytes;
+    }
+
+    private static String entryNames(InputStream in) throws IOException {
+        StringBuilder names = new StringBuilder();
+        try (ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.append(entry.getName());
+            }
+        }
+        return names.toString();
+    }
+
+    /**
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    private static byte[] zip(Object... namesAndContents) throws IOException {
+        return zipWithLevel(Deflater.DEFAULT_COMPRESSION, namesAndContents);
+    }
+
+    /**
+     * @param level            deflate level of the entries
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    private static byte[] zipWithLevel(int level, Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.setLevel(level);
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                Object content = namesAndContents[i + 1];
+                zip.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+                zip.write(content instanceof String ? ((String) content).getBytes(StandardCharsets.UTF_8) : (byte[]) content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
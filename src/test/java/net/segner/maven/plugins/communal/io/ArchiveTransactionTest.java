@@ -0,0 +1,185 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+import net.segner.maven.plugins.communal.LayoutWorkerPool;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+public class ArchiveTransactionTest {
+
+    private static final String LIBRARY_FOLDER = "WEB-INF/lib";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ArchiveBackend archiveBackend = new DirectoryArchiveBackend(new TrueVfsArchiveBackend());
+    private Path backupDirectory;
+    private ArchiveTransaction underTest;
+
+    @Before
+    public void setUp() throws Exception {
+        backupDirectory = temporaryFolder.getRoot().toPath().resolve("rollback");
+        underTest = new ArchiveTransaction(archiveBackend, new ArchiveRewriter(new LayoutWorkerPool(1)), backupDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TVFS.umount();
+    }
+
+    @Test
+    public void testCommitPackedAndExploded() throws Exception {
+        // setup, a packed ear holding two wars and an exploded copy of the first war
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("war1.war", zip("WEB-INF/lib/a.jar", "a", "WEB-INF/lib/b.jar", "b"), "war2.war", zip("WEB-INF/lib/c.jar", "c")));
+        File exploded = temporaryFolder.newFolder("app", "war1.war", "WEB-INF", "lib");
+        Files.write(new File(exploded, "a.jar").toPath(), "a".getBytes(StandardCharsets.UTF_8));
+        TFile war1 = new TFile(ear, "war1.war");
+        MirroringFilesystem war1Mirror = new GenericMirroringFilesystem(war1, new TFile(temporaryFolder.getRoot(), "app/war1.war"));
+
+        // test
+        MirroringFilesystem batched = war1Mirror.within(underTest);
+        batched.rm(LIBRARY_FOLDER + "/a.jar");
+        batched.copy(new TFile(ear, "war2.war/WEB-INF/lib/c.jar"), LIBRARY_FOLDER);
+        batched.write("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+        Set<String> queuedEntries = entries(ear, "war1.war");
+        underTest.commit();
+
+        // validate
+        Set<String> entries = entries(ear, "war1.war");
+        assertThat("Nothing changes before the commit", queuedEntries, hasItem(LIBRARY_FOLDER + "/a.jar"));
+        assertThat("Removed library is gone", entries, not(hasItem(LIBRARY_FOLDER + "/a.jar")));
+        assertThat("Other library is kept", entries, hasItem(LIBRARY_FOLDER + "/b.jar"));
+        assertThat("Library is copied from the other war", entries, hasItem(LIBRARY_FOLDER + "/c.jar"));
+        assertThat("File is written", entries, hasItem("META-INF/MANIFEST.MF"));
+        assertThat("Exploded library is removed", new File(exploded, "a.jar").exists(), is(false));
+        assertThat("Exploded library is copied", new String(Files.readAllBytes(new File(exploded, "c.jar").toPath()), StandardCharsets.UTF_8), is("c"));
+        assertThat("No rollback state is left", temporaryFolder.getRoot().list().length, is(2));
+        assertThat("Transaction is empty after the commit", underTest.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRollbackFailedCommit() throws Exception {
+        // setup
+        File ear = temporaryFolder.newFile("app.ear");
+        byte[] earBytes = zip("war1.war", zip("WEB-INF/lib/a.jar", "a"));
+        Files.write(ear.toPath(), earBytes);
+        File exploded = temporaryFolder.newFolder("app", "war1.war", "WEB-INF", "lib");
+        File library = new File(exploded, "a.jar");
+        Files.write(library.toPath(), "a".getBytes(StandardCharsets.UTF_8));
+        underTest.rm(new TFile(ear, "war1.war/WEB-INF/lib/a.jar"));
+        underTest.rm(new TFile(library));
+        underTest.copy(new TFile(temporaryFolder.getRoot(), "missing.jar"), new TFile(exploded, "missing.jar"));
+
+        // test
+        IOException failure = null;
+        try {
+            underTest.commit();
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        // validate
+        assertThat("Commit fails", failure != null, is(true));
+        assertThat("Packed ear is unchanged", Files.readAllBytes(ear.toPath()), is(earBytes));
+        assertThat("Removed exploded library is restored", new String(Files.readAllBytes(library.toPath()), StandardCharsets.UTF_8), is("a"));
+        assertThat("No rollback state is left", exploded.list().length, is(1));
+        assertThat("No rewritten archive is left", temporaryFolder.getRoot().list().length, is(2));
+    }
+
+    @Test
+    public void testStaleBackupsAreRemoved() throws Exception {
+        // setup, backups left over by an interrupted commit
+        File exploded = temporaryFolder.newFolder("app", "war1.war", "WEB-INF", "lib");
+        File library = new File(exploded, "a.jar");
+        Files.write(library.toPath(), "a".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(backupDirectory);
+        Files.write(backupDirectory.resolve("0-a.jar"), "stale".getBytes(StandardCharsets.UTF_8));
+        underTest.write(new TFile(library), "b".getBytes(StandardCharsets.UTF_8));
+
+        // test
+        underTest.commit();
+
+        // validate
+        assertThat("File is written", new String(Files.readAllBytes(library.toPath()), StandardCharsets.UTF_8), is("b"));
+        assertThat("No backup is left in the exploded EAR", exploded.list().length, is(1));
+        assertThat("Backups are removed", Files.exists(backupDirectory), is(false));
+    }
+
+    @Test
+    public void testCopyFromOtherArchive() throws Exception {
+        // setup, a library of another ear, changed after it is queued
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("war1.war", zip("WEB-INF/lib/a.jar", "a")));
+        File other = temporaryFolder.newFile("other.ear");
+        Files.write(other.toPath(), zip("war2.war", zip("WEB-INF/lib/c.jar", "c")));
+        underTest.copy(new TFile(other, "war2.war/WEB-INF/lib/c.jar"), new TFile(ear, "war1.war/WEB-INF/lib/c.jar"));
+        Files.write(other.toPath(), zip("war2.war", zip("WEB-INF/lib/c.jar", "changed")));
+        TVFS.umount();
+
+        // test
+        underTest.commit();
+
+        // validate
+        assertThat("Library is copied from the other ear", entries(ear, "war1.war"), hasItem(LIBRARY_FOLDER + "/c.jar"));
+        assertThat("Library is read once the archive is written", new String(read(new TFile(ear, "war1.war/WEB-INF/lib/c.jar")), StandardCharsets.UTF_8), is("changed"));
+    }
+
+    private byte[] read(TFile file) throws IOException {
+        try (InputStream in = archiveBackend.newInputStream(file)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static Set<String> entries(File ear, String moduleName) throws IOException {
+        Set<String> entries = new HashSet<>();
+        try (ZipFile earZip = new ZipFile(ear);
+             InputStream in = earZip.getInputStream(earZip.getEntry(moduleName));
+             ZipInputStream module = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = module.getNextEntry()) != null) {
+                entries.add(entry.getName());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    private static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                Object content = namesAndContents[i + 1];
+                zip.putNextEntry(new ZipEntry((String) namesAndContents[i]));
+                zip.write(content instanceof String ? ((String) content).getBytes(StandardCharsets.UTF_8) : (byte[]) content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.fail;
+
+public class ArchiveVerifierTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ArchiveVerifier underTest = new ArchiveVerifier(BufferPool.DEFAULT);
+
+    @Test
+    public void testVerifyNestedArchives() throws Exception {
+        // setup, a deflated and a stored war holding a stored library
+        byte[] library = zip(true, "a/A.class", "library");
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip(false, "META-INF/application.xml", "<application/>",
+                "deflated.war", zip(false, "WEB-INF/lib/a.jar", library),
+                "stored.war", zip(true, "WEB-INF/lib/a.jar", library)));
+
+        // test
+        long verified = underTest.verify(ear.toPath());
+
+        // validate
+        assertThat("Entries of the EAR and of its modules are verified", verified, is(5L));
+    }
+
+    @Test
+    public void testCorruptNestedEntry() throws Exception {
+        // setup, a stored library within a stored war, with a byte of the library changed on disk
+        byte[] war = zip(true, "WEB-INF/lib/a.jar", zip(true, "a/A.class", "library"));
+        byte[] earBytes = zip(true, "war1.war", war);
+        String contents = new String(earBytes, StandardCharsets.ISO_8859_1);
+        earBytes[contents.indexOf("library")] = 'L';
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), earBytes);
+
+        // test
+        try {
+            underTest.verify(ear.toPath());
+            fail("Corrupt EAR is detected");
+        } catch (ZipException e) {
+
+            // validate
+            assertThat("Corrupt entry is named", e.getMessage(), containsString("CRC-32 mismatch of app.ear!/war1.war"));
+        }
+    }
+
+    /**
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    private static byte[] zip(boolean stored, Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                Object content = namesAndContents[i + 1];
+                byte[] data = content instanceof String ? ((String) content).getBytes(StandardCharsets.UTF_8) : (byte[]) content;
+                ZipEntry entry = new ZipEntry((String) namesAndContents[i]);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(entry);
+                zip.write(data);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
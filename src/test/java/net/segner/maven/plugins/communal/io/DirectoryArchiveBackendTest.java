@@ -0,0 +1,83 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+public class DirectoryArchiveBackendTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ArchiveBackend underTest = new DirectoryArchiveBackend(new ZipFsArchiveBackend());
+
+    @After
+    public void tearDown() throws Exception {
+        TVFS.umount();
+    }
+
+    @Test
+    public void testCopyRemoveAndSync() throws Exception {
+        // setup, an exploded ear holding an exploded war and a packed war
+        File exploded = temporaryFolder.newFolder("app", "war1.war", "WEB-INF", "lib");
+        Files.write(new File(exploded, "a.jar").toPath(), "a".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(exploded, "b.jar").toPath(), "b".getBytes(StandardCharsets.UTF_8));
+        File ear = new File(temporaryFolder.getRoot(), "app");
+        File packed = new File(ear, "war2.war");
+        Files.write(packed.toPath(), ZipFsArchiveBackendTest.zip("WEB-INF/lib/c.jar", "c"));
+
+        // test
+        underTest.rm(new TFile(exploded, "a.jar"));
+        underTest.copy(new TFile(packed, "WEB-INF/lib/c.jar"), new TFile(exploded, "c.jar"));
+        underTest.copy(new TFile(exploded, "b.jar"), new TFile(packed, "WEB-INF/lib/b.jar"));
+        underTest.copy(new TFile(ear, "war1.war"), new TFile(ear, "lib/war1"));
+        underTest.rm(new TFile(packed, "WEB-INF/lib/c.jar"));
+        underTest.sync();
+
+        // validate
+        Map<String, String> war2 = contents(packed);
+        assertThat("Exploded library is removed", new File(exploded, "a.jar").exists(), is(false));
+        assertThat("Library is copied out of the packed war", read(new File(exploded, "c.jar")), is("c"));
+        assertThat("Directory tree is copied", read(new File(ear, "lib/war1/WEB-INF/lib/b.jar")), is("b"));
+        assertThat("Library is copied into the packed war", war2.get("WEB-INF/lib/b.jar"), is("b"));
+        assertThat("Library is removed from the packed war", war2, not(hasKey("WEB-INF/lib/c.jar")));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> contents(File archive) throws IOException {
+        Map<String, String> contents = new HashMap<>();
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (!entry.isDirectory()) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        contents.put(entry.getName(), IOUtils.toString(in, StandardCharsets.UTF_8.name()));
+                    }
+                }
+            }
+        }
+        return contents;
+    }
+}
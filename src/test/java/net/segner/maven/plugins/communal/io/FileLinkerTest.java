@@ -0,0 +1,56 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class FileLinkerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCopyWithoutLinks() throws Exception {
+        // setup
+        Path source = write("source.jar", "library");
+        Path target = write("target.jar", "previous");
+
+        // test
+        new FileLinker(false).copy(source, target);
+
+        // validate
+        assertThat("Contents are copied", new String(Files.readAllBytes(target), StandardCharsets.UTF_8), is("library"));
+        assertThat("Copy is a separate file", Files.isSameFile(source, target), is(false));
+        assertThat("No partial copy is left", temporaryFolder.getRoot().list().length, is(2));
+    }
+
+    @Test
+    public void testLinkIdentical() throws Exception {
+        // setup
+        Path canonical = write("canonical.jar", "library");
+        Path duplicate = write("duplicate.jar", "library");
+        Path different = write("different.jar", "LIBRARY");
+        FileLinker underTest = new FileLinker(true);
+
+        // test
+        boolean linked = underTest.linkIdentical(canonical, duplicate);
+        boolean linkedDifferent = underTest.linkIdentical(canonical, different);
+
+        // validate
+        assertThat("Identical library is linked", linked, is(true));
+        assertThat("Identical library shares the canonical file", Files.isSameFile(canonical, duplicate), is(true));
+        assertThat("Different library is not linked", linkedDifferent, is(false));
+        assertThat("Different library is kept", new String(Files.readAllBytes(different), StandardCharsets.UTF_8), is("LIBRARY"));
+    }
+
+    private Path write(String name, String contents) throws Exception {
+        return Files.write(temporaryFolder.getRoot().toPath().resolve(name), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
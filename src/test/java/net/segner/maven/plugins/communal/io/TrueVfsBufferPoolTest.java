@@ -0,0 +1,129 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.IoBuffer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.fail;
+
+public class TrueVfsBufferPoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<BufferPool> acquired = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        acquired.forEach(TrueVfsBufferPool::release);
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        // setup, room in memory for a single buffer
+        Path tempDirectory = temporaryFolder.getRoot().toPath().resolve("buffers");
+        BufferPool bufferPool = new BufferPool(tempDirectory, 1024, 1024);
+        acquire(bufferPool);
+        TrueVfsBufferPool underTest = new TrueVfsBufferPool();
+        byte[] small = new byte[1000];
+        Arrays.fill(small, (byte) 1);
+        byte[] large = new byte[5000];
+        Arrays.fill(large, (byte) 2);
+
+        // test
+        IoBuffer first = write(underTest, small);
+        IoBuffer second = write(underTest, small);
+        IoBuffer third = write(underTest, large);
+
+        // validate
+        assertThat("Memory stays within the budget", bufferPool.getMemoryInUse(), is(1000L));
+        assertThat("Buffers over the budget or the threshold are files", tempDirectory.toFile().list().length, is(2));
+        assertThat("Buffer in memory is intact", read(first), is(small));
+        assertThat("Buffer over the budget is intact", read(second), is(small));
+        assertThat("Buffer over the threshold is intact", read(third), is(large));
+        assertThat("Size is known", third.getSize(Entry.Size.DATA), is(5000L));
+
+        first.release();
+        second.release();
+        third.release();
+        assertThat("Memory is released", bufferPool.getMemoryInUse(), is(0L));
+        assertThat("Files are deleted", tempDirectory.toFile().list().length, is(0));
+    }
+
+    @Test
+    public void testCollectedBufferIsReleased() throws Exception {
+        // setup, a buffer in memory and a buffer in a file, dropped without being released
+        Path tempDirectory = temporaryFolder.getRoot().toPath().resolve("buffers");
+        BufferPool bufferPool = new BufferPool(tempDirectory, 1024, 1024);
+        acquire(bufferPool);
+        TrueVfsBufferPool underTest = new TrueVfsBufferPool();
+        write(underTest, new byte[1000]);
+        write(underTest, new byte[5000]);
+
+        // test
+        for (int attempt = 0; attempt < 100 && bufferPool.getMemoryInUse() > 0; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            TrueVfsBufferPool.releaseCollected();
+        }
+
+        // validate
+        assertThat("Memory is released", bufferPool.getMemoryInUse(), is(0L));
+        assertThat("Files are deleted", tempDirectory.toFile().list().length, is(0));
+    }
+
+    @Test
+    public void testConcurrentExecutionsShareTheBufferPool() {
+        // setup, an execution running with the shared buffer pool of its configuration
+        Path tempDirectory = temporaryFolder.getRoot().toPath().resolve("buffers");
+        BufferPool first = BufferPool.shared(tempDirectory, 1024, 4096);
+        acquire(first);
+
+        // test
+        BufferPool second = BufferPool.shared(tempDirectory.resolve("../buffers"), 1024, 4096);
+        acquire(second);
+        try {
+            acquire(BufferPool.shared(tempDirectory, 1024, 8192));
+            fail("Executions configuring other buffers fail");
+        } catch (IllegalStateException e) {
+
+            // validate
+            assertThat("Buffers are named", e.getMessage(), containsString("memoryBudget=8192"));
+        }
+        assertThat("Executions configured alike share the buffer pool", second, is(sameInstance(first)));
+    }
+
+    private void acquire(BufferPool bufferPool) {
+        TrueVfsBufferPool.acquire(bufferPool);
+        acquired.add(bufferPool);
+    }
+
+    private static IoBuffer write(TrueVfsBufferPool pool, byte[] contents) throws Exception {
+        IoBuffer buffer = pool.allocate();
+        try (OutputStream out = buffer.output().stream(null)) {
+            out.write(contents);
+        }
+        return buffer;
+    }
+
+    private static byte[] read(IoBuffer buffer) throws Exception {
+        try (InputStream in = buffer.input().stream(null)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
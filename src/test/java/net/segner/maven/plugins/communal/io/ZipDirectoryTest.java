@@ -0,0 +1,80 @@
+package net.segner.maven.plugins.communal.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ZipDirectoryTest {
+
+    private static final int ENTRIES = 65537;
+    private static final int ZIP64_RECORDS_LENGTH = 56 + 20;
+    private static final int EOCD_LENGTH = 22;
+    private static final String ACCENTED_NAME = "caf\u00e9.txt";
+
+    @Test
+    public void testMoreThan65535Entries() throws Exception {
+        // setup, written with zip64 records, and as a writer without zip64 support would, with a truncated entry count
+        byte[] zip64 = zipWithEntries();
+        byte[] truncated = Arrays.copyOf(zip64, zip64.length - ZIP64_RECORDS_LENGTH);
+        ByteBuffer eocd = ByteBuffer.wrap(truncated).order(ByteOrder.LITTLE_ENDIAN);
+        int eocdPosition = truncated.length - EOCD_LENGTH;
+        System.arraycopy(zip64, zip64.length - EOCD_LENGTH, truncated, eocdPosition, EOCD_LENGTH);
+        eocd.putShort(eocdPosition + 8, (short) ENTRIES);
+        eocd.putShort(eocdPosition + 10, (short) ENTRIES);
+
+        // test
+        ZipDirectory fromZip64 = ZipDirectory.read(ByteBuffer.wrap(zip64));
+        ZipDirectory fromTruncated = ZipDirectory.read(ByteBuffer.wrap(truncated));
+
+        // validate
+        assertThat("Every entry is read with zip64 records", fromZip64.getEntries().size(), is(ENTRIES));
+        assertThat("Every entry is read with a truncated entry count", fromTruncated.getEntries().size(), is(ENTRIES));
+        assertThat("Last entry is found", fromTruncated.getEntry("e" + (ENTRIES - 1)) != null, is(true));
+    }
+
+    @Test
+    public void testNameCharset() throws Exception {
+        // setup, a name written in IBM437 without the UTF-8 flag, and the same name flagged as UTF-8
+        byte[] ibm437 = zipWithName(Charset.forName("IBM437"));
+        byte[] utf8 = zipWithName(StandardCharsets.UTF_8);
+
+        // test
+        ZipDirectory zipWithoutFlag = ZipDirectory.read(ByteBuffer.wrap(ibm437), ZipDirectory.getCharset("archive.zip"));
+        ZipDirectory jarWithoutFlag = ZipDirectory.read(ByteBuffer.wrap(ibm437), ZipDirectory.getCharset("library.jar"));
+        ZipDirectory zipWithFlag = ZipDirectory.read(ByteBuffer.wrap(utf8), ZipDirectory.getCharset("archive.zip"));
+
+        // validate
+        assertThat("Name without the flag is read in the charset of a zip", zipWithoutFlag.getEntry(ACCENTED_NAME) != null, is(true));
+        assertThat("Name without the flag is read as UTF-8 in a jar", jarWithoutFlag.getEntry(ACCENTED_NAME) != null, is(false));
+        assertThat("Name with the flag is read as UTF-8", zipWithFlag.getEntry(ACCENTED_NAME) != null, is(true));
+    }
+
+    private static byte[] zipWithName(Charset charset) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes, charset)) {
+            zip.putNextEntry(new ZipEntry(ACCENTED_NAME));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zipWithEntries() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.setLevel(0);
+            for (int i = 0; i < ENTRIES; i++) {
+                zip.putNextEntry(new ZipEntry("e" + i));
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+package net.segner.maven.plugins.communal.io;
+
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+public class ZipFsArchiveBackendTest {
+
+    // entries of the fixtures are dated, so archives written back are told apart by their modification time
+    private static final long FIXTURE_TIME = 946684800000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() throws Exception {
+        TVFS.umount();
+    }
+
+    @Test
+    public void testCopyRemoveAndSync() throws Exception {
+        // setup, an ear holding two wars
+        File buffers = temporaryFolder.newFolder("buffers");
+        File ear = temporaryFolder.newFile("app.ear");
+        Files.write(ear.toPath(), zip("war1.war", zip("WEB-INF/lib/a.jar", "a", "WEB-INF/lib/b.jar", "b"), "war2.war", zip("WEB-INF/lib/c.jar", "c")));
+        ArchiveBackend underTest = new ZipFsArchiveBackend(new BufferPool(buffers.toPath(), BufferPool.DEFAULT_MEMORY_THRESHOLD, BufferPool.DEFAULT_MEMORY_BUDGET));
+
+        // test
+        underTest.rm(new TFile(ear, "war1.war/WEB-INF/lib/a.jar"));
+        underTest.copy(new TFile(ear, "war2.war/WEB-INF/lib/c.jar"), new TFile(ear, "war1.war/WEB-INF/lib/c.jar"));
+        underTest.write(new TFile(ear, "war1.war/META-INF/MANIFEST.MF"), "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+        underTest.sync();
+
+        // validate
+        Map<String, String> war1 = contents(ear, "war1.war");
+        assertThat("Removed library is gone", war1, not(hasKey("WEB-INF/lib/a.jar")));
+        assertThat("Other library is kept", war1.get("WEB-INF/lib/b.jar"), is("b"));
+        assertThat("Library is copied from the other war", war1.get("WEB-INF/lib/c.jar"), is("c"));
+        assertThat("File is written", war1.get("META-INF/MANIFEST.MF"), is("Manifest-Version: 1.0\n"));
+        assertThat("Source library is kept", contents(ear, "war2.war").get("WEB-INF/lib/c.jar"), is("c"));
+        assertThat("Changed war is written back", entryTime(ear, "war1.war") != FIXTURE_TIME, is(true));
+        assertThat("War that is only read is not written back", entryTime(ear, "war2.war"), is(FIXTURE_TIME));
+        assertThat("Extracted wars are deleted", buffers.list().length, is(0));
+        assertThat("Ear is readable by TrueVFS afterwards", new TFile(ear, "war1.war/WEB-INF/lib/c.jar").exists(), is(true));
+    }
+
+    @Test
+    public void testSyncWithoutChanges() throws Exception {
+        // setup
+        File ear = temporaryFolder.newFile("app.ear");
+        byte[] earBytes = zip("war1.war", zip("WEB-INF/lib/a.jar", "a"));
+        Files.write(ear.toPath(), earBytes);
+        ArchiveBackend underTest = new ZipFsArchiveBackend();
+
+        // test
+        String read;
+        try (InputStream in = underTest.newInputStream(new TFile(ear, "war1.war/WEB-INF/lib/a.jar"))) {
+            read = new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+        }
+        underTest.rm(new TFile(ear, "war1.war/WEB-INF/lib/missing.jar"));
+        underTest.sync();
+
+        // validate
+        assertThat("Library is read", read, is("a"));
+        assertThat("Ear is unchanged", Files.readAllBytes(ear.toPath()), is(earBytes));
+    }
+
+    static long entryTime(File ear, String name) throws IOException {
+        try (ZipFile earZip = new ZipFile(ear)) {
+            return earZip.getEntry(name).getTime();
+        }
+    }
+
+    /**
+     * @return contents of the entries of the module, as strings
+     */
+    static Map<String, String> contents(File ear, String moduleName) throws IOException {
+        Map<String, String> contents = new HashMap<>();
+        try (ZipFile earZip = new ZipFile(ear);
+             InputStream in = earZip.getInputStream(earZip.getEntry(moduleName));
+             ZipInputStream module = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = module.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    contents.put(entry.getName(), new String(IOUtils.toByteArray(module), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * @param namesAndContents alternating entry names and contents, either strings or bytes
+     */
+    static byte[] zip(Object... namesAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                Object content = namesAndContents[i + 1];
+                ZipEntry entry = new ZipEntry((String) namesAndContents[i]);
+                entry.setTime(FIXTURE_TIME);
+                zip.putNextEntry(entry);
+                zip.write(content instanceof String ? ((String) content).getBytes(StandardCharsets.UTF_8) : (byte[]) content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
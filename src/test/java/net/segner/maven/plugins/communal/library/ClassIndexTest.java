@@ -0,0 +1,51 @@
+package net.segner.maven.plugins.communal.library;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ClassIndexTest {
+
+    private ClassIndex underTest;
+
+    @Before
+    public void setUp() {
+        underTest = new ClassIndex();
+        underTest.addLibrary("a.jar", Arrays.asList(
+                new ClassIndex.ClassEntry("org.example.One", 0, "a.jar", 1, 10),
+                new ClassIndex.ClassEntry("org.example.Two", 0, "a.jar", 2, 10),
+                new ClassIndex.ClassEntry("org.example.Two", 11, "a.jar", 3, 10),
+                new ClassIndex.ClassEntry("org.split.Left", 0, "a.jar", 4, 10)));
+        underTest.addLibrary("b.jar", Arrays.asList(
+                new ClassIndex.ClassEntry("org.example.One", 0, "b.jar", 1, 10),
+                new ClassIndex.ClassEntry("org.example.Two", 0, "b.jar", 5, 10),
+                new ClassIndex.ClassEntry("org.split.Right", 0, "b.jar", 6, 10)));
+        underTest.addLibrary("c.jar", Collections.singletonList(
+                new ClassIndex.ClassEntry("org.example.Two", 11, "c.jar", 3, 10)));
+    }
+
+    @Test
+    public void testDuplicateClasses() throws Exception {
+        // validate
+        assertThat("Classes in several libraries are duplicates", underTest.getDuplicateClasses().keySet(),
+                is(new LinkedHashSet<>(Arrays.asList("org.example.One", "org.example.Two", "org.example.Two [release 11]"))));
+        assertThat("Identical copies are recognized", underTest.getDuplicateClasses().get("org.example.One").get(0)
+                .isSameContent(underTest.getDuplicateClasses().get("org.example.One").get(1)), is(true));
+        assertThat("Different copies are recognized", underTest.getDuplicateClasses().get("org.example.Two").get(0)
+                .isSameContent(underTest.getDuplicateClasses().get("org.example.Two").get(1)), is(false));
+    }
+
+    @Test
+    public void testSplitPackages() throws Exception {
+        // validate
+        assertThat("Only packages no library holds completely are split", underTest.getSplitPackages().keySet(),
+                is(Collections.singleton("org.split")));
+        assertThat("Classes per library are counted", underTest.getSplitPackages().get("org.split").get("b.jar"), is(1));
+    }
+}
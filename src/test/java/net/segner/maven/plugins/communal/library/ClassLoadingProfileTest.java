@@ -0,0 +1,50 @@
+package net.segner.maven.plugins.communal.library;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ClassLoadingProfileTest {
+
+    @Test
+    public void testReadBothLogFormats() throws Exception {
+        // setup
+        ClassLoadingProfile underTest = ClassLoadingProfile.empty();
+
+        // test
+        underTest.addLine("[Loaded java.lang.Object from /usr/lib/jvm/jre/lib/rt.jar]");
+        underTest.addLine("[Loaded org.example.One from file:/domain/app/WEB-INF/lib/one-1.0.jar]");
+        underTest.addLine("[0.120s][info][class,load] org.example.Two source: jar:file:/domain/app.ear!/lib/two-1.0.jar!/");
+        underTest.addLine("[0.121s][info][class,load] org.example.Two$1 source: file:/domain/app/shared.war/WEB-INF/lib/two-1.0.jar");
+        underTest.addLine("[0.122s][info][class,load] java.lang.String source: shared objects file");
+        underTest.addLine("some other output mentioning unused-1.0.jar");
+
+        // validate
+        assertThat("java 8 format is read", underTest.getLoadedClasses("one-1.0.jar"), is(1));
+        assertThat("java 9 format is read, innermost library of a nested source", underTest.getLoadedClasses("two-1.0.jar"), is(2));
+        assertThat("Lines not logging a loaded class are ignored", underTest.isLoaded("unused-1.0.jar"), is(false));
+        assertThat("Classes without a library are ignored", underTest.isLoaded("app.ear"), is(false));
+    }
+
+    @Test
+    public void testSortHottestFirst() throws Exception {
+        // setup
+        ClassLoadingProfile underTest = ClassLoadingProfile.empty();
+        underTest.addLine("[Loaded a.A from file:/lib/early.jar]");
+        underTest.addLine("[Loaded b.B from file:/lib/hot.jar]");
+        underTest.addLine("[Loaded b.C from file:/lib/hot.jar]");
+        underTest.addLine("[Loaded c.C from file:/lib/late.jar]");
+
+        // test
+        List<String> sorted = underTest.sortHottestFirst(Arrays.asList("unused2.jar", "late.jar", "unused1.jar", "early.jar", "hot.jar"), Function.identity());
+
+        // validate
+        assertThat("Most loaded first, ties by first load, never loaded keep their order",
+                sorted, is(Arrays.asList("hot.jar", "early.jar", "late.jar", "unused2.jar", "unused1.jar")));
+    }
+}
@@ -0,0 +1,79 @@
+package net.segner.maven.plugins.communal.library;
+
+import net.java.truevfs.access.TFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class LibraryCoordinateReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LibraryCoordinateReader underTest = new LibraryCoordinateReader();
+
+    @Test
+    public void testReadRenamedLibrary() throws Exception {
+        // setup
+        File jar = writeJar("renamed.jar", new LibraryCoordinates("org.example", "example-core", "1.2.3"));
+
+        // test
+        LibraryCoordinates coordinates = underTest.read(new TFile(jar));
+
+        // validate
+        assertThat("Coordinates are read regardless of file name", String.valueOf(coordinates), is("org.example:example-core:1.2.3"));
+    }
+
+    @Test
+    public void testReadLibraryWithoutDescriptor() throws Exception {
+        // setup
+        File jar = writeJar("plain-1.0.jar");
+
+        // test
+        LibraryCoordinates coordinates = underTest.read(new TFile(jar));
+
+        // validate
+        assertThat("Library without pom.properties has no coordinates", coordinates, is(nullValue()));
+    }
+
+    @Test
+    public void testChooseAmongBundledDescriptors() throws Exception {
+        // setup
+        LibraryCoordinates core = new LibraryCoordinates("org.example", "example", "1.0");
+        LibraryCoordinates bundle = new LibraryCoordinates("org.example", "example-bundle", "1.0");
+        LibraryCoordinates shaded = new LibraryCoordinates("com.other", "shaded", "2.0");
+
+        // test & validate
+        assertThat("Single descriptor is used", LibraryCoordinateReader.choose("anything.jar", Collections.singletonList(shaded)), is(shaded));
+        assertThat("Longest artifactId beginning the name wins", LibraryCoordinateReader.choose("example-bundle-1.0.jar", Arrays.asList(core, shaded, bundle)), is(bundle));
+        assertThat("Without a hint the library is ambiguous", LibraryCoordinateReader.choose("renamed.jar", Arrays.asList(core, shaded)), is(nullValue()));
+    }
+
+    private File writeJar(String name, LibraryCoordinates... descriptors) throws IOException {
+        File jar = new File(temporaryFolder.getRoot(), name);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+            for (LibraryCoordinates descriptor : descriptors) {
+                zip.putNextEntry(new ZipEntry("META-INF/maven/" + descriptor.getGroupId() + "/" + descriptor.getArtifactId() + "/pom.properties"));
+                zip.write(("groupId=" + descriptor.getGroupId() + "\nartifactId=" + descriptor.getArtifactId() + "\nversion=" + descriptor.getVersion() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            zip.putNextEntry(new ZipEntry("example/Example.class"));
+            zip.write(new byte[64]);
+        }
+        return jar;
+    }
+}
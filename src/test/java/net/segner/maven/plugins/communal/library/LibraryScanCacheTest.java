@@ -0,0 +1,129 @@
+package net.segner.maven.plugins.communal.library;
+
+import net.java.truevfs.access.TFile;
+import net.segner.maven.plugins.communal.io.ArchiveInspector;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LibraryScanCacheTest {
+
+    private static final String LIBRARY = "WEB-INF/lib/a-1.0.jar";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<ArchiveInspector> inspectors = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        inspectors.forEach(ArchiveInspector::close);
+        LibraryScanCache.clear();
+    }
+
+    @Test
+    public void testShareFingerprintsAcrossEars() throws Exception {
+        // setup, two EARs holding the same war, and a third holding a changed library
+        byte[] war = zip(LIBRARY, zip("a/A.class", "library"));
+        File first = writeEar("first.ear", war);
+        File second = writeEar("second.ear", war);
+        File changed = writeEar("changed.ear", zip(LIBRARY, zip("a/A.class", "changed")));
+        AtomicInteger computed = new AtomicInteger();
+
+        // test, each EAR with the scan cache of its own execution
+        String fromFirst = newCache().fingerprint(library(first), library -> "fingerprint-" + computed.incrementAndGet());
+        LibraryScanCache secondExecution = newCache();
+        String fromSecond = secondExecution.fingerprint(library(second), library -> "fingerprint-" + computed.incrementAndGet());
+        String fromChanged = newCache().fingerprint(library(changed), library -> "fingerprint-" + computed.incrementAndGet());
+
+        // validate
+        assertThat("Unchanged library is fingerprinted once", fromSecond, is(fromFirst));
+        assertThat("Reuse is counted", secondExecution.getHits(), is(1));
+        assertThat("Changed library is fingerprinted again", fromChanged, is("fingerprint-2"));
+    }
+
+    @Test
+    public void testConcurrentExecutions() throws Exception {
+        // setup, six EARs holding the same war, laid out at the same time
+        byte[] war = zip(LIBRARY, zip("a/A.class", "library"));
+        int executions = 6;
+        ExecutorService executor = Executors.newFixedThreadPool(executions);
+        CountDownLatch started = new CountDownLatch(executions);
+        AtomicInteger computed = new AtomicInteger();
+        List<Future<String>> fingerprints = new ArrayList<>();
+
+        // test
+        try {
+            for (int i = 0; i < executions; i++) {
+                TFile library = library(writeEar("app" + i + ".ear", war));
+                LibraryScanCache cache = newCache();
+                fingerprints.add(executor.submit(() -> {
+                    started.countDown();
+                    started.await();
+                    return cache.fingerprint(library, file -> {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                        return "fingerprint-" + computed.incrementAndGet();
+                    });
+                }));
+            }
+            for (Future<String> fingerprint : fingerprints) {
+                // validate
+                assertThat("Every execution gets the fingerprint", fingerprint.get(10, TimeUnit.SECONDS), is("fingerprint-1"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // validate
+        assertThat("Library is fingerprinted once", computed.get(), is(1));
+    }
+
+    private LibraryScanCache newCache() {
+        ArchiveInspector inspector = new ArchiveInspector();
+        inspectors.add(inspector);
+        return new LibraryScanCache(inspector);
+    }
+
+    private static TFile library(File ear) {
+        return new TFile(new TFile(new TFile(ear), "war1.war"), LIBRARY);
+    }
+
+    private File writeEar(String name, byte[] war) throws IOException {
+        File ear = temporaryFolder.newFile(name);
+        Files.write(ear.toPath(), zip("war1.war", war));
+        return ear;
+    }
+
+    /**
+     * @param contents either a string or bytes
+     */
+    private static byte[] zip(String name, Object contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(contents instanceof String ? ((String) contents).getBytes(StandardCharsets.UTF_8) : (byte[]) contents);
+        }
+        return bytes.toByteArray();
+    }
+}
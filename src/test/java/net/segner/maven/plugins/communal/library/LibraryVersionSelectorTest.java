@@ -0,0 +1,45 @@
+package net.segner.maven.plugins.communal.library;
+
+import net.segner.maven.plugins.communal.VersionConvergence;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class LibraryVersionSelectorTest {
+
+    private static final List<String> VERSIONS = Arrays.asList("1.2", "1.10", "1.10-SNAPSHOT", "1.9.RELEASE");
+
+    private LibraryVersionSelector underTest;
+
+    @Test
+    public void testHighestAndLowestCompareAsMaven() throws Exception {
+        // test
+        underTest = new LibraryVersionSelector(VersionConvergence.HIGHEST, null);
+        String highest = underTest.select("org.example:foo", VERSIONS);
+        underTest = new LibraryVersionSelector(VersionConvergence.LOWEST, null);
+        String lowest = underTest.select("org.example:foo", VERSIONS);
+
+        // validate
+        assertThat("Numeric parts compare as numbers", highest, is("1.10"));
+        assertThat("Lowest version is chosen", lowest, is("1.2"));
+    }
+
+    @Test
+    public void testPinnedVersion() throws Exception {
+        // test
+        underTest = new LibraryVersionSelector(VersionConvergence.PINNED, Arrays.asList("org.example:foo:1.2", "bar:2.0"));
+
+        // validate
+        assertThat("Pinned version is chosen", underTest.select("org.example:foo", VERSIONS), is("1.2"));
+        assertThat("Pin without groupId matches by artifactId", underTest.select("org.example:bar", Arrays.asList("1.0", "2.0")), is("2.0"));
+        assertThat("Library without groupId matches by artifactId", underTest.select("foo", VERSIONS), is("1.2"));
+        assertThat("Other groupId does not match", underTest.select("org.other:foo", VERSIONS), is(nullValue()));
+        assertThat("Missing pinned version is not converged", underTest.select("bar", Collections.singletonList("1.0")), is(nullValue()));
+    }
+}